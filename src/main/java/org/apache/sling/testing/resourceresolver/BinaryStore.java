@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Content-addressed store for binary values written as {@link InputStream}. Each binary is hashed with SHA-256
+ * while it is read, and only a single copy (byte array or {@link MockBinary}) is kept per digest and shared by all
+ * properties with the same content. Binaries are referenced weakly, so they are released when no property
+ * references them anymore.
+ */
+final class BinaryStore {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Map<ByteBuffer, BinaryReference> binaries = new HashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final Lock lock = new ReentrantLock();
+    private long deduplicatedCount;
+
+    /**
+     * Reads the given stream completely and returns the shared copy of its content.
+     * @param stream Input stream
+     * @param spoolThreshold Maximum number of bytes kept in memory, see {@link MockBinary#read(InputStream, int)}
+     * @return Byte array or {@link MockBinary}
+     * @throws IOException I/O exception
+     */
+    @NotNull
+    Object read(@NotNull InputStream stream, int spoolThreshold) throws IOException {
+        MessageDigest digest = newDigest();
+        Object value = MockBinary.read(new DigestInputStream(stream, digest), spoolThreshold);
+        ByteBuffer key = ByteBuffer.wrap(digest.digest());
+        lock.lock();
+        try {
+            expungeCollected();
+            BinaryReference ref = binaries.get(key);
+            Object existing = ref != null ? ref.get() : null;
+            if (existing != null && existing.getClass() == value.getClass()) {
+                deduplicatedCount++;
+                if (value instanceof MockBinary binary) {
+                    binary.discard();
+                }
+                return existing;
+            }
+            binaries.put(key, new BinaryReference(key, value, collected));
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of distinct binaries that are currently stored
+     */
+    int getBinaryCount() {
+        lock.lock();
+        try {
+            expungeCollected();
+            return binaries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of binaries that were replaced by an already stored copy
+     */
+    long getDeduplicatedCount() {
+        lock.lock();
+        try {
+            return deduplicatedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void expungeCollected() {
+        Reference<?> ref = collected.poll();
+        while (ref != null) {
+            BinaryReference binaryRef = (BinaryReference) ref;
+            binaries.remove(binaryRef.key, binaryRef);
+            ref = collected.poll();
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("Digest algorithm not available: " + DIGEST_ALGORITHM, ex);
+        }
+    }
+
+    private static final class BinaryReference extends WeakReference<Object> {
+
+        private final ByteBuffer key;
+
+        BinaryReference(ByteBuffer key, Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+}
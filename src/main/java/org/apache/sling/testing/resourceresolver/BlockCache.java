@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * LRU cache for data blocks of {@link SortedTable} files, bounded by the total size of the cached blocks.
+ * Thread-safe, as blocks are read concurrently by all resolvers holding the read lock of the resource store.
+ */
+final class BlockCache {
+
+    private final long maxBytes;
+    private final Map<Long, SortedTable.Block> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private final Lock lock = new ReentrantLock();
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxBytes Maximum size of all cached blocks - 0 disables the cache
+     */
+    BlockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param tableId Table ID
+     * @param blockIndex Block index within the table
+     * @return Cached block or null
+     */
+    @Nullable
+    SortedTable.Block get(long tableId, int blockIndex) {
+        lock.lock();
+        try {
+            SortedTable.Block block = blocks.get(key(tableId, blockIndex));
+            if (block != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return block;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param tableId Table ID
+     * @param blockIndex Block index within the table
+     * @param block Block read from the table file
+     */
+    void put(long tableId, int blockIndex, @NotNull SortedTable.Block block) {
+        if (block.getSize() > maxBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            SortedTable.Block previous = blocks.put(key(tableId, blockIndex), block);
+            bytes += block.getSize() - (previous != null ? previous.getSize() : 0);
+            Iterator<SortedTable.Block> eldest = blocks.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().getSize();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all blocks of a table that was deleted.
+     * @param tableId Table ID
+     */
+    void invalidate(long tableId) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Long, SortedTable.Block>> entries =
+                    blocks.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Long, SortedTable.Block> entry = entries.next();
+                if (entry.getKey() >>> 32 == tableId) {
+                    bytes -= entry.getValue().getSize();
+                    entries.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long key(long tableId, int blockIndex) {
+        return (tableId << 32) | (blockIndex & 0xffffffffL);
+    }
+}
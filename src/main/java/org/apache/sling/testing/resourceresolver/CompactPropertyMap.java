@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Memory-efficient property map. Property names and slot layout are held by a shared {@link PropertyShape},
+ * the map itself only stores the values: <code>Long</code>, <code>Double</code> and <code>Boolean</code> values
+ * unboxed in a <code>long[]</code>, all other values in an <code>Object[]</code>.
+ * Values are returned boxed, so the map behaves like a {@link java.util.HashMap} (iteration is in insertion order).
+ * Like HashMap, null property names are supported and the map is not thread-safe.
+ */
+final class CompactPropertyMap extends AbstractMap<String, Object> {
+
+    private static final long[] NO_PRIMITIVES = new long[0];
+    private static final Object[] NO_REFERENCES = new Object[0];
+
+    private PropertyShape shape;
+    private long[] primitives = NO_PRIMITIVES;
+    private Object[] references = NO_REFERENCES;
+    private int modCount;
+
+    /**
+     * @param root Empty shape the shapes of this map are derived from
+     */
+    CompactPropertyMap(@NotNull PropertyShape root) {
+        this.shape = root.getRoot();
+    }
+
+    /**
+     * @param root Empty shape the shapes of this map are derived from
+     * @param map Initial properties
+     */
+    CompactPropertyMap(@NotNull PropertyShape root, @NotNull Map<String, Object> map) {
+        this(root);
+        putAll(map);
+    }
+
+    PropertyShape getShape() {
+        return shape;
+    }
+
+    @Override
+    public int size() {
+        return shape.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shape.indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int position = shape.indexOf(key);
+        return position >= 0 ? getValue(position) : null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        byte kind = PropertyShape.kindOf(value);
+        int position = shape.indexOf(key);
+        if (position >= 0) {
+            Object previous = getValue(position);
+            if (shape.getKind(position) == kind) {
+                setValue(position, value);
+            } else {
+                // kind of value changed - rebuild slots, keeping the position of the property
+                rebuild(position, false, kind, value);
+            }
+            return previous;
+        }
+        append(key, kind, value);
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int position = shape.indexOf(key);
+        if (position < 0) {
+            return null;
+        }
+        Object previous = getValue(position);
+        rebuild(position, true, PropertyShape.REFERENCE, null);
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        shape = shape.getRoot();
+        primitives = NO_PRIMITIVES;
+        references = NO_REFERENCES;
+        modCount++;
+    }
+
+    @Override
+    public @NotNull Set<Map.Entry<String, Object>> entrySet() {
+        return new EntrySet();
+    }
+
+    private Object getValue(int position) {
+        int slot = shape.getSlot(position);
+        switch (shape.getKind(position)) {
+            case PropertyShape.LONG:
+                return primitives[slot];
+            case PropertyShape.DOUBLE:
+                return Double.longBitsToDouble(primitives[slot]);
+            case PropertyShape.BOOLEAN:
+                return primitives[slot] != 0;
+            default:
+                return references[slot];
+        }
+    }
+
+    private void setValue(int position, Object value) {
+        int slot = shape.getSlot(position);
+        switch (shape.getKind(position)) {
+            case PropertyShape.LONG:
+                primitives[slot] = (Long) value;
+                break;
+            case PropertyShape.DOUBLE:
+                primitives[slot] = Double.doubleToRawLongBits((Double) value);
+                break;
+            case PropertyShape.BOOLEAN:
+                primitives[slot] = ((Boolean) value) ? 1 : 0;
+                break;
+            default:
+                references[slot] = value;
+                break;
+        }
+    }
+
+    private void append(String key, byte kind, Object value) {
+        shape = shape.with(key, kind);
+        if (primitives.length < shape.getPrimitiveCount()) {
+            long[] newPrimitives = new long[shape.getPrimitiveCount()];
+            System.arraycopy(primitives, 0, newPrimitives, 0, primitives.length);
+            primitives = newPrimitives;
+        }
+        if (references.length < shape.getReferenceCount()) {
+            Object[] newReferences = new Object[shape.getReferenceCount()];
+            System.arraycopy(references, 0, newReferences, 0, references.length);
+            references = newReferences;
+        }
+        setValue(shape.size() - 1, value);
+        modCount++;
+    }
+
+    /**
+     * Rebuilds shape and slots after removing a property or changing the kind of its value.
+     * @param changedPosition Position of the removed or changed property
+     * @param remove true to remove the property
+     * @param kind New kind of the changed property
+     * @param value New value of the changed property
+     */
+    private void rebuild(int changedPosition, boolean remove, byte kind, Object value) {
+        PropertyShape oldShape = shape;
+        long[] oldPrimitives = primitives;
+        Object[] oldReferences = references;
+        PropertyShape newShape = oldShape.getRoot();
+        for (int position = 0; position < oldShape.size(); position++) {
+            if (position != changedPosition) {
+                newShape = newShape.with(oldShape.getName(position), oldShape.getKind(position));
+            } else if (!remove) {
+                newShape = newShape.with(oldShape.getName(position), kind);
+            }
+        }
+        shape = newShape;
+        primitives = newShape.getPrimitiveCount() > 0 ? new long[newShape.getPrimitiveCount()] : NO_PRIMITIVES;
+        references = newShape.getReferenceCount() > 0 ? new Object[newShape.getReferenceCount()] : NO_REFERENCES;
+        int newPosition = 0;
+        for (int position = 0; position < oldShape.size(); position++) {
+            if (position == changedPosition) {
+                if (!remove) {
+                    setValue(newPosition++, value);
+                }
+                continue;
+            }
+            int oldSlot = oldShape.getSlot(position);
+            int newSlot = newShape.getSlot(newPosition++);
+            if (oldShape.getKind(position) == PropertyShape.REFERENCE) {
+                references[newSlot] = oldReferences[oldSlot];
+            } else {
+                primitives[newSlot] = oldPrimitives[oldSlot];
+            }
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public @NotNull Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return shape.size();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        private int position;
+        private String lastName;
+        private boolean canRemove;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return position < shape.size();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastName = shape.getName(position);
+            canRemove = true;
+            Map.Entry<String, Object> entry = new PropertyEntry(lastName, getValue(position));
+            position++;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            CompactPropertyMap.this.remove(lastName);
+            canRemove = false;
+            position--;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class PropertyEntry extends SimpleEntry<String, Object> {
+        private static final long serialVersionUID = 1L;
+
+        PropertyEntry(String key, Object value) {
+            super(key, value);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            super.setValue(value);
+            return CompactPropertyMap.this.put(getKey(), value);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Cache of converted property values of a {@link MockValueMap}, keyed by property name and target type.
+ * Each entry remembers the raw value it was converted from and is only used as long as the property still
+ * holds this very value instance, so modifications that bypass the value map methods are detected as well.
+ * Boxed primitives are compared by value instead, as compact property storage boxes them again on every read.
+ * Mutable results (Calendar, Date, arrays) are copied before they are handed out.
+ */
+final class ConversionCache {
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = Set.of(
+            String.class,
+            Long.class,
+            Integer.class,
+            Short.class,
+            Byte.class,
+            Double.class,
+            Float.class,
+            Boolean.class,
+            BigDecimal.class);
+
+    private final Map<String, Map<Class<?>, Conversion>> conversions = new ConcurrentHashMap<>();
+
+    /**
+     * @param type Target type
+     * @return true if conversion results for the given type can be cached
+     */
+    static boolean isCacheable(@NotNull Class<?> type) {
+        if (type.isArray()) {
+            Class<?> componentType = type.getComponentType();
+            return componentType.isPrimitive() || IMMUTABLE_TYPES.contains(componentType);
+        }
+        return IMMUTABLE_TYPES.contains(type) || type == Calendar.class || type == Date.class;
+    }
+
+    /**
+     * @param name Property name
+     * @param type Target type
+     * @param rawValue Current raw value of the property
+     * @return Cached conversion for the given raw value, or null if not cached
+     */
+    @Nullable
+    Conversion get(@NotNull String name, @NotNull Class<?> type, @NotNull Object rawValue) {
+        Map<Class<?>, Conversion> byType = conversions.get(name);
+        if (byType == null) {
+            return null;
+        }
+        Conversion conversion = byType.get(type);
+        return conversion != null && conversion.isConvertedFrom(rawValue) ? conversion : null;
+    }
+
+    /**
+     * @param name Property name
+     * @param type Target type
+     * @param rawValue Raw value
+     * @param value Converted value
+     */
+    void put(@NotNull String name, @NotNull Class<?> type, @NotNull Object rawValue, @Nullable Object value) {
+        conversions
+                .computeIfAbsent(name, key -> new ConcurrentHashMap<>(4))
+                .put(type, new Conversion(rawValue, copy(value)));
+    }
+
+    void invalidate(@NotNull Object name) {
+        conversions.remove(name);
+    }
+
+    void clear() {
+        conversions.clear();
+    }
+
+    static Object copy(Object value) {
+        if (value instanceof Calendar calendar) {
+            return calendar.clone();
+        } else if (value instanceof Date date) {
+            return date.clone();
+        } else if (value instanceof Object[] array) {
+            return array.clone();
+        } else if (value != null && value.getClass().isArray()) {
+            return copyPrimitiveArray(value);
+        }
+        return value;
+    }
+
+    private static Object copyPrimitiveArray(Object value) {
+        int length = java.lang.reflect.Array.getLength(value);
+        Object result = java.lang.reflect.Array.newInstance(value.getClass().getComponentType(), length);
+        System.arraycopy(value, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Converted value together with the raw value it was converted from.
+     */
+    static final class Conversion {
+
+        private final Object rawValue;
+        private final Object value;
+
+        Conversion(Object rawValue, Object value) {
+            this.rawValue = rawValue;
+            this.value = value;
+        }
+
+        boolean isConvertedFrom(Object value) {
+            if (rawValue == value) {
+                return true;
+            }
+            return (value instanceof Long || value instanceof Double || value instanceof Boolean)
+                    && value.equals(rawValue);
+        }
+
+        /**
+         * @return Copy of the converted value
+         */
+        Object getValue() {
+            return copy(value);
+        }
+    }
+}
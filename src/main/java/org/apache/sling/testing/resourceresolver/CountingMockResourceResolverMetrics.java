@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Metrics sink that counts the operations of the mock resource resolvers, e.g. to assert in a test that
+ * a certain code path does not exceed a given number of resource lookups.
+ */
+public class CountingMockResourceResolverMetrics implements MockResourceResolverMetrics {
+
+    private final LongAdder resourceHits = new LongAdder();
+    private final LongAdder resourceMisses = new LongAdder();
+    private final LongAdder resourceLookupNanos = new LongAdder();
+    private final LongAdder propertyResourceFallbacks = new LongAdder();
+    private final LongAdder searchPathProbes = new LongAdder();
+    private final LongAdder listChildrenCalls = new LongAdder();
+    private final LongAdder listedChildren = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder committedChanges = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder queryDispatches = new LongAdder();
+    private final LongAdder queryDispatchNanos = new LongAdder();
+
+    @Override
+    public void resourceHit(@NotNull String path, long durationNanos) {
+        resourceHits.increment();
+        resourceLookupNanos.add(durationNanos);
+    }
+
+    @Override
+    public void resourceMiss(@NotNull String path, long durationNanos) {
+        resourceMisses.increment();
+        resourceLookupNanos.add(durationNanos);
+    }
+
+    @Override
+    public void propertyResourceFallback(@NotNull String path) {
+        propertyResourceFallbacks.increment();
+    }
+
+    @Override
+    public void searchPathProbe(@NotNull String path) {
+        searchPathProbes.increment();
+    }
+
+    @Override
+    public void listChildren(@NotNull String parentPath, int size) {
+        listChildrenCalls.increment();
+        listedChildren.add(size);
+    }
+
+    @Override
+    public void commit(int changes, long durationNanos) {
+        commits.increment();
+        committedChanges.add(changes);
+        commitNanos.add(durationNanos);
+    }
+
+    @Override
+    public void eventSent(@NotNull String topic, @NotNull String path) {
+        eventsSent.increment();
+    }
+
+    @Override
+    public void queryDispatch(@NotNull String query, @Nullable String language, long durationNanos) {
+        queryDispatches.increment();
+        queryDispatchNanos.add(durationNanos);
+    }
+
+    /**
+     * @return Current values of all counters
+     */
+    public @NotNull Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+        resourceHits.reset();
+        resourceMisses.reset();
+        resourceLookupNanos.reset();
+        propertyResourceFallbacks.reset();
+        searchPathProbes.reset();
+        listChildrenCalls.reset();
+        listedChildren.reset();
+        commits.reset();
+        committedChanges.reset();
+        commitNanos.reset();
+        eventsSent.reset();
+        queryDispatches.reset();
+        queryDispatchNanos.reset();
+    }
+
+    /**
+     * Immutable snapshot of the counters.
+     */
+    public static final class Snapshot {
+
+        private final long resourceHits;
+        private final long resourceMisses;
+        private final long resourceLookupNanos;
+        private final long propertyResourceFallbacks;
+        private final long searchPathProbes;
+        private final long listChildrenCalls;
+        private final long listedChildren;
+        private final long commits;
+        private final long committedChanges;
+        private final long commitNanos;
+        private final long eventsSent;
+        private final long queryDispatches;
+        private final long queryDispatchNanos;
+
+        Snapshot(CountingMockResourceResolverMetrics metrics) {
+            this.resourceHits = metrics.resourceHits.sum();
+            this.resourceMisses = metrics.resourceMisses.sum();
+            this.resourceLookupNanos = metrics.resourceLookupNanos.sum();
+            this.propertyResourceFallbacks = metrics.propertyResourceFallbacks.sum();
+            this.searchPathProbes = metrics.searchPathProbes.sum();
+            this.listChildrenCalls = metrics.listChildrenCalls.sum();
+            this.listedChildren = metrics.listedChildren.sum();
+            this.commits = metrics.commits.sum();
+            this.committedChanges = metrics.committedChanges.sum();
+            this.commitNanos = metrics.commitNanos.sum();
+            this.eventsSent = metrics.eventsSent.sum();
+            this.queryDispatches = metrics.queryDispatches.sum();
+            this.queryDispatchNanos = metrics.queryDispatchNanos.sum();
+        }
+
+        /**
+         * @return Number of resource lookups (hits and misses)
+         */
+        public long getResourceLookups() {
+            return resourceHits + resourceMisses;
+        }
+
+        public long getResourceHits() {
+            return resourceHits;
+        }
+
+        public long getResourceMisses() {
+            return resourceMisses;
+        }
+
+        public long getResourceLookupNanos() {
+            return resourceLookupNanos;
+        }
+
+        public long getPropertyResourceFallbacks() {
+            return propertyResourceFallbacks;
+        }
+
+        public long getSearchPathProbes() {
+            return searchPathProbes;
+        }
+
+        public long getListChildrenCalls() {
+            return listChildrenCalls;
+        }
+
+        /**
+         * @return Total number of children returned by all list children calls
+         */
+        public long getListedChildren() {
+            return listedChildren;
+        }
+
+        public long getCommits() {
+            return commits;
+        }
+
+        /**
+         * @return Total number of added, changed or deleted resources of all commits
+         */
+        public long getCommittedChanges() {
+            return committedChanges;
+        }
+
+        public long getCommitNanos() {
+            return commitNanos;
+        }
+
+        public long getEventsSent() {
+            return eventsSent;
+        }
+
+        public long getQueryDispatches() {
+            return queryDispatches;
+        }
+
+        public long getQueryDispatchNanos() {
+            return queryDispatchNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot [resourceHits=" + resourceHits + ", resourceMisses=" + resourceMisses
+                    + ", propertyResourceFallbacks=" + propertyResourceFallbacks + ", searchPathProbes="
+                    + searchPathProbes + ", listChildrenCalls=" + listChildrenCalls + ", listedChildren="
+                    + listedChildren + ", commits=" + commits + ", committedChanges=" + committedChanges
+                    + ", eventsSent=" + eventsSent + ", queryDispatches=" + queryDispatches + "]";
+        }
+    }
+}
@@ -0,0 +1,575 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Resource store for fixtures that do not fit in the heap, organized as a small log-structured merge tree.
+ * <p>Changed resources are kept in an in-memory memtable with their properties encoded by {@link ValueCodec}.
+ * When the memtable exceeds the configured size it is flushed to a {@link SortedTable} file. Tables are merged in
+ * a size-tiered manner, so the number of tables grows logarithmically with the number of resources. Lookups check
+ * the memtable and then the tables from newest to oldest, reading blocks through a shared {@link BlockCache}.</p>
+ * <p>As keys are sorted by path, children and subtrees are found with prefix range scans instead of iterating over
+ * all resources - and resources are returned in path order instead of creation order.</p>
+ * <p>Values returned by {@link #get(Object)} are decoded copies, so modifications only take effect when the
+ * resource is stored again via {@link #put(String, Map)} - which is what a commit does for changed resources.
+ * {@link #put(String, Map)} and {@link #remove(Object)} do not return the previous value to avoid decoding it.
+ * Spooled binaries are referenced instead of being copied into the encoded properties, so all decoded copies share
+ * the temporary file of the binary - they are kept until the store is closed. The files are working storage only
+ * and are deleted when the store is opened and closed.</p>
+ * <p>Not thread-safe - access is guarded by the resources lock of the factory.</p>
+ */
+final class DiskResourceStore extends AbstractMap<String, Map<String, Object>> implements Closeable {
+
+    static final String FILE_PREFIX = "resources-";
+    static final String FILE_SUFFIX = ".sst";
+
+    // approximate heap overhead of a memtable entry
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Path directory;
+    private final long memtableSize;
+    private final int binarySpoolThreshold;
+    private final StringInterner interner;
+    private final ValueCodec.BinaryReferences binaries = new ValueCodec.BinaryReferences();
+    private final BlockCache blockCache;
+    private final Set<Map.Entry<String, Map<String, Object>>> entrySet = new EntrySet();
+
+    private NavigableMap<String, byte[]> memtable = new TreeMap<>();
+    private long memtableBytes;
+    /** Tables, newest first */
+    private final List<SortedTable> tables = new ArrayList<>();
+
+    private long nextTableId;
+    private int size;
+
+    /**
+     * @param directory Directory for the table files, created if it does not exist
+     * @param memtableSize Size of the memtable in bytes before it is flushed to a table file
+     * @param blockCacheSize Size of the block cache in bytes
+     * @param binarySpoolThreshold Binaries exceeding this size are spooled to temporary files when read
+     * @param interner Interner for the names of decoded properties, or null to keep the decoded names
+     * @throws IOException I/O exception
+     */
+    DiskResourceStore(
+            @NotNull Path directory,
+            long memtableSize,
+            long blockCacheSize,
+            int binarySpoolThreshold,
+            @Nullable StringInterner interner)
+            throws IOException {
+        this.directory = directory;
+        this.memtableSize = memtableSize;
+        this.binarySpoolThreshold = binarySpoolThreshold;
+        this.interner = interner;
+        this.blockCache = new BlockCache(blockCacheSize);
+        Files.createDirectories(directory);
+        deleteTableFiles();
+    }
+
+    @Override
+    public Map<String, Object> get(Object key) {
+        byte[] value = key instanceof String path ? getEncoded(path) : null;
+        return value != null ? decode(value) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String path && getEncoded(path) != null;
+    }
+
+    /**
+     * @return Always null - the previous value is not decoded, use {@link #containsKey(Object)} before
+     */
+    @Override
+    public Map<String, Object> put(String key, Map<String, Object> value) {
+        if (getEncoded(key) == null) {
+            size++;
+        }
+        write(key, encode(value));
+        return null;
+    }
+
+    /**
+     * @return Always null - the previous value is not decoded, use {@link #containsKey(Object)} before
+     */
+    @Override
+    public Map<String, Object> remove(Object key) {
+        if (key instanceof String path && getEncoded(path) != null) {
+            write(path, SortedTable.TOMBSTONE);
+            size--;
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        try {
+            deleteTables();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        memtable = new TreeMap<>();
+        memtableBytes = 0;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return All resources in path order
+     */
+    @Override
+    public @NotNull Set<Map.Entry<String, Map<String, Object>>> entrySet() {
+        return entrySet;
+    }
+
+    /**
+     * @param pathPrefix Path prefix
+     * @return All resources with a path starting with the given prefix, in path order
+     */
+    @NotNull
+    Iterable<Map.Entry<String, Map<String, Object>>> scan(@NotNull String pathPrefix) {
+        return () -> new ScanIterator(pathPrefix, false);
+    }
+
+    /**
+     * Lists the children of a resource, skipping the subtrees of the children by seeking past them.
+     * @param parentPath Parent path
+     * @return Direct children of the given parent, in path order
+     */
+    @NotNull
+    Iterable<Map.Entry<String, Map<String, Object>>> scanChildren(@NotNull String parentPath) {
+        String pathPrefix = "/".equals(parentPath) ? "/" : parentPath + "/";
+        return () -> new ScanIterator(pathPrefix, true);
+    }
+
+    /**
+     * @param path Path
+     * @return Resource with the given path - decoding its properties lazily - or null
+     */
+    @Nullable
+    Map.Entry<String, Map<String, Object>> getEntry(@NotNull String path) {
+        byte[] value = getEncoded(path);
+        return value != null ? new StoredEntry(path, value) : null;
+    }
+
+    /**
+     * Writes the memtable to a new table file and merges tables of similar size.
+     */
+    void flush() {
+        if (memtable.isEmpty()) {
+            return;
+        }
+        try {
+            EntryCursor source = new MemtableCursor(memtable);
+            tables.add(0, writeTable(tables.isEmpty() ? new LiveCursor(source) : source));
+            memtable = new TreeMap<>();
+            memtableBytes = 0;
+            while (tables.size() >= 2
+                    && tables.get(0).getFileSize() * 2 >= tables.get(1).getFileSize()) {
+                SortedTable newer = tables.get(0);
+                SortedTable older = tables.get(1);
+                EntryCursor merged = new MergingCursor(List.of(newer.cursor(), older.cursor()));
+                // tombstones are only needed as long as older tables may contain the deleted keys
+                tables.set(0, writeTable(tables.size() == 2 ? new LiveCursor(merged) : merged));
+                tables.remove(1);
+                newer.delete();
+                older.delete();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to flush resources to " + directory, ex);
+        }
+    }
+
+    int getTableCount() {
+        return tables.size();
+    }
+
+    @NotNull
+    BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * Closes the store and deletes all table files.
+     */
+    @Override
+    public void close() throws IOException {
+        deleteTables();
+        binaries.clear();
+        memtable = new TreeMap<>();
+        memtableBytes = 0;
+        size = 0;
+    }
+
+    private byte[] getEncoded(String key) {
+        byte[] value = memtable.get(key);
+        try {
+            for (int i = 0; value == null && i < tables.size(); i++) {
+                value = tables.get(i).get(key);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read resource " + key, ex);
+        }
+        return value == SortedTable.TOMBSTONE ? null : value;
+    }
+
+    private void write(String key, byte[] value) {
+        memtable.put(key, value);
+        memtableBytes += key.length() * 2L + value.length + ENTRY_OVERHEAD;
+        if (memtableBytes >= memtableSize) {
+            flush();
+        }
+    }
+
+    private byte[] encode(Map<String, Object> value) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            ValueCodec.writeProperties(out, MockResourceResolver.getRawProperties(value), binaries);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to store resource properties.", ex);
+        }
+        return buffer.toByteArray();
+    }
+
+    private Map<String, Object> decode(byte[] value) {
+        try {
+            return ValueCodec.readProperties(
+                    new DataInputStream(new ByteArrayInputStream(value)), interner, binarySpoolThreshold, binaries);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read resource properties.", ex);
+        }
+    }
+
+    private SortedTable writeTable(EntryCursor entries) throws IOException {
+        long id = nextTableId++;
+        return SortedTable.write(id, directory.resolve(FILE_PREFIX + id + FILE_SUFFIX), entries, blockCache);
+    }
+
+    private void deleteTables() throws IOException {
+        for (SortedTable table : tables) {
+            table.delete();
+        }
+        tables.clear();
+    }
+
+    private void deleteTableFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private EntryCursor newCursor() throws IOException {
+        List<EntryCursor> sources = new ArrayList<>(tables.size() + 1);
+        sources.add(new MemtableCursor(memtable));
+        for (SortedTable table : tables) {
+            sources.add(table.cursor());
+        }
+        return new LiveCursor(new MergingCursor(sources));
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Map<String, Object>>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Map<String, Object>>> iterator() {
+            return new ScanIterator("", false);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Iterates over resources with a path prefix, decoding their properties lazily.
+     */
+    private final class ScanIterator implements Iterator<Map.Entry<String, Map<String, Object>>> {
+
+        private final String pathPrefix;
+        private final boolean childrenOnly;
+        private final EntryCursor cursor;
+
+        ScanIterator(String pathPrefix, boolean childrenOnly) {
+            this.pathPrefix = pathPrefix;
+            this.childrenOnly = childrenOnly;
+            try {
+                this.cursor = newCursor();
+                cursor.seek(pathPrefix);
+                skipDescendants();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.isValid() && cursor.getKey().startsWith(pathPrefix);
+        }
+
+        @Override
+        public Map.Entry<String, Map<String, Object>> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, Map<String, Object>> entry = new StoredEntry(cursor.getKey(), cursor.getValue());
+            try {
+                cursor.next();
+                skipDescendants();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return entry;
+        }
+
+        /**
+         * When listing children, seeks past the subtree of a child and the parent itself.
+         */
+        private void skipDescendants() throws IOException {
+            while (childrenOnly && hasNext()) {
+                String relativePath = cursor.getKey().substring(pathPrefix.length());
+                int slash = relativePath.indexOf('/');
+                if (slash >= 0) {
+                    // '0' is the character following '/'
+                    cursor.seek(pathPrefix + relativePath.substring(0, slash) + '0');
+                } else if (relativePath.isEmpty()) {
+                    cursor.next();
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private final class StoredEntry implements Map.Entry<String, Map<String, Object>> {
+
+        private final String key;
+        private final byte[] value;
+        private Map<String, Object> properties;
+
+        StoredEntry(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Map<String, Object> getValue() {
+            if (properties == null) {
+                properties = decode(value);
+            }
+            return properties;
+        }
+
+        @Override
+        public Map<String, Object> setValue(Map<String, Object> newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Map.Entry<?, ?> other
+                    && key.equals(other.getKey())
+                    && getValue().equals(other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ getValue().hashCode();
+        }
+    }
+
+    private static final class MemtableCursor implements EntryCursor {
+
+        private final NavigableMap<String, byte[]> map;
+        private Iterator<Map.Entry<String, byte[]>> iterator;
+        private Map.Entry<String, byte[]> current;
+
+        MemtableCursor(NavigableMap<String, byte[]> map) {
+            this.map = map;
+            this.iterator = map.entrySet().iterator();
+            next();
+        }
+
+        @Override
+        public boolean isValid() {
+            return current != null;
+        }
+
+        @Override
+        public @NotNull String getKey() {
+            return current.getKey();
+        }
+
+        @Override
+        public byte @NotNull [] getValue() {
+            return current.getValue();
+        }
+
+        @Override
+        public void next() {
+            current = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public void seek(@NotNull String key) {
+            iterator = map.tailMap(key, true).entrySet().iterator();
+            next();
+        }
+    }
+
+    /**
+     * Merges cursors over overlapping key ranges. For keys contained in multiple sources, the value of the first
+     * (newest) source wins.
+     */
+    private static final class MergingCursor implements EntryCursor {
+
+        private final List<EntryCursor> sources;
+        private String key;
+        private byte[] value;
+
+        MergingCursor(List<EntryCursor> sources) {
+            this.sources = sources;
+            select();
+        }
+
+        @Override
+        public boolean isValid() {
+            return key != null;
+        }
+
+        @Override
+        public @NotNull String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte @NotNull [] getValue() {
+            return value;
+        }
+
+        @Override
+        public void next() throws IOException {
+            for (EntryCursor source : sources) {
+                if (source.isValid() && source.getKey().equals(key)) {
+                    source.next();
+                }
+            }
+            select();
+        }
+
+        @Override
+        public void seek(@NotNull String seekKey) throws IOException {
+            for (EntryCursor source : sources) {
+                source.seek(seekKey);
+            }
+            select();
+        }
+
+        private void select() {
+            key = null;
+            value = null;
+            for (EntryCursor source : sources) {
+                if (source.isValid() && (key == null || source.getKey().compareTo(key) < 0)) {
+                    key = source.getKey();
+                    value = source.getValue();
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips tombstones.
+     */
+    private static final class LiveCursor implements EntryCursor {
+
+        private final EntryCursor delegate;
+
+        LiveCursor(EntryCursor delegate) throws IOException {
+            this.delegate = delegate;
+            skipTombstones();
+        }
+
+        @Override
+        public boolean isValid() {
+            return delegate.isValid();
+        }
+
+        @Override
+        public @NotNull String getKey() {
+            return delegate.getKey();
+        }
+
+        @Override
+        public byte @NotNull [] getValue() {
+            return delegate.getValue();
+        }
+
+        @Override
+        public void next() throws IOException {
+            delegate.next();
+            skipTombstones();
+        }
+
+        @Override
+        public void seek(@NotNull String key) throws IOException {
+            delegate.seek(key);
+            skipTombstones();
+        }
+
+        private void skipTombstones() throws IOException {
+            while (delegate.isValid() && delegate.getValue() == SortedTable.TOMBSTONE) {
+                delegate.next();
+            }
+        }
+    }
+}
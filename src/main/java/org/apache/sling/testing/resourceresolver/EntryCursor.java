@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Cursor over key/value entries in ascending key order, used by {@link DiskResourceStore} and {@link SortedTable}.
+ */
+interface EntryCursor {
+
+    /**
+     * @return true if the cursor is positioned at an entry, false if it is exhausted
+     */
+    boolean isValid();
+
+    /**
+     * @return Key of the current entry
+     */
+    @NotNull
+    String getKey();
+
+    /**
+     * @return Value of the current entry, {@link SortedTable#TOMBSTONE} for deleted keys
+     */
+    byte @NotNull [] getValue();
+
+    /**
+     * Moves to the next entry.
+     */
+    void next() throws IOException;
+
+    /**
+     * Moves to the first entry with a key greater than or equal to the given key.
+     * @param key Key
+     */
+    void seek(@NotNull String key) throws IOException;
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Copy-on-write list of find/query handlers. Each modification creates a new immutable snapshot with an
+ * incremented version number, so the list can be modified concurrently to dispatching queries, and caches
+ * derived from the handler list can detect when they have to be invalidated.
+ * @param <T> Handler type
+ */
+class HandlerList<T> extends AbstractList<T> implements RandomAccess {
+
+    private volatile Snapshot<T> snapshot = new Snapshot<>(new Object[0], 0);
+
+    /**
+     * @return Current immutable snapshot of the handler list
+     */
+    Snapshot<T> snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public T get(int index) {
+        return snapshot.get(index);
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public synchronized void add(int index, T element) {
+        Object[] current = snapshot.handlers;
+        if (index < 0 || index > current.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+        }
+        Object[] updated = new Object[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        updated[index] = element;
+        System.arraycopy(current, index, updated, index + 1, current.length - index);
+        update(updated);
+    }
+
+    @Override
+    public synchronized T set(int index, T element) {
+        T previous = get(index);
+        Object[] updated = snapshot.handlers.clone();
+        updated[index] = element;
+        update(updated);
+        return previous;
+    }
+
+    @Override
+    public synchronized T remove(int index) {
+        T previous = get(index);
+        Object[] current = snapshot.handlers;
+        Object[] updated = new Object[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        update(updated);
+        return previous;
+    }
+
+    @Override
+    public synchronized void clear() {
+        update(new Object[0]);
+    }
+
+    @Override
+    public synchronized boolean removeIf(Predicate<? super T> filter) {
+        Snapshot<T> current = snapshot;
+        Object[] updated = Arrays.stream(current.handlers)
+                .filter(item -> !filter.test(current.cast(item)))
+                .toArray();
+        if (updated.length == current.handlers.length) {
+            return false;
+        }
+        update(updated);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(Object element) {
+        int index = indexOf(element);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeAll(Collection<?> elements) {
+        Objects.requireNonNull(elements);
+        return removeIf(elements::contains);
+    }
+
+    @Override
+    public synchronized boolean retainAll(Collection<?> elements) {
+        Objects.requireNonNull(elements);
+        return removeIf(item -> !elements.contains(item));
+    }
+
+    /**
+     * Iterates over the snapshot at the time of creating the iterator; removing via the iterator is not supported,
+     * use {@link #remove(Object)} or {@link #removeIf(Predicate)} instead.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return snapshot.asList().iterator();
+    }
+
+    private void update(Object[] handlers) {
+        snapshot = new Snapshot<>(handlers, snapshot.getVersion() + 1);
+        modCount++;
+    }
+
+    /**
+     * Immutable snapshot of the handler list.
+     * @param <T> Handler type
+     */
+    static final class Snapshot<T> {
+
+        private final Object[] handlers;
+        private final int version;
+        private volatile QueryHandlerIndex index;
+
+        Snapshot(Object[] handlers, int version) {
+            this.handlers = handlers;
+            this.version = version;
+        }
+
+        int getVersion() {
+            return version;
+        }
+
+        int size() {
+            return handlers.length;
+        }
+
+        T get(int index) {
+            return cast(handlers[index]);
+        }
+
+        /**
+         * @return Index of the handlers by query language and pattern - built lazily
+         */
+        QueryHandlerIndex getIndex() {
+            QueryHandlerIndex result = index;
+            if (result == null) {
+                result = new QueryHandlerIndex(handlers);
+                index = result;
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T cast(Object item) {
+            return (T) item;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<T> asList() {
+            return (List<T>) Collections.unmodifiableList(Arrays.asList(handlers));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events emitted by {@link MockResourceResolver}.
+ * All events are disabled by default and have to be enabled explicitly in the recording settings,
+ * e.g. <code>jfr configure +org.apache.sling.testing.resourceresolver.ResourceLookup#enabled=true</code>.
+ * Events are only created while they are enabled, as the JIT compiler does not reliably eliminate the
+ * allocation of disabled events.
+ * <p>The <code>jdk.jfr</code> package is an optional import of the bundle. The event classes must only be
+ * used after one of the <code>isXxxEnabled</code> methods returned true, they do not load without it.
+ */
+final class JfrEvents {
+
+    private static final String CATEGORY_SLING = "Apache Sling";
+    private static final String CATEGORY_MOCK = "Resource Resolver Mock";
+    private static final String PREFIX = "org.apache.sling.testing.resourceresolver.";
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private JfrEvents() {
+        // static events only
+    }
+
+    /**
+     * @return true if resource lookup events are enabled in a running recording
+     */
+    static boolean isResourceLookupEnabled() {
+        return AVAILABLE && Recorder.isEnabled(ResourceLookup.class);
+    }
+
+    /**
+     * @return true if list children events are enabled in a running recording
+     */
+    static boolean isListChildrenEnabled() {
+        return AVAILABLE && Recorder.isEnabled(ListChildren.class);
+    }
+
+    /**
+     * @return true if commit events are enabled in a running recording
+     */
+    static boolean isCommitEnabled() {
+        return AVAILABLE && Recorder.isEnabled(Commit.class);
+    }
+
+    /**
+     * @return true if copy and move events are enabled in a running recording
+     */
+    static boolean isCopyMoveEnabled() {
+        return AVAILABLE && Recorder.isEnabled(CopyMove.class);
+    }
+
+    /**
+     * @return true if query dispatch events are enabled in a running recording
+     */
+    static boolean isQueryDispatchEnabled() {
+        return AVAILABLE && Recorder.isEnabled(QueryDispatch.class);
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, JfrEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Holds all references to the flight recorder API apart from the event classes.
+     */
+    private static final class Recorder {
+
+        private static final ClassValue<EventType> EVENT_TYPES = new ClassValue<EventType>() {
+            @Override
+            protected EventType computeValue(Class<?> type) {
+                return EventType.getEventType(type.asSubclass(Event.class));
+            }
+        };
+
+        static boolean isEnabled(Class<? extends Event> eventClass) {
+            if (!FlightRecorder.isInitialized()) {
+                // avoid initializing flight recorder via the event type lookup
+                return false;
+            }
+            return EVENT_TYPES.get(eventClass).isEnabled();
+        }
+    }
+
+    @Name(PREFIX + "ResourceLookup")
+    @Label("Resource Lookup")
+    @Description("Resource lookup via getResource")
+    @Category({CATEGORY_SLING, CATEGORY_MOCK})
+    @Enabled(false)
+    static final class ResourceLookup extends Event {
+
+        @Label("Path")
+        String path;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name(PREFIX + "ListChildren")
+    @Label("List Children")
+    @Description("Listing the children of a resource")
+    @Category({CATEGORY_SLING, CATEGORY_MOCK})
+    @Enabled(false)
+    static final class ListChildren extends Event {
+
+        @Label("Parent Path")
+        String path;
+
+        @Label("Children")
+        int childCount;
+    }
+
+    @Name(PREFIX + "Commit")
+    @Label("Commit")
+    @Description("Committing the changes of a resource resolver")
+    @Category({CATEGORY_SLING, CATEGORY_MOCK})
+    @Enabled(false)
+    static final class Commit extends Event {
+
+        @Label("Changed Resources")
+        int changes;
+
+        @Label("Sent Events")
+        int events;
+    }
+
+    @Name(PREFIX + "CopyMove")
+    @Label("Copy/Move")
+    @Description("Copying or moving a resource tree")
+    @Category({CATEGORY_SLING, CATEGORY_MOCK})
+    @Enabled(false)
+    static final class CopyMove extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Source Path")
+        String sourcePath;
+
+        @Label("Destination Path")
+        String destinationPath;
+    }
+
+    @Name(PREFIX + "QueryDispatch")
+    @Label("Query Dispatch")
+    @Description("Dispatching a find or query request to the registered handlers")
+    @Category({CATEGORY_SLING, CATEGORY_MOCK})
+    @Enabled(false)
+    static final class QueryDispatch extends Event {
+
+        @Label("Query")
+        String query;
+
+        @Label("Language")
+        String language;
+    }
+}
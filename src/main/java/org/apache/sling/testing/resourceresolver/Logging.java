@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Logs via SLF4J if it is available, otherwise via the platform logger.
+ * The <code>org.slf4j</code> package is an optional import of the bundle.
+ * Messages use the SLF4J <code>{}</code> placeholders, a trailing {@link Throwable} argument is logged as exception.
+ */
+final class Logging {
+
+    private static final boolean SLF4J_AVAILABLE = isSlf4jAvailable();
+
+    private final Slf4jLogger slf4jLogger;
+    private final System.Logger platformLogger;
+
+    private Logging(String name) {
+        if (SLF4J_AVAILABLE) {
+            this.slf4jLogger = new Slf4jLogger(name);
+            this.platformLogger = null;
+        } else {
+            this.slf4jLogger = null;
+            this.platformLogger = System.getLogger(name);
+        }
+    }
+
+    static @NotNull Logging getLogger(@NotNull Class<?> type) {
+        return new Logging(type.getName());
+    }
+
+    void debug(@NotNull String format, Object... args) {
+        if (slf4jLogger != null) {
+            slf4jLogger.logger.debug(format, args);
+        } else {
+            log(System.Logger.Level.DEBUG, format, args);
+        }
+    }
+
+    void warn(@NotNull String format, Object... args) {
+        if (slf4jLogger != null) {
+            slf4jLogger.logger.warn(format, args);
+        } else {
+            log(System.Logger.Level.WARNING, format, args);
+        }
+    }
+
+    private void log(System.Logger.Level level, String format, Object[] args) {
+        if (!platformLogger.isLoggable(level)) {
+            return;
+        }
+        int argCount = args.length;
+        Throwable thrown = null;
+        if (argCount > 0 && args[argCount - 1] instanceof Throwable) {
+            thrown = (Throwable) args[argCount - 1];
+            argCount--;
+        }
+        final StringBuilder message = new StringBuilder(format.length() + 16 * argCount);
+        int start = 0;
+        for (int i = 0; i < argCount; i++) {
+            final int placeholder = format.indexOf("{}", start);
+            if (placeholder < 0) {
+                break;
+            }
+            message.append(format, start, placeholder).append(args[i]);
+            start = placeholder + 2;
+        }
+        message.append(format, start, format.length());
+        if (thrown != null) {
+            platformLogger.log(level, message.toString(), thrown);
+        } else {
+            platformLogger.log(level, message.toString());
+        }
+    }
+
+    private static boolean isSlf4jAvailable() {
+        try {
+            Class.forName("org.slf4j.LoggerFactory", false, Logging.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Holds the only reference to the SLF4J API.
+     */
+    private static final class Slf4jLogger {
+
+        private final org.slf4j.Logger logger;
+
+        Slf4jLogger(String name) {
+            this.logger = org.slf4j.LoggerFactory.getLogger(name);
+        }
+    }
+}
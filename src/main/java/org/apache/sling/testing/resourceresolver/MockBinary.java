@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Binary property value that is spooled to a temporary file, used for streams exceeding the
+ * {@link MockResourceResolverFactoryOptions#setBinarySpoolThreshold(int) spool threshold}.
+ * The binary is immutable, so it can be shared between resources (e.g. when copying).
+ * The temporary file is deleted when the binary and all streams and channels opened on it are garbage collected.
+ */
+final class MockBinary {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Path file;
+    private final long length;
+    private final Cleaner.Cleanable cleanable;
+
+    private MockBinary(Path file, long length) {
+        this.file = file;
+        this.length = length;
+        this.cleanable = CLEANER.register(this, new DeleteFile(file));
+    }
+
+    /**
+     * Reads the given stream completely. If it does not exceed the threshold, the data is returned as byte array,
+     * otherwise it is spooled to a temporary file.
+     * @param stream Input stream
+     * @param threshold Maximum number of bytes kept in memory
+     * @return Byte array or {@link MockBinary}
+     * @throws IOException I/O exception
+     */
+    static @NotNull Object read(@NotNull InputStream stream, int threshold) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long count = IOUtils.copyLarge(stream, buffer, 0, (long) threshold + 1);
+        if (count <= threshold) {
+            return buffer.toByteArray();
+        }
+        Path file = Files.createTempFile("resourceresolver-mock-", ".bin");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            buffer.writeTo(out);
+            count += IOUtils.copyLarge(stream, out);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+        return new MockBinary(file, count);
+    }
+
+    /**
+     * @return New stream reading the binary from the temporary file. The file is opened on first read, and the
+     *         stream keeps the binary reachable so the file is not deleted while the stream is in use.
+     */
+    @NotNull
+    InputStream getStream() {
+        return new BinaryInputStream(this);
+    }
+
+    /**
+     * @return Read-only buffer memory-mapping the temporary file
+     */
+    @NotNull
+    ByteBuffer getByteBuffer() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to map binary from " + file, ex);
+        }
+    }
+
+    /**
+     * @return New read-only channel on the temporary file, keeping the binary reachable so the file is not
+     *         deleted while the channel is in use
+     */
+    @NotNull
+    SeekableByteChannel getChannel() {
+        try {
+            return new BinaryChannel(this, FileChannel.open(file, StandardOpenOption.READ));
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to read binary from " + file, ex);
+        }
+    }
+
+    /**
+     * @return Binary data - only use this if a byte array is explicitly requested
+     */
+    byte @NotNull [] toByteArray() {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to read binary from " + file, ex);
+        }
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Deletes the temporary file of a binary that was never handed out, e.g. because it is a duplicate.
+     */
+    void discard() {
+        cleanable.clean();
+    }
+
+    @Override
+    public String toString() {
+        return "MockBinary [length=" + length + "]";
+    }
+
+    /**
+     * Stream on the temporary file, opened lazily so handing out a stream that is never read is cheap.
+     */
+    private static final class BinaryInputStream extends InputStream {
+
+        private final MockBinary binary;
+        private InputStream delegate;
+        private boolean closed;
+
+        BinaryInputStream(MockBinary binary) {
+            this.binary = binary;
+        }
+
+        private InputStream delegate() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (delegate == null) {
+                delegate = Files.newInputStream(binary.file);
+            }
+            return delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return delegate().read();
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            return delegate().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return delegate().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+
+    /**
+     * Read-only channel on the temporary file.
+     */
+    private static final class BinaryChannel implements SeekableByteChannel {
+
+        @SuppressWarnings("unused")
+        private final MockBinary binary;
+
+        private final FileChannel delegate;
+
+        BinaryChannel(MockBinary binary, FileChannel delegate) {
+            this.binary = binary;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+    private static final class DeleteFile implements Runnable {
+
+        private final Path file;
+
+        DeleteFile(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+}
@@ -18,8 +18,17 @@
  */
 package org.apache.sling.testing.resourceresolver;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Allows to provide mocked search result for queries via {@link ResourceResolver}.
@@ -59,6 +68,61 @@ public final class MockFindQueryResources {
         toMockResourceResolver(resourceResolver).addQueryResourceHandlerInternal(handler);
     }
 
+    /**
+     * Finds resources by traversing the subtree of the given root path and evaluating the given predicate against
+     * each resource (including the root resource itself). This can be used in find resources handlers to emulate
+     * query execution without index. The traversal is executed in parallel for large subtrees if configured
+     * via {@link MockResourceResolverFactoryOptions#setTraversalParallelism(int)}; in this case the predicate
+     * must be thread-safe. The result order is the same as for sequential traversal.
+     * @param resourceResolver Resource resolver
+     * @param rootPath Root path of the subtree to traverse
+     * @param predicate Predicate that resources have to match
+     * @return Matching resources
+     * @throws IllegalStateException If the given resource resolver is not based on resourceresolver-mock
+     */
+    public static @NotNull Iterator<Resource> findResourcesByTraversal(
+            @NotNull ResourceResolver resourceResolver,
+            @NotNull String rootPath,
+            @NotNull Predicate<Resource> predicate) {
+        return toMockResourceResolver(resourceResolver)
+                .findResourcesByTraversal(rootPath, predicate)
+                .iterator();
+    }
+
+    /**
+     * Wraps the given handler to declare the query languages and query patterns it supports.
+     * The handler is only invoked for matching queries, see {@link MockQueryHandlerScope}.
+     * @param handler Handler
+     * @param languages Supported query languages. An empty collection means all languages.
+     * @param patterns Supported query patterns. If none are given, all queries are supported.
+     * @return Scoped handler
+     */
+    public static @NotNull MockFindResourcesHandler scopedFindResourcesHandler(
+            @NotNull MockFindResourcesHandler handler,
+            @NotNull Collection<String> languages,
+            @NotNull MockQueryPattern @NotNull ... patterns) {
+        if (handler instanceof MockPagedFindResourcesHandler) {
+            return new ScopedPagedFindResourcesHandler(
+                    (MockPagedFindResourcesHandler) handler, languages, Arrays.asList(patterns));
+        }
+        return new ScopedFindResourcesHandler(handler, languages, Arrays.asList(patterns));
+    }
+
+    /**
+     * Wraps the given handler to declare the query languages and query patterns it supports.
+     * The handler is only invoked for matching queries, see {@link MockQueryHandlerScope}.
+     * @param handler Handler
+     * @param languages Supported query languages. An empty collection means all languages.
+     * @param patterns Supported query patterns. If none are given, all queries are supported.
+     * @return Scoped handler
+     */
+    public static @NotNull MockQueryResourceHandler scopedQueryResourceHandler(
+            @NotNull MockQueryResourceHandler handler,
+            @NotNull Collection<String> languages,
+            @NotNull MockQueryPattern @NotNull ... patterns) {
+        return new ScopedQueryResourceHandler(handler, languages, Arrays.asList(patterns));
+    }
+
     private static @NotNull MockResourceResolver toMockResourceResolver(@NotNull ResourceResolver resourceResolver) {
         MockResourceResolver mockResourceResolver = null;
         if (resourceResolver instanceof MockResourceResolver) {
@@ -71,4 +135,80 @@ public final class MockFindQueryResources {
         }
         return mockResourceResolver;
     }
+
+    private abstract static class AbstractScopedHandler implements MockQueryHandlerScope {
+
+        private final Collection<String> languages;
+        private final Collection<MockQueryPattern> patterns;
+
+        AbstractScopedHandler(Collection<String> languages, Collection<MockQueryPattern> patterns) {
+            this.languages = List.copyOf(languages);
+            this.patterns = List.copyOf(patterns);
+        }
+
+        @Override
+        public @NotNull Collection<String> getLanguages() {
+            return languages;
+        }
+
+        @Override
+        public @NotNull Collection<MockQueryPattern> getQueryPatterns() {
+            return patterns;
+        }
+    }
+
+    private static class ScopedFindResourcesHandler extends AbstractScopedHandler implements MockFindResourcesHandler {
+
+        private final MockFindResourcesHandler delegate;
+
+        ScopedFindResourcesHandler(
+                MockFindResourcesHandler delegate,
+                Collection<String> languages,
+                Collection<MockQueryPattern> patterns) {
+            super(languages, patterns);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public @Nullable Iterator<Resource> findResources(@NotNull String query, String language) {
+            return delegate.findResources(query, language);
+        }
+    }
+
+    private static class ScopedPagedFindResourcesHandler extends AbstractScopedHandler
+            implements MockPagedFindResourcesHandler {
+
+        private final MockPagedFindResourcesHandler delegate;
+
+        ScopedPagedFindResourcesHandler(
+                MockPagedFindResourcesHandler delegate,
+                Collection<String> languages,
+                Collection<MockQueryPattern> patterns) {
+            super(languages, patterns);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public @Nullable Iterator<Resource> findResources(@NotNull MockQuery query) {
+            return delegate.findResources(query);
+        }
+    }
+
+    private static class ScopedQueryResourceHandler extends AbstractScopedHandler implements MockQueryResourceHandler {
+
+        private final MockQueryResourceHandler delegate;
+
+        ScopedQueryResourceHandler(
+                MockQueryResourceHandler delegate,
+                Collection<String> languages,
+                Collection<MockQueryPattern> patterns) {
+            super(languages, patterns);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public @Nullable Iterator<Map<String, Object>> queryResources(@NotNull String query, String language) {
+            return delegate.queryResources(query, language);
+        }
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Iterator;
+
+import org.apache.sling.api.resource.Resource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Can provide a paged result when finding resources using a certain query/language.
+ * In contrast to {@link MockFindResourcesHandler} the handler gets the offset, limit and ordering of the query
+ * and is expected to return only the requested page of the result in the requested order.
+ */
+@ConsumerType
+public interface MockPagedFindResourcesHandler extends MockFindResourcesHandler {
+
+    /**
+     * @param query Query including paging and ordering information
+     * @return Returns a non-null value if a mocked result is available. The result has to contain only
+     *         the items of the requested page, see {@link MockQuery#page(Iterator)}.
+     */
+    @Nullable
+    Iterator<Resource> findResources(@NotNull MockQuery query);
+
+    @Override
+    default @Nullable Iterator<Resource> findResources(final @NotNull String query, final String language) {
+        return findResources(new MockQuery(query, language));
+    }
+}
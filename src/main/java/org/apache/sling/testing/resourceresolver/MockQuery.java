@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Query passed to {@link MockPagedFindResourcesHandler}.
+ * <p>For JCR-SQL2 queries the paging and ordering information is extracted from the query statement.
+ * Paging is supported via a trailing <code>LIMIT n [OFFSET m]</code> clause or via the
+ * <code>OPTION(OFFSET m, LIMIT n)</code> clause supported by Apache Jackrabbit Oak.
+ * The query is parsed lazily on first access.</p>
+ */
+public final class MockQuery {
+
+    /**
+     * Limit value if the query is not limited.
+     */
+    public static final long NO_LIMIT = -1;
+
+    private static final String LANGUAGE_JCR_SQL2 = "JCR-SQL2";
+
+    private static final Pattern LIMIT_OFFSET_CLAUSE = Pattern.compile(
+            "^(.*?)\\s+LIMIT\\s+(\\d+)(?:\\s+OFFSET\\s+(\\d+))?\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern OPTION_CLAUSE =
+            Pattern.compile("^(.*?)\\s+OPTION\\s*\\((.*)\\)\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern OPTION_OFFSET_LIMIT =
+            Pattern.compile("^(OFFSET|LIMIT)\\s+(\\d+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ORDER_BY_CLAUSE = Pattern.compile(
+            "\\sORDER\\s+BY\\s+(.*?)(?:\\s+OPTION\\s*\\(.*\\))?\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final String query;
+    private final String language;
+
+    // parsed lazily - concurrent first accesses may parse twice, but always publish an equal result
+    private volatile Parsed parsed;
+
+    /**
+     * @param query Query
+     * @param language Language
+     */
+    public MockQuery(@NotNull String query, @Nullable String language) {
+        this.query = query;
+        this.language = language;
+    }
+
+    /**
+     * @return Original query as passed to {@link org.apache.sling.api.resource.ResourceResolver#findResources}
+     */
+    public @NotNull String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return Query language
+     */
+    public @Nullable String getLanguage() {
+        return language;
+    }
+
+    /**
+     * @return Query statement without paging clause
+     */
+    public @NotNull String getStatement() {
+        return parse().statement;
+    }
+
+    /**
+     * @return Number of results to skip, 0 if not defined
+     */
+    public long getOffset() {
+        return parse().offset;
+    }
+
+    /**
+     * @return Maximum number of results, or {@link #NO_LIMIT}
+     */
+    public long getLimit() {
+        return parse().limit;
+    }
+
+    /**
+     * @return Orderings as defined in the <code>ORDER BY</code> clause, e.g. <code>[jcr:title] DESC</code>
+     */
+    public @NotNull List<String> getOrderings() {
+        return parse().orderings;
+    }
+
+    /**
+     * @return true if the query defines an offset or limit
+     */
+    public boolean isPaged() {
+        return getOffset() > 0 || getLimit() != NO_LIMIT;
+    }
+
+    /**
+     * Applies offset and limit of this query lazily to the given iterator.
+     * Items before the offset are skipped, items after the limit are never fetched from the given iterator.
+     * @param items Full result
+     * @param <T> Item type
+     * @return Requested page of the result
+     */
+    public @NotNull <T> Iterator<T> page(@NotNull Iterator<T> items) {
+        if (!isPaged()) {
+            return items;
+        }
+        return new PagedIterator<>(items, getOffset(), getLimit());
+    }
+
+    private Parsed parse() {
+        Parsed result = parsed;
+        if (result == null) {
+            result = new Parsed(query, language);
+            parsed = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return Parsed number, or {@link Long#MAX_VALUE} if it does not fit into a long
+     */
+    private static long parseNumber(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException ex) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Immutable result of parsing the query statement.
+     */
+    private static final class Parsed {
+
+        private final String statement;
+        private final long offset;
+        private final long limit;
+        private final List<String> orderings;
+
+        private long parsedOffset;
+        private long parsedLimit = NO_LIMIT;
+
+        Parsed(String query, String language) {
+            String parsedStatement = query.trim();
+            List<String> parsedOrderings = Collections.emptyList();
+            if (LANGUAGE_JCR_SQL2.equals(language)) {
+                parsedStatement = parsePaging(parsedStatement);
+                Matcher orderBy = ORDER_BY_CLAUSE.matcher(parsedStatement);
+                if (orderBy.find()) {
+                    List<String> items = new ArrayList<>();
+                    for (String item : orderBy.group(1).split(",")) {
+                        if (!item.isBlank()) {
+                            items.add(item.trim());
+                        }
+                    }
+                    parsedOrderings = Collections.unmodifiableList(items);
+                }
+            }
+            this.statement = parsedStatement;
+            this.offset = parsedOffset;
+            this.limit = parsedLimit;
+            this.orderings = parsedOrderings;
+        }
+
+        private String parsePaging(String value) {
+            Matcher limitOffset = LIMIT_OFFSET_CLAUSE.matcher(value);
+            if (limitOffset.matches()) {
+                parsedLimit = parseNumber(limitOffset.group(2));
+                if (limitOffset.group(3) != null) {
+                    parsedOffset = parseNumber(limitOffset.group(3));
+                }
+                return limitOffset.group(1).trim();
+            }
+            Matcher option = OPTION_CLAUSE.matcher(value);
+            if (option.matches()) {
+                List<String> remainingOptions = new ArrayList<>();
+                for (String item : option.group(2).split(",")) {
+                    Matcher offsetLimit = OPTION_OFFSET_LIMIT.matcher(item.trim());
+                    if (!offsetLimit.matches()) {
+                        remainingOptions.add(item.trim());
+                    } else if ("OFFSET".equalsIgnoreCase(offsetLimit.group(1))) {
+                        parsedOffset = parseNumber(offsetLimit.group(2));
+                    } else {
+                        parsedLimit = parseNumber(offsetLimit.group(2));
+                    }
+                }
+                String result = option.group(1).trim();
+                if (!remainingOptions.isEmpty()) {
+                    result = result + " OPTION(" + String.join(", ", remainingOptions) + ")";
+                }
+                return result;
+            }
+            return value;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MockQuery [query=" + query + ", language=" + language + "]";
+    }
+
+    private static final class PagedIterator<T> implements Iterator<T> {
+
+        private final Iterator<T> delegate;
+        private long toSkip;
+        private long remaining;
+
+        PagedIterator(Iterator<T> delegate, long offset, long limit) {
+            this.delegate = delegate;
+            this.toSkip = offset;
+            this.remaining = limit == NO_LIMIT ? Long.MAX_VALUE : limit;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (toSkip > 0 && delegate.hasNext()) {
+                delegate.next();
+                toSkip--;
+            }
+            return remaining > 0 && delegate.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return delegate.next();
+        }
+    }
+}
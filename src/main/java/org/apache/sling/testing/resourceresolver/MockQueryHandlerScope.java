@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Collection;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Can be implemented additionally by {@link MockFindResourcesHandler} and {@link MockQueryResourceHandler}
+ * implementations to declare which queries they support. Such handlers are only invoked for matching queries,
+ * and the handlers are looked up via an index instead of invoking each of them.
+ * Handlers not implementing this interface are invoked for all queries.
+ */
+@ConsumerType
+public interface MockQueryHandlerScope {
+
+    /**
+     * @return Query languages the handler supports. An empty collection means all languages.
+     */
+    @NotNull
+    Collection<String> getLanguages();
+
+    /**
+     * @return Patterns of queries the handler supports. An empty collection means all queries.
+     */
+    @NotNull
+    Collection<MockQueryPattern> getQueryPatterns();
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Pattern of queries a find/query handler supports, see {@link MockQueryHandlerScope}.
+ */
+public final class MockQueryPattern {
+
+    private static final String REGEX_META_CHARS = "\\[](){}.*+?^$|";
+
+    private final String literal;
+    private final Pattern regex;
+    private final String literalPrefix;
+
+    private MockQueryPattern(String literal, Pattern regex) {
+        this.literal = literal;
+        this.regex = regex;
+        this.literalPrefix = literal != null ? literal : getLiteralPrefix(regex);
+    }
+
+    /**
+     * @param query Query that has to match exactly
+     * @return Pattern
+     */
+    public static @NotNull MockQueryPattern literal(@NotNull String query) {
+        return new MockQueryPattern(query, null);
+    }
+
+    /**
+     * @param regex Regular expression the whole query has to match
+     * @return Pattern
+     */
+    public static @NotNull MockQueryPattern regex(@NotNull String regex) {
+        return new MockQueryPattern(null, Pattern.compile(regex));
+    }
+
+    /**
+     * @param regex Regular expression the whole query has to match
+     * @return Pattern
+     */
+    public static @NotNull MockQueryPattern regex(@NotNull Pattern regex) {
+        return new MockQueryPattern(null, regex);
+    }
+
+    /**
+     * @param query Query
+     * @return true if the query matches this pattern
+     */
+    public boolean matches(@NotNull String query) {
+        if (literal != null) {
+            return literal.equals(query);
+        }
+        return regex.matcher(query).matches();
+    }
+
+    boolean isLiteral() {
+        return literal != null;
+    }
+
+    /**
+     * @return Literal string every matching query starts with (may be empty)
+     */
+    @NotNull
+    String getLiteralPrefix() {
+        return literalPrefix;
+    }
+
+    private static String getLiteralPrefix(Pattern regex) {
+        String expression = regex.pattern();
+        if (regex.flags() != 0 || expression.indexOf('|') >= 0) {
+            return "";
+        }
+        int start = expression.startsWith("^") ? 1 : 0;
+        StringBuilder prefix = new StringBuilder();
+        for (int i = start; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (REGEX_META_CHARS.indexOf(c) >= 0) {
+                // a quantifier makes the preceding character optional
+                if ((c == '?' || c == '*' || c == '{') && prefix.length() > 0) {
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
+
+    @Override
+    public String toString() {
+        return literal != null
+                ? "MockQueryPattern [literal=" + literal + "]"
+                : "MockQueryPattern [regex=" + regex + "]";
+    }
+}
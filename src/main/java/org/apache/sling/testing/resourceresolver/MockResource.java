@@ -19,6 +19,8 @@
 package org.apache.sling.testing.resourceresolver;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Map;
 
 import org.apache.sling.api.resource.AbstractResource;
@@ -109,11 +111,14 @@ public class MockResource extends AbstractResource {
         if (type == ValueMap.class || type == Map.class) {
             return (AdapterType) new ReadonlyValueMapDecorator(this.props);
         } else if (type == ModifiableValueMap.class) {
+            if (this.props instanceof MockValueMap) {
+                return (AdapterType) ((MockValueMap) this.props).forResolver(this.resolver);
+            }
             return (AdapterType) this.props;
-        } else if (type == InputStream.class) {
-            InputStream is = getFileResourceInputStream();
-            if (is != null) {
-                return (AdapterType) is;
+        } else if (type == InputStream.class || type == ByteBuffer.class || type == SeekableByteChannel.class) {
+            AdapterType binary = getFileResourceBinary(type);
+            if (binary != null) {
+                return binary;
             }
         }
         return super.adaptTo(type);
@@ -121,16 +126,18 @@ public class MockResource extends AbstractResource {
 
     /**
      * Emulate feature of JCR resource implementation that allows adapting to InputStream for nt:file and nt:resource nodes.
-     * @return InputStream or null if adaption not possible.
+     * Additionally, adapting to read-only ByteBuffer and SeekableByteChannel views of the binary data is supported.
+     * @param type InputStream, ByteBuffer or SeekableByteChannel
+     * @return Binary data or null if adaption not possible.
      */
-    private InputStream getFileResourceInputStream() {
+    private <T> T getFileResourceBinary(Class<T> type) {
         String resourceType = getResourceType();
         if (NT_RESOURCE.equals(resourceType)) {
-            return getValueMap().get(JCR_DATA, InputStream.class);
+            return getValueMap().get(JCR_DATA, type);
         } else if (NT_FILE.equals(resourceType)) {
             Resource contentResource = getChild(JCR_CONTENT);
             if (contentResource != null) {
-                return ResourceUtil.getValueMap(contentResource).get(JCR_DATA, InputStream.class);
+                return ResourceUtil.getValueMap(contentResource).get(JCR_DATA, type);
             }
         }
         return null;
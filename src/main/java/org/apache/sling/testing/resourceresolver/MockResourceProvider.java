@@ -18,6 +18,7 @@
  */
 package org.apache.sling.testing.resourceresolver;
 
+import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Spliterator;
@@ -27,7 +28,6 @@ import java.util.stream.StreamSupport;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.spi.resource.provider.QueryLanguageProvider;
 import org.apache.sling.spi.resource.provider.ResolveContext;
@@ -37,6 +37,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.event.EventAdmin;
@@ -44,6 +45,10 @@ import org.osgi.service.event.EventAdmin;
 /**
  * This is a wrapper around {@link MockResourceResolver} to act as resource provider.
  * All resources returned by this provider return the resolver from the resolve context instead of the {@link MockResourceResolver}.
+ * <p>Committed changes can be persisted in a write-ahead log by configuring the property
+ * <code>writeAheadLog.directory</code>, see {@link MockResourceResolverFactoryOptions#setWriteAheadLogDirectory(Path)}.
+ * The optional properties <code>writeAheadLog.sync</code> and <code>writeAheadLog.checkpointThreshold</code>
+ * map to the corresponding options.</p>
  */
 @Component(
         service = ResourceProvider.class,
@@ -60,15 +65,32 @@ public final class MockResourceProvider extends ResourceProvider<Void> {
     @Reference(cardinality = ReferenceCardinality.OPTIONAL)
     private EventAdmin eventAdmin;
 
+    static final String PROPERTY_WRITE_AHEAD_LOG_DIRECTORY = "writeAheadLog.directory";
+    static final String PROPERTY_WRITE_AHEAD_LOG_SYNC = "writeAheadLog.sync";
+    static final String PROPERTY_WRITE_AHEAD_LOG_CHECKPOINT_THRESHOLD = "writeAheadLog.checkpointThreshold";
+
+    private MockResourceResolverFactory resourceResolverFactory;
     private MockResourceResolver mockResourceResolver;
     private MockQueryLanguageProvider mockQueryLanguageProvider;
 
     @Activate
-    private void activate() {
+    private void activate(Map<String, Object> properties) {
         MockResourceResolverFactoryOptions options = new MockResourceResolverFactoryOptions();
         options.setMangleNamespacePrefixes(true);
         options.setEventAdmin(eventAdmin);
-        ResourceResolverFactory resourceResolverFactory = new MockResourceResolverFactory(options);
+        Object writeAheadLogDirectory = properties.get(PROPERTY_WRITE_AHEAD_LOG_DIRECTORY);
+        if (writeAheadLogDirectory != null && !writeAheadLogDirectory.toString().isEmpty()) {
+            options.setWriteAheadLogDirectory(Path.of(writeAheadLogDirectory.toString()));
+            Object sync = properties.get(PROPERTY_WRITE_AHEAD_LOG_SYNC);
+            if (sync != null) {
+                options.setWriteAheadLogSync(Boolean.parseBoolean(sync.toString()));
+            }
+            Object checkpointThreshold = properties.get(PROPERTY_WRITE_AHEAD_LOG_CHECKPOINT_THRESHOLD);
+            if (checkpointThreshold != null) {
+                options.setWriteAheadLogCheckpointThreshold(Long.parseLong(checkpointThreshold.toString()));
+            }
+        }
+        this.resourceResolverFactory = new MockResourceResolverFactory(options);
         try {
             this.mockResourceResolver = (MockResourceResolver) resourceResolverFactory.getResourceResolver(null);
         } catch (LoginException ex) {
@@ -77,6 +99,11 @@ public final class MockResourceProvider extends ResourceProvider<Void> {
         this.mockQueryLanguageProvider = new MockQueryLanguageProvider(mockResourceResolver);
     }
 
+    @Deactivate
+    private void deactivate() {
+        this.resourceResolverFactory.shutdown();
+    }
+
     @Override
     public @Nullable Resource getResource(
             @NotNull ResolveContext<Void> ctx,
@@ -19,6 +19,9 @@
 package org.apache.sling.testing.resourceresolver;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Dictionary;
@@ -30,8 +33,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -65,8 +71,50 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
 
     private final Map<String, Object> attributes;
 
+    private static final int PROPERTY_PATHS_MAX_SIZE = 256;
+
+    /**
+     * Guards resources of resolvers created without a factory - the resources map may be shared
+     * between such resolvers, so they must not each use their own lock
+     */
+    private static final ReadWriteLock NO_FACTORY_RESOURCES_LOCK = new ReentrantReadWriteLock();
+
+    /** Guards access to the resources shared by all resolvers of the factory */
+    private final ReadWriteLock resourcesLock;
+
+    private final MockResourceResolverMetrics metrics;
+
+    /** Metrics are only collected (and durations measured) if a metrics sink is set */
+    private final boolean metricsEnabled;
+
+    private ResourceAccessRecorder accessRecorder;
+
+    /** Accesses done internally while walking the resource super type hierarchy are not recorded */
+    private boolean accessRecordingSuspended;
+
     private Map<String, Object> propertyMap;
 
+    /** Resolver is recycled by the factory's resolver pool when closed */
+    private boolean pooled;
+
+    /** Adapters cached by {@link SlingAdaptable} cannot be reset, so a resolver that was adapted is not recycled */
+    private volatile boolean adapted;
+
+    private boolean closed;
+
+    // incremented on each transient change of the resource structure
+    private long localVersion;
+
+    private final NegativeLookupCache negativeLookupCache;
+
+    // parent path and property name of recently probed property paths, so repeated probes do not allocate -
+    // concurrent, as resolvers shared by request threads (e.g. of MockResourceProvider) look up resources in parallel
+    private final Map<String, PropertyPath> propertyPaths = new ConcurrentHashMap<>();
+
+    // names of properties changed since the last commit per resource path - mapped to whether the property existed
+    // before the first change
+    private final Map<String, Map<String, Boolean>> propertyChanges = new HashMap<>();
+
     public MockResourceResolver(
             final MockResourceResolverFactoryOptions options,
             final MockResourceResolverFactory factory,
@@ -83,6 +131,12 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
         this.options = options;
         this.resources = resources;
         this.attributes = attributes;
+        this.resourcesLock = factory != null ? factory.getResourcesLock() : NO_FACTORY_RESOURCES_LOCK;
+        this.metrics = options.getMetrics();
+        this.metricsEnabled = this.metrics != MockResourceResolverMetrics.NO_OP;
+        this.negativeLookupCache = factory != null && options.getNegativeLookupCacheSize() > 0
+                ? new NegativeLookupCache(options.getNegativeLookupCacheSize())
+                : null;
     }
 
     /**
@@ -178,6 +232,65 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
 
     @Override
     public Resource getResource(final @NotNull String path) {
+        // lookups are the hot path - only create the event if it is enabled
+        final JfrEvents.ResourceLookup event =
+                JfrEvents.isResourceLookupEnabled() ? new JfrEvents.ResourceLookup() : null;
+        if (event != null) {
+            event.begin();
+        }
+        final long start = metricsEnabled ? System.nanoTime() : 0;
+        final Resource resource = getResourceWithNegativeLookupCache(path);
+        if (path == null) {
+            return resource;
+        }
+        if (accessRecorder != null && !accessRecordingSuspended) {
+            accessRecorder.getResource(path);
+        }
+        if (metricsEnabled) {
+            final long duration = System.nanoTime() - start;
+            if (resource != null) {
+                metrics.resourceHit(path, duration);
+            } else {
+                metrics.resourceMiss(path, duration);
+            }
+        }
+        if (event != null && event.shouldCommit()) {
+            event.path = path;
+            event.found = resource != null;
+            event.commit();
+        }
+        return resource;
+    }
+
+    private Resource getResourceWithNegativeLookupCache(final String path) {
+        if (negativeLookupCache == null || path == null) {
+            return getResourceWithPropertyFallback(path);
+        }
+        final long version = getContentVersion();
+        if (negativeLookupCache.isMissing(path, version)) {
+            return null;
+        }
+        final Resource resource = getResourceWithPropertyFallback(path);
+        if (resource == null) {
+            negativeLookupCache.addMissing(path, version);
+        }
+        return resource;
+    }
+
+    private Resource getResourceWithPropertyFallback(final String path) {
+        if (path != null && path.startsWith("/") && isDefaultResourceFactory()) {
+            // resolve node or property with a single normalization and parent probe
+            final String normalizedPath = ResourcePaths.normalize(path);
+            if (normalizedPath == null) {
+                return null;
+            }
+            final Map<String, Object> props = getStoredProperties(normalizedPath);
+            if (props != null) {
+                return newMockResource(normalizedPath, props, this);
+            }
+            return getPropertyResource(path, normalizedPath);
+        }
+
         Resource resource = getResourceInternal(path);
 
         // if not resource found check if this is a reference to a property
@@ -189,6 +302,9 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
                 if (parentResource != null) {
                     ValueMap props = ResourceUtil.getValueMap(parentResource);
                     if (props.containsKey(name)) {
+                        if (metricsEnabled) {
+                            metrics.propertyResourceFallback(path);
+                        }
                         return new MockPropertyResource(path, props, this);
                     }
                 }
@@ -198,31 +314,59 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
         return resource;
     }
 
+    /**
+     * Resolves a property resource with a single lookup of the parent properties in the resource store.
+     * The parent resource is only created if the property exists.
+     * @param path Absolute path
+     * @param normalizedPath Normalized absolute path
+     * @return Property resource or null
+     */
+    private Resource getPropertyResource(final String path, final String normalizedPath) {
+        PropertyPath propertyPath = this.propertyPaths.get(normalizedPath);
+        if (propertyPath == null) {
+            final int index = normalizedPath.lastIndexOf('/');
+            if (index < 0 || index == normalizedPath.length() - 1) {
+                return null;
+            }
+            propertyPath = new PropertyPath(
+                    index == 0 ? "/" : normalizedPath.substring(0, index), normalizedPath.substring(index + 1));
+            if (this.propertyPaths.size() >= PROPERTY_PATHS_MAX_SIZE) {
+                this.propertyPaths.clear();
+            }
+            this.propertyPaths.put(normalizedPath, propertyPath);
+        }
+        final String parentPath = propertyPath.parentPath;
+        final Map<String, Object> parentProps = getStoredProperties(parentPath);
+        if (parentProps == null || !parentProps.containsKey(propertyPath.name)) {
+            return null;
+        }
+        if (metricsEnabled) {
+            metrics.propertyResourceFallback(path);
+        }
+        final Resource parentResource = newMockResource(parentPath, parentProps, this);
+        return new MockPropertyResource(path, ResourceUtil.getValueMap(parentResource), this);
+    }
+
     private Resource getResourceInternal(final String path) {
         if (path == null) {
             return null;
         }
 
-        String normalizedPath = ResourceUtil.normalize(path);
+        String normalizedPath = ResourcePaths.normalize(path);
         if (normalizedPath == null) {
             return null;
         } else if (normalizedPath.startsWith("/")) {
-            if (this.deletedResources.contains(normalizedPath)) {
-                return null;
-            }
-            final Map<String, Object> tempProps = this.temporaryResources.get(normalizedPath);
-            if (tempProps != null) {
-                return newMockResource(normalizedPath, tempProps, this);
-            }
-            synchronized (this.resources) {
-                final Map<String, Object> props = this.resources.get(normalizedPath);
-                if (props != null) {
-                    return newMockResource(normalizedPath, props, this);
-                }
+            final Map<String, Object> props = getStoredProperties(normalizedPath);
+            if (props != null) {
+                return newMockResource(normalizedPath, props, this);
             }
         } else {
             for (final String s : this.getSearchPath()) {
-                final Resource rsrc = this.getResource(s + '/' + normalizedPath);
+                final String searchPath = s + '/' + normalizedPath;
+                if (metricsEnabled) {
+                    metrics.searchPathProbe(searchPath);
+                }
+                final Resource rsrc = this.getResourceWithPropertyFallback(searchPath);
                 if (rsrc != null) {
                     return rsrc;
                 }
@@ -252,11 +396,16 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
 
     @Override
     public @NotNull Iterator<Resource> listChildren(final @NotNull Resource parent) {
+        final JfrEvents.ListChildren event = JfrEvents.isListChildrenEnabled() ? new JfrEvents.ListChildren() : null;
+        if (event != null) {
+            event.begin();
+        }
         final String pathPrefix = "/".equals(parent.getPath()) ? "" : parent.getPath();
         final Pattern childPathMatcher = Pattern.compile("^" + Pattern.quote(pathPrefix) + "/[^/]+$");
         final Map<String, Map<String, Object>> candidates = new LinkedHashMap<String, Map<String, Object>>();
-        synchronized (this.resources) {
-            for (final Map.Entry<String, Map<String, Object>> e : this.resources.entrySet()) {
+        this.resourcesLock.readLock().lock();
+        try {
+            for (final Map.Entry<String, Map<String, Object>> e : getStoredChildren(parent.getPath())) {
                 if (childPathMatcher.matcher(e.getKey()).matches()) {
                     if (!this.deletedResources.contains(e.getKey())) {
                         candidates.put(e.getKey(), e.getValue());
@@ -270,11 +419,24 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
                     }
                 }
             }
+        } finally {
+            this.resourcesLock.readLock().unlock();
         }
         final List<Resource> children = new ArrayList<Resource>();
         for (final Map.Entry<String, Map<String, Object>> e : candidates.entrySet()) {
             children.add(newMockResource(e.getKey(), e.getValue(), this));
         }
+        if (metricsEnabled) {
+            metrics.listChildren(parent.getPath(), children.size());
+        }
+        if (accessRecorder != null && !accessRecordingSuspended) {
+            accessRecorder.listChildren(parent.getPath());
+        }
+        if (event != null && event.shouldCommit()) {
+            event.path = parent.getPath();
+            event.childCount = children.size();
+            event.commit();
+        }
         return children.iterator();
     }
 
@@ -295,15 +457,62 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
 
     @Override
     public boolean isLive() {
-        return true;
+        return !closed;
     }
 
     @Override
     public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
         clearPropertyMap();
         this.factory.closed(this);
     }
 
+    boolean isPooled() {
+        return pooled;
+    }
+
+    void setPooled(boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    @Override
+    public <AdapterType> AdapterType adaptTo(@NotNull Class<AdapterType> type) {
+        AdapterType adapter = super.adaptTo(type);
+        if (adapter != null) {
+            adapted = true;
+        }
+        return adapter;
+    }
+
+    /**
+     * Resets the transient state of a closed resolver so it can be kept in the resolver pool.
+     * The resolver stays closed until it is handed out again, so repeated calls to {@link #close()} are ignored.
+     * @return false if the resolver must not be pooled because it holds adapters of the previous user
+     */
+    boolean recycle() {
+        if (adapted) {
+            return false;
+        }
+        revert();
+        if (negativeLookupCache != null) {
+            negativeLookupCache.clear();
+        }
+        clearPropertyMap();
+        propertyPaths.clear();
+        accessRecorder = null;
+        return true;
+    }
+
+    /**
+     * Marks a recycled resolver as open when it is handed out again by the resolver pool.
+     */
+    void reopen() {
+        closed = false;
+    }
+
     private void clearPropertyMap() {
         if (propertyMap != null) {
             for (Entry<String, Object> entry : propertyMap.entrySet()) {
@@ -336,89 +545,296 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
 
     @Override
     public void delete(final @NotNull Resource resource) throws PersistenceException {
+        this.localVersion++;
         this.deletedResources.add(resource.getPath());
         this.temporaryResources.remove(resource.getPath());
         final String prefixPath = resource.getPath() + '/';
-        synchronized (this.resources) {
-            for (final Map.Entry<String, Map<String, Object>> e : this.resources.entrySet()) {
+        this.resourcesLock.readLock().lock();
+        try {
+            for (final Map.Entry<String, Map<String, Object>> e : getStoredEntries(prefixPath)) {
                 if (e.getKey().startsWith(prefixPath)) {
                     this.deletedResources.add(e.getKey());
                 }
             }
-            final Iterator<Map.Entry<String, Map<String, Object>>> i =
-                    this.temporaryResources.entrySet().iterator();
-            while (i.hasNext()) {
-                final Map.Entry<String, Map<String, Object>> e = i.next();
-                if (e.getKey().startsWith(prefixPath)) {
-                    i.remove();
-                }
-            }
+        } finally {
+            this.resourcesLock.readLock().unlock();
         }
+        this.temporaryResources.keySet().removeIf(path -> path.startsWith(prefixPath));
     }
 
     @Override
     public @NotNull Resource create(@NotNull Resource parent, @NotNull String name, Map<String, Object> properties)
             throws PersistenceException {
-        final String path = (parent.getPath().equals("/") ? parent.getPath() + name : parent.getPath() + '/' + name);
+        final String path = parent.getPath().equals("/") ? parent.getPath() + name : parent.getPath() + '/' + name;
         if (this.temporaryResources.containsKey(path)) {
             throw new PersistenceException("Path already exists: " + path);
         }
-        synchronized (this.resources) {
-            if (this.resources.containsKey(path) && !this.deletedResources.contains(path)) {
-                throw new PersistenceException("Path already exists: " + path);
-            }
+        final boolean exists;
+        this.resourcesLock.readLock().lock();
+        try {
+            exists = this.resources.containsKey(path);
+        } finally {
+            this.resourcesLock.readLock().unlock();
+        }
+        if (exists && !this.deletedResources.contains(path)) {
+            throw new PersistenceException("Path already exists: " + path);
         }
         this.deletedResources.remove(path);
         if (properties == null) {
             properties = new HashMap<String, Object>();
+        } else if (factory != null && !properties.isEmpty() && !isMockValueMap(properties)) {
+            // names of mock value maps, e.g. when copying, were already interned when they were written
+            properties = internPropertyNames(properties);
         }
 
         Resource mockResource = newMockResource(path, properties, this);
         this.temporaryResources.put(path, ResourceUtil.getValueMap(mockResource));
+        this.localVersion++;
         return mockResource;
     }
 
     @Override
     public void revert() {
+        this.localVersion++;
         this.deletedResources.clear();
         this.temporaryResources.clear();
+        this.propertyChanges.clear();
     }
 
     @Override
     @SuppressWarnings("deprecation")
     public void commit() throws PersistenceException {
+        final JfrEvents.Commit event = JfrEvents.isCommitEnabled() ? new JfrEvents.Commit() : null;
+        if (event != null) {
+            event.begin();
+        }
         EventAdmin eventAdmin = this.options.getEventAdmin();
-        synchronized (this.resources) {
+        final long start = metricsEnabled ? System.nanoTime() : 0;
+        final int changes = this.deletedResources.size() + this.temporaryResources.size();
+        int eventCount = 0;
+        final WriteAheadLog writeAheadLog = factory != null ? factory.getWriteAheadLog() : null;
+        long logSequence = 0;
+        this.resourcesLock.writeLock().lock();
+        try {
+            if (writeAheadLog != null && changes > 0) {
+                // log before modifying the store, a commit with values that cannot be logged fails without effect
+                try {
+                    logSequence = writeAheadLog.append(getLogChanges());
+                } catch (IOException ex) {
+                    throw new PersistenceException("Unable to write commit to write-ahead log.", ex);
+                }
+            }
             for (final String path : this.deletedResources) {
-                if (this.resources.remove(path) != null && eventAdmin != null) {
+                // the disk store does not return removed values
+                final boolean existed = this.resources.containsKey(path);
+                this.resources.remove(path);
+                if (existed && eventAdmin != null) {
                     final Dictionary<String, Object> props = new Hashtable<String, Object>();
                     props.put(SlingConstants.PROPERTY_PATH, path);
                     final Event e = new Event(SlingConstants.TOPIC_RESOURCE_REMOVED, props);
                     eventAdmin.sendEvent(e);
+                    eventCount++;
+                    if (metricsEnabled) {
+                        metrics.eventSent(e.getTopic(), path);
+                    }
                 }
                 this.temporaryResources.remove(path);
             }
-            for (final String path : this.temporaryResources.keySet()) {
-                final boolean changed = this.resources.containsKey(path);
-                this.resources.put(path, this.temporaryResources.get(path));
+            for (final Map.Entry<String, Map<String, Object>> entry : this.temporaryResources.entrySet()) {
+                final String path = entry.getKey();
+                // read once - the disk store decodes the stored properties on each get
+                final Map<String, Object> storedProps = this.resources.get(path);
+                final boolean changed = storedProps != null;
+                // value maps of existing resources are modified in place - only new or replaced maps are stored
+                if (!isSameValueMap(storedProps, entry.getValue())) {
+                    this.resources.put(path, entry.getValue());
+                }
                 if (eventAdmin != null) {
                     final Dictionary<String, Object> props = new Hashtable<String, Object>();
                     props.put(SlingConstants.PROPERTY_PATH, path);
-                    if (this.resources.get(path).get(ResourceResolver.PROPERTY_RESOURCE_TYPE) != null) {
-                        props.put(
-                                SlingConstants.PROPERTY_RESOURCE_TYPE,
-                                this.resources.get(path).get(ResourceResolver.PROPERTY_RESOURCE_TYPE));
+                    if (changed) {
+                        addPropertyChanges(props, path, entry.getValue());
+                    }
+                    // the committed properties are the ones of this resolver, whether stored or modified in place
+                    final Object resourceType = entry.getValue().get(ResourceResolver.PROPERTY_RESOURCE_TYPE);
+                    if (resourceType != null) {
+                        props.put(SlingConstants.PROPERTY_RESOURCE_TYPE, resourceType);
                     }
                     final Event e = new Event(
                             changed ? SlingConstants.TOPIC_RESOURCE_CHANGED : SlingConstants.TOPIC_RESOURCE_ADDED,
                             props);
                     eventAdmin.sendEvent(e);
+                    eventCount++;
+                    if (metricsEnabled) {
+                        metrics.eventSent(e.getTopic(), path);
+                    }
+                }
+            }
+            if (factory != null && changes > 0) {
+                factory.storeChanged();
+            }
+        } finally {
+            this.resourcesLock.writeLock().unlock();
+        }
+        this.revert();
+        if (logSequence > 0) {
+            try {
+                writeAheadLog.sync(logSequence);
+            } catch (IOException ex) {
+                throw new PersistenceException("Unable to sync write-ahead log.", ex);
+            }
+            factory.checkpointIfRequired();
+        }
+        if (metricsEnabled) {
+            metrics.commit(changes, System.nanoTime() - start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.changes = changes;
+            event.events = eventCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Builds the write-ahead log record of this commit, must be called while holding the write lock.
+     * Properties of existing value maps that were modified in place are logged as updates of the changed
+     * properties, new or replaced value maps with all properties.
+     * @throws PersistenceException If a property cannot be logged, checked before anything is written
+     */
+    private List<WriteAheadLog.Change> getLogChanges() throws PersistenceException {
+        final List<WriteAheadLog.Change> logChanges = new ArrayList<>();
+        for (final String path : this.deletedResources) {
+            if (this.resources.containsKey(path)) {
+                logChanges.add(WriteAheadLog.Change.delete(path));
+            }
+        }
+        for (final Map.Entry<String, Map<String, Object>> entry : this.temporaryResources.entrySet()) {
+            final String path = entry.getKey();
+            if (this.deletedResources.contains(path)) {
+                continue;
+            }
+            final Map<String, Object> props = getRawProperties(entry.getValue());
+            final Map<String, Boolean> changedNames = this.propertyChanges.get(path);
+            if (changedNames != null && isSameValueMap(this.resources.get(path), entry.getValue())) {
+                final Map<String, Object> updated = new LinkedHashMap<>();
+                final List<String> removed = new ArrayList<>();
+                for (final String name : changedNames.keySet()) {
+                    if (props.containsKey(name)) {
+                        updated.put(name, props.get(name));
+                    } else {
+                        removed.add(name);
+                    }
+                }
+                logChanges.add(WriteAheadLog.Change.update(path, updated, removed));
+            } else {
+                if (props.containsKey(null)) {
+                    throw new PersistenceException(
+                            "Unable to write commit to write-ahead log, property name must not be null: " + path);
+                }
+                logChanges.add(WriteAheadLog.Change.put(path, props));
+            }
+        }
+        return logChanges;
+    }
+
+    /**
+     * @return Copy of the given properties as stored, without converting temporal values and binaries
+     */
+    static Map<String, Object> getRawProperties(Map<String, Object> props) {
+        if (props instanceof ReadonlyValueMapDecorator) {
+            props = ((ReadonlyValueMapDecorator) props).getDelegate();
+        }
+        if (props instanceof MockValueMap) {
+            return ((MockValueMap) props).getRawProperties();
+        }
+        return new LinkedHashMap<>(props);
+    }
+
+    /**
+     * Applies changes recovered from the write-ahead log to the resource store, without sending events or
+     * logging them again. The restored value maps are owned by this resolver.
+     * @param changes Recovered changes
+     */
+    void restore(final List<WriteAheadLog.Change> changes) {
+        this.resourcesLock.writeLock().lock();
+        try {
+            for (final WriteAheadLog.Change change : changes) {
+                // restored paths and names are read from the files, intern them like the written ones
+                final String path = intern(change.getPath());
+                switch (change.getType()) {
+                    case DELETE:
+                        this.resources.remove(path);
+                        break;
+                    case UPDATE:
+                        final Map<String, Object> stored = this.resources.get(path);
+                        final Map<String, Object> props =
+                                stored != null ? getRawProperties(stored) : new LinkedHashMap<>();
+                        putInterned(props, change.getProperties());
+                        props.keySet().removeAll(change.getRemovedNames());
+                        this.resources.put(path, ResourceUtil.getValueMap(newMockResource(path, props, this)));
+                        break;
+                    default:
+                        final Map<String, Object> newProps = new LinkedHashMap<>();
+                        putInterned(newProps, change.getProperties());
+                        this.resources.put(path, ResourceUtil.getValueMap(newMockResource(path, newProps, this)));
+                        break;
                 }
             }
+            if (factory != null && !changes.isEmpty()) {
+                factory.storeChanged();
+            }
+        } finally {
+            this.resourcesLock.writeLock().unlock();
         }
         this.revert();
     }
 
+    private void putInterned(final Map<String, Object> target, final Map<String, Object> properties) {
+        for (final Map.Entry<String, Object> entry : properties.entrySet()) {
+            target.put(intern(entry.getKey()), entry.getValue());
+        }
+    }
+
+    private static boolean isSameValueMap(Map<String, Object> storedProps, Map<String, Object> props) {
+        return storedProps == props
+                || (storedProps instanceof ReadonlyValueMapDecorator
+                        && ((ReadonlyValueMapDecorator) storedProps).getDelegate() == props);
+    }
+
+    /**
+     * Adds the names of added, changed and removed properties to the properties of a resource changed event.
+     */
+    private void addPropertyChanges(
+            final Dictionary<String, Object> eventProps, final String path, final Map<String, Object> props) {
+        final Map<String, Boolean> changes = this.propertyChanges.get(path);
+        if (changes == null) {
+            return;
+        }
+        final List<String> added = new ArrayList<>();
+        final List<String> changed = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        for (final Map.Entry<String, Boolean> change : changes.entrySet()) {
+            final boolean existed = change.getValue();
+            final boolean exists = props.containsKey(change.getKey());
+            if (existed && exists) {
+                changed.add(change.getKey());
+            } else if (exists) {
+                added.add(change.getKey());
+            } else if (existed) {
+                removed.add(change.getKey());
+            }
+        }
+        if (!added.isEmpty()) {
+            eventProps.put(SlingConstants.PROPERTY_ADDED_ATTRIBUTES, added.toArray(new String[0]));
+        }
+        if (!changed.isEmpty()) {
+            eventProps.put(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES, changed.toArray(new String[0]));
+        }
+        if (!removed.isEmpty()) {
+            eventProps.put(SlingConstants.PROPERTY_REMOVED_ATTRIBUTES, removed.toArray(new String[0]));
+        }
+    }
+
     @Override
     public boolean hasChanges() {
         return this.temporaryResources.size() > 0 || this.deletedResources.size() > 0;
@@ -426,6 +842,19 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
 
     @Override
     public boolean isResourceType(Resource resource, String resourceType) {
+        if (accessRecorder == null || accessRecordingSuspended || resource == null || resourceType == null) {
+            return isResourceTypeInternal(resource, resourceType);
+        }
+        accessRecorder.isResourceType(resource.getPath(), resourceType);
+        accessRecordingSuspended = true;
+        try {
+            return isResourceTypeInternal(resource, resourceType);
+        } finally {
+            accessRecordingSuspended = false;
+        }
+    }
+
+    private boolean isResourceTypeInternal(Resource resource, String resourceType) {
         boolean result = false;
         if (resource != null && resourceType != null) {
             // Check if the resource is of the given type. This method first checks the
@@ -459,11 +888,46 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
 
     @Override
     public void refresh() {
-        // nothing to do
+        if (negativeLookupCache != null) {
+            negativeLookupCache.clear();
+        }
     }
 
     public void addChanged(final String path, final Map<String, Object> props) {
-        this.temporaryResources.put(path, props);
+        if (this.temporaryResources.put(path, props) != props) {
+            this.localVersion++;
+        }
+        if (factory != null) {
+            factory.propertiesChanged();
+        }
+    }
+
+    /**
+     * Registers the value map of a resource as changed, called by {@link MockValueMap} before properties are
+     * modified. The value map is only registered on its first modification since the last commit or revert.
+     * @param path Resource path
+     * @param props Modified value map
+     * @return Property changes of the resource, the caller records each property name with whether it
+     *         existed before its first change
+     */
+    Map<String, Boolean> propertiesChanged(final String path, final Map<String, Object> props) {
+        Map<String, Boolean> changes = this.propertyChanges.get(path);
+        if (changes == null || this.temporaryResources.get(path) != props) {
+            if (this.temporaryResources.put(path, props) != props) {
+                this.localVersion++;
+            }
+            changes = this.propertyChanges.computeIfAbsent(path, key -> new LinkedHashMap<>());
+        }
+        return changes;
+    }
+
+    /**
+     * Called by {@link MockValueMap} when a property is added, invalidates cached missing paths.
+     */
+    void propertyAdded() {
+        if (factory != null) {
+            factory.propertiesChanged();
+        }
     }
 
     @Override
@@ -510,11 +974,112 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
     @Override
     @SuppressWarnings("null")
     public @NotNull Iterator<Resource> findResources(final @NotNull String query, final String language) {
-        return options.getFindResourcesHandlers().stream()
-                .map(handler -> handler.findResources(query, language))
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElse(Collections.emptyIterator());
+        final JfrEvents.QueryDispatch event = JfrEvents.isQueryDispatchEnabled() ? new JfrEvents.QueryDispatch() : null;
+        if (event != null) {
+            event.begin();
+        }
+        final long start = metricsEnabled ? System.nanoTime() : 0;
+        final Iterator<Resource> result = QueryPlanCache.dispatch(
+                options.getFindResourcesHandlerList(),
+                options.getFindResourcesPlanCache(),
+                query,
+                language,
+                MockResourceResolver::findResources);
+        if (metricsEnabled) {
+            metrics.queryDispatch(query, language, System.nanoTime() - start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.query = query;
+            event.language = language;
+            event.commit();
+        }
+        return result;
+    }
+
+    private static Iterator<Resource> findResources(final MockFindResourcesHandler handler, final MockQuery query) {
+        if (handler instanceof MockPagedFindResourcesHandler) {
+            return ((MockPagedFindResourcesHandler) handler).findResources(query);
+        }
+        return handler.findResources(query.getQuery(), query.getLanguage());
+    }
+
+    /**
+     * Finds all resources in the subtree of the given root path (including the root resource itself) that match
+     * the given predicate by traversing the resource tree, including the pending changes of this resolver.
+     * @param rootPath Root path
+     * @param predicate Predicate
+     * @return Matching resources in repository order
+     */
+    @NotNull
+    List<Resource> findResourcesByTraversal(@NotNull String rootPath, @NotNull Predicate<Resource> predicate) {
+        final String normalizedRootPath = ResourcePaths.normalize(rootPath);
+        if (normalizedRootPath == null || !normalizedRootPath.startsWith("/")) {
+            return Collections.emptyList();
+        }
+        final String pathPrefix = "/".equals(normalizedRootPath) ? "/" : normalizedRootPath + "/";
+        final Map<String, Map.Entry<String, Map<String, Object>>> nodes = new LinkedHashMap<>();
+        this.resourcesLock.readLock().lock();
+        try {
+            if (this.resources instanceof DiskResourceStore diskStore) {
+                // range scans of the subtree only, the entries are decoded lazily during the evaluation
+                collectSubtree(
+                        ResourceTraversal.scanSubtree(diskStore, normalizedRootPath, options),
+                        normalizedRootPath,
+                        pathPrefix,
+                        nodes,
+                        false);
+            } else {
+                collectSubtree(this.resources.entrySet(), normalizedRootPath, pathPrefix, nodes, true);
+            }
+        } finally {
+            this.resourcesLock.readLock().unlock();
+        }
+        collectSubtree(this.temporaryResources.entrySet(), normalizedRootPath, pathPrefix, nodes, true);
+        return ResourceTraversal.evaluate(
+                new ArrayList<>(nodes.values()),
+                node -> newMockResource(node.getKey(), node.getValue(), this),
+                predicate,
+                options);
+    }
+
+    /**
+     * @param copy Whether to copy the entries - entries of maps that may be modified after releasing the lock
+     *            have to be copied, entries of the disk store are immutable
+     */
+    private void collectSubtree(
+            final Iterable<Map.Entry<String, Map<String, Object>>> source,
+            final String rootPath,
+            final String pathPrefix,
+            final Map<String, Map.Entry<String, Map<String, Object>>> nodes,
+            final boolean copy) {
+        for (final Map.Entry<String, Map<String, Object>> e : source) {
+            final String path = e.getKey();
+            if ((path.equals(rootPath) || path.startsWith(pathPrefix)) && !this.deletedResources.contains(path)) {
+                nodes.put(path, copy ? new AbstractMap.SimpleImmutableEntry<>(path, e.getValue()) : e);
+            }
+        }
+    }
+
+    /**
+     * @param pathPrefix Path prefix
+     * @return Stored resources, a disk store only returns resources with paths starting with the given prefix
+     */
+    private Iterable<Map.Entry<String, Map<String, Object>>> getStoredEntries(final String pathPrefix) {
+        if (this.resources instanceof DiskResourceStore diskStore) {
+            return diskStore.scan(pathPrefix);
+        }
+        return this.resources.entrySet();
+    }
+
+    /**
+     * @param parentPath Parent path
+     * @return Stored resources, a disk store only returns the children of the given parent
+     */
+    private Iterable<Map.Entry<String, Map<String, Object>>> getStoredChildren(final String parentPath) {
+        if (this.resources instanceof DiskResourceStore diskStore) {
+            return diskStore.scanChildren(parentPath);
+        }
+        return this.resources.entrySet();
     }
 
     /**
@@ -537,15 +1102,40 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
     @Override
     @SuppressWarnings("null")
     public @NotNull Iterator<Map<String, Object>> queryResources(@NotNull String query, String language) {
-        return options.getQueryResourcesHandlers().stream()
-                .map(handler -> handler.queryResources(query, language))
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElse(Collections.emptyIterator());
+        final JfrEvents.QueryDispatch event = JfrEvents.isQueryDispatchEnabled() ? new JfrEvents.QueryDispatch() : null;
+        if (event != null) {
+            event.begin();
+        }
+        final long start = metricsEnabled ? System.nanoTime() : 0;
+        final Iterator<Map<String, Object>> result = QueryPlanCache.dispatch(
+                options.getQueryResourcesHandlerList(),
+                options.getQueryResourcesPlanCache(),
+                query,
+                language,
+                (handler, parsedQuery) -> handler.queryResources(query, language));
+        if (metricsEnabled) {
+            metrics.queryDispatch(query, language, System.nanoTime() - start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.query = query;
+            event.language = language;
+            event.commit();
+        }
+        return result;
     }
 
     @Override
     public Resource copy(String srcAbsPath, String destAbsPath) throws PersistenceException {
+        final JfrEvents.CopyMove event = JfrEvents.isCopyMoveEnabled() ? new JfrEvents.CopyMove() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Resource destination = copyInternal(srcAbsPath, destAbsPath);
+        commitCopyMoveEvent(event, "copy", srcAbsPath, destAbsPath);
+        return destination;
+    }
+
+    private Resource copyInternal(String srcAbsPath, String destAbsPath) throws PersistenceException {
         Resource source = getResource(srcAbsPath);
         if (source == null) {
             throw new PersistenceException("Copy source does not exist");
@@ -576,6 +1166,26 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
 
     @Override
     public Resource move(String srcAbsPath, String destAbsPath) throws PersistenceException {
+        final JfrEvents.CopyMove event = JfrEvents.isCopyMoveEnabled() ? new JfrEvents.CopyMove() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Resource destination = moveInternal(srcAbsPath, destAbsPath);
+        commitCopyMoveEvent(event, "move", srcAbsPath, destAbsPath);
+        return destination;
+    }
+
+    private static void commitCopyMoveEvent(
+            @Nullable JfrEvents.CopyMove event, String operation, String srcAbsPath, String destAbsPath) {
+        if (event != null && event.shouldCommit()) {
+            event.operation = operation;
+            event.sourcePath = srcAbsPath;
+            event.destinationPath = destAbsPath;
+            event.commit();
+        }
+    }
+
+    private Resource moveInternal(String srcAbsPath, String destAbsPath) throws PersistenceException {
         Resource source = getResource(srcAbsPath);
         if (source == null) {
             throw new PersistenceException("Move source does not exist");
@@ -584,7 +1194,7 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
         if (destinationParent == null) {
             throw new PersistenceException("Move destination does not exist");
         }
-        Resource destination = copy(srcAbsPath, destAbsPath);
+        Resource destination = copyInternal(srcAbsPath, destAbsPath);
         delete(source);
         return destination;
     }
@@ -606,6 +1216,136 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
         options.addQueryResourceHandlerInternal(handler);
     }
 
+    @NotNull
+    MockResourceResolverFactoryOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return Root of the shapes shared by the compact property maps of the factory
+     */
+    @NotNull
+    PropertyShape getPropertyShapeRoot() {
+        return factory != null ? factory.getPropertyShapeRoot() : PropertyShape.createRoot();
+    }
+
+    /**
+     * Interns a property name in the repository of the factory. Only called when properties are written or
+     * restored from the write-ahead log, which interns the restored paths as well.
+     * @param name Property name or path
+     * @return Canonical instance of the name
+     */
+    @NotNull
+    String intern(@NotNull String name) {
+        return factory != null ? factory.getInterner().intern(name) : name;
+    }
+
+    private static boolean isMockValueMap(final Map<String, Object> properties) {
+        return properties instanceof MockValueMap
+                || (properties instanceof ReadonlyValueMapDecorator
+                        && ((ReadonlyValueMapDecorator) properties).getDelegate() instanceof MockValueMap);
+    }
+
+    private Map<String, Object> internPropertyNames(final Map<String, Object> properties) {
+        final Map<String, Object> result = new HashMap<>(properties.size() * 2);
+        for (final Map.Entry<String, Object> entry : properties.entrySet()) {
+            final String name = entry.getKey();
+            result.put(name != null ? intern(name) : null, entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Looks up the properties of a resource directly in the resource store, without creating resource objects.
+     * Used for deep reads of properties of child resources in {@link MockValueMap}. Not applicable if a custom
+     * {@link MockResourceFactory} is used or resource accesses are observed via metrics or access recorder.
+     * @param normalizedPath Normalized absolute resource path
+     * @return Properties, or null if the resource does not exist in the store or the lookup is not applicable
+     */
+    @Nullable
+    ValueMap getStoredValueMap(@NotNull String normalizedPath) {
+        if (factory == null || metricsEnabled || accessRecorder != null || !isDefaultResourceFactory()) {
+            return null;
+        }
+        return getStoredProperties(normalizedPath) instanceof ValueMap valueMap ? valueMap : null;
+    }
+
+    /**
+     * @param normalizedPath Normalized absolute resource path
+     * @return Properties of the resource including transient changes of this resolver, or null if it does not exist
+     */
+    private Map<String, Object> getStoredProperties(final String normalizedPath) {
+        if (this.deletedResources.contains(normalizedPath)) {
+            return null;
+        }
+        final Map<String, Object> tempProps = this.temporaryResources.get(normalizedPath);
+        if (tempProps != null) {
+            return tempProps;
+        }
+        this.resourcesLock.readLock().lock();
+        try {
+            return this.resources.get(normalizedPath);
+        } finally {
+            this.resourcesLock.readLock().unlock();
+        }
+    }
+
+    private boolean isDefaultResourceFactory() {
+        return options.getMockResourceFactory().getClass() == DefaultMockResourceFactory.class;
+    }
+
+    /**
+     * @return Version of the resource structure visible to this resolver: changes whenever resources are
+     *         added or removed, either transiently in this resolver or by a commit in any resolver of the factory
+     */
+    long getStructureVersion() {
+        return (factory != null ? factory.getStoreVersion() : 0) + localVersion;
+    }
+
+    /**
+     * @return Version of the repository content visible to this resolver, including property changes
+     */
+    private long getContentVersion() {
+        return getStructureVersion() + factory.getPropertiesVersion();
+    }
+
+    /**
+     * @return Number of {@link #getResource(String)} calls answered from the cache of missing paths
+     */
+    public long getNegativeLookupCacheHits() {
+        return negativeLookupCache != null ? negativeLookupCache.getHits() : 0;
+    }
+
+    /**
+     * @return Number of {@link #getResource(String)} calls for missing paths that were not cached yet
+     */
+    public long getNegativeLookupCacheMisses() {
+        return negativeLookupCache != null ? negativeLookupCache.getMisses() : 0;
+    }
+
+    /**
+     * Reads a binary value written as input stream.
+     * @param stream Input stream
+     * @return Byte array or {@link MockBinary}
+     * @throws IOException I/O exception
+     */
+    @NotNull
+    Object readBinary(@NotNull InputStream stream) throws IOException {
+        BinaryStore binaryStore = factory != null ? factory.getBinaryStore() : null;
+        if (binaryStore != null) {
+            return binaryStore.read(stream, options.getBinarySpoolThreshold());
+        }
+        return MockBinary.read(stream, options.getBinarySpoolThreshold());
+    }
+
+    /**
+     * Records all repository accesses of this resolver with the given recorder to detect inefficient access patterns.
+     * @param accessRecorder Access recorder, or null to stop recording
+     */
+    public void setAccessRecorder(@Nullable ResourceAccessRecorder accessRecorder) {
+        this.accessRecorder = accessRecorder;
+    }
+
     // Sling API 2.24.0
     public @NotNull Map<String, Object> getPropertyMap() {
         if (propertyMap == null) {
@@ -636,4 +1376,18 @@ public class MockResourceResolver extends SlingAdaptable implements ResourceReso
             throws UnsupportedOperationException, PersistenceException, IllegalArgumentException {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Absolute path of a property split into parent path and property name.
+     */
+    private static final class PropertyPath {
+
+        private final String parentPath;
+        private final String name;
+
+        PropertyPath(String parentPath, String name) {
+            this.parentPath = parentPath;
+            this.name = name;
+        }
+    }
 }
@@ -18,12 +18,18 @@
  */
 package org.apache.sling.testing.resourceresolver;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -39,11 +45,36 @@ public class MockResourceResolverFactory implements ResourceResolverFactory {
 
     private static final String ROOT_PRIMARY_TYPE = "rep:root";
 
-    /** We use a linked hash map to preserve creation order. */
-    private final Map<String, Map<String, Object>> resources = new LinkedHashMap<String, Map<String, Object>>();
+    private static final Logging log = Logging.getLogger(MockResourceResolverFactory.class);
+
+    /** We use a linked hash map to preserve creation order, or a disk store if configured. */
+    private final Map<String, Map<String, Object>> resources;
+
+    /** Guards the resources map. A lock is used instead of synchronized to not pin virtual threads. */
+    private final ReadWriteLock resourcesLock = new ReentrantReadWriteLock();
+
+    // incremented on each commit, only modified while holding the write lock
+    private volatile long storeVersion;
+
+    // incremented on each property change in any resolver
+    private final AtomicLong propertiesVersion = new AtomicLong();
 
     private final MockResourceResolverFactoryOptions options;
 
+    private final ResolverPool resolverPool;
+
+    private final ResolverLifetimeTracker lifetimeTracker;
+
+    private final BinaryStore binaryStore;
+
+    /** Interned property names */
+    private final StringInterner interner = new StringInterner();
+
+    /** Root of the shapes shared by the compact property maps of this factory */
+    private final PropertyShape propertyShapeRoot = PropertyShape.createRoot();
+
+    private final WriteAheadLog writeAheadLog;
+
     /**
      * Create a new resource resolver factory
      * @param eventAdmin All resource events are sent to this event admin
@@ -65,9 +96,47 @@ public class MockResourceResolverFactory implements ResourceResolverFactory {
      */
     public MockResourceResolverFactory(@NotNull final MockResourceResolverFactoryOptions options) {
         this.options = options;
+        this.resolverPool = options.getResolverPoolSize() > 0 ? new ResolverPool(options.getResolverPoolSize()) : null;
+        this.lifetimeTracker = options.isResolverTrackingEnabled()
+                ? new ResolverLifetimeTracker(options.getResolverTrackingStackSampling())
+                : null;
+        this.binaryStore = options.isBinaryDeduplicationEnabled() ? new BinaryStore() : null;
+        if (options.getDiskStoreDirectory() != null) {
+            try {
+                this.resources = new DiskResourceStore(
+                        options.getDiskStoreDirectory(),
+                        options.getDiskStoreMemtableSize(),
+                        options.getDiskStoreBlockCacheSize(),
+                        options.getBinarySpoolThreshold(),
+                        interner);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Unable to open disk store in " + options.getDiskStoreDirectory(), ex);
+            }
+        } else {
+            this.resources = new LinkedHashMap<String, Map<String, Object>>();
+        }
         Map<String, Object> props = new HashMap<String, Object>();
         props.put(MockResource.JCR_PRIMARYTYPE, ROOT_PRIMARY_TYPE);
         resources.put("/", props);
+        if (options.getWriteAheadLogDirectory() != null) {
+            List<WriteAheadLog.Change> recovered = new ArrayList<>();
+            try {
+                this.writeAheadLog = WriteAheadLog.open(
+                        options.getWriteAheadLogDirectory(),
+                        options.isWriteAheadLogSync(),
+                        options.getBinarySpoolThreshold(),
+                        recovered);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(
+                        "Unable to open write-ahead log in " + options.getWriteAheadLogDirectory(), ex);
+            }
+            // apply the recovered changes before a checkpoint or shutdown can truncate the log
+            if (!recovered.isEmpty()) {
+                new MockResourceResolver(options, this, resources).restore(recovered);
+            }
+        } else {
+            this.writeAheadLog = null;
+        }
     }
 
     @Override
@@ -80,41 +149,49 @@ public class MockResourceResolverFactory implements ResourceResolverFactory {
             attributes.put(ResourceResolverFactory.USER, authenticationInfo.get(ResourceResolverFactory.USER));
         }
 
-        final ResourceResolver result = new MockResourceResolver(options, this, resources, attributes);
-        Stack<ResourceResolver> resolverStack = resolverStackHolder.get();
-        if (resolverStack == null) {
-            resolverStack = new Stack<ResourceResolver>();
-            resolverStackHolder.set(resolverStack);
+        final MockResourceResolver result = new MockResourceResolver(options, this, resources, attributes);
+        threadResolvers.opened(result);
+        if (lifetimeTracker != null) {
+            lifetimeTracker.opened(result);
         }
-        resolverStack.push(result);
         return result;
     }
 
     @Override
     public @NotNull ResourceResolver getAdministrativeResourceResolver(final Map<String, Object> authenticationInfo)
             throws LoginException {
-        return new MockResourceResolver(options, this, resources);
+        return getPooledResourceResolver();
     }
 
     @Override
     public @NotNull ResourceResolver getServiceResourceResolver(Map<String, Object> authenticationInfo)
             throws LoginException {
-        return new MockResourceResolver(options, this, resources);
+        return getPooledResourceResolver();
+    }
+
+    private @NotNull MockResourceResolver getPooledResourceResolver() {
+        MockResourceResolver resolver = null;
+        if (resolverPool != null) {
+            resolver = resolverPool.acquire();
+        }
+        if (resolver == null) {
+            resolver = new MockResourceResolver(options, this, resources);
+            resolver.setPooled(resolverPool != null);
+        }
+        if (lifetimeTracker != null) {
+            lifetimeTracker.opened(resolver);
+        }
+        return resolver;
     }
 
     /**
-     * Thread local holding the resource resolver stack
+     * Resource resolvers opened per thread
      */
-    private ThreadLocal<Stack<ResourceResolver>> resolverStackHolder = new ThreadLocal<Stack<ResourceResolver>>();
+    private final ThreadResolverTracker threadResolvers = new ThreadResolverTracker();
 
     @Override
     public ResourceResolver getThreadResourceResolver() {
-        ResourceResolver result = null;
-        final Stack<ResourceResolver> resolverStack = resolverStackHolder.get();
-        if (resolverStack != null && !resolverStack.isEmpty()) {
-            result = resolverStack.peek();
-        }
-        return result;
+        return threadResolvers.current();
     }
 
     /**
@@ -123,10 +200,190 @@ public class MockResourceResolverFactory implements ResourceResolverFactory {
      * @param resolver Resource resolver
      */
     public void closed(@NotNull final ResourceResolver resolver) {
-        final Stack<ResourceResolver> resolverStack = resolverStackHolder.get();
-        if (resolverStack != null) {
-            resolverStack.remove(resolver);
+        threadResolvers.closed(resolver);
+        if (lifetimeTracker != null) {
+            lifetimeTracker.closed(resolver);
+        }
+        if (resolverPool != null && resolver instanceof MockResourceResolver mockResolver && mockResolver.isPooled()) {
+            resolverPool.release(mockResolver);
+        }
+    }
+
+    /**
+     * @return Number of service/administrative resource resolvers that were served from the resolver pool
+     *         (see {@link MockResourceResolverFactoryOptions#setResolverPoolSize(int)})
+     */
+    public long getResolverPoolHits() {
+        return resolverPool != null ? resolverPool.getHits() : 0;
+    }
+
+    /**
+     * @return Number of service/administrative resource resolvers that had to be created because the resolver pool
+     *         was empty (see {@link MockResourceResolverFactoryOptions#setResolverPoolSize(int)})
+     */
+    public long getResolverPoolMisses() {
+        return resolverPool != null ? resolverPool.getMisses() : 0;
+    }
+
+    /**
+     * Returns the number of resource resolvers obtained via {@link #getResourceResolver(Map)} that were
+     * garbage collected without being closed. A warning is logged whenever such leaked resolvers are detected.
+     * @return Number of leaked resource resolvers
+     */
+    public long getLeakedResourceResolverCount() {
+        return threadResolvers.getLeakedCount();
+    }
+
+    /**
+     * Returns all resource resolvers of this factory that are not closed yet, oldest first.
+     * Requires resolver tracking to be enabled via {@link MockResourceResolverFactoryOptions#setResolverTrackingEnabled(boolean)}.
+     * @return Open resource resolvers, or an empty list if tracking is disabled
+     */
+    public @NotNull List<OpenResourceResolver> getOpenResourceResolvers() {
+        return lifetimeTracker != null ? lifetimeTracker.getOpen() : Collections.emptyList();
+    }
+
+    /**
+     * Returns the number of resource resolvers of this factory that are not closed yet.
+     * Requires resolver tracking to be enabled via {@link MockResourceResolverFactoryOptions#setResolverTrackingEnabled(boolean)}.
+     * @return Number of open resource resolvers, or 0 if tracking is disabled
+     */
+    public int getOpenResourceResolverCount() {
+        return lifetimeTracker != null ? lifetimeTracker.getOpenCount() : 0;
+    }
+
+    /**
+     * Writes a checkpoint with all resources to the write-ahead log directory and truncates the log, so the next
+     * startup does not have to replay the changes logged so far. Requires a write-ahead log to be configured via
+     * {@link MockResourceResolverFactoryOptions#setWriteAheadLogDirectory(java.nio.file.Path)}.
+     * @throws IllegalStateException If no write-ahead log is configured
+     * @throws UncheckedIOException If the checkpoint cannot be written
+     */
+    public void checkpoint() {
+        if (writeAheadLog == null) {
+            throw new IllegalStateException("No write-ahead log configured.");
         }
+        // commits append to the log while holding the write lock, so holding the read lock excludes them
+        resourcesLock.readLock().lock();
+        try {
+            Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, Object>> entry : resources.entrySet()) {
+                snapshot.put(entry.getKey(), MockResourceResolver.getRawProperties(entry.getValue()));
+            }
+            writeAheadLog.checkpoint(snapshot);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to write checkpoint.", ex);
+        } finally {
+            resourcesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Called by resolvers after a commit was logged, writes a checkpoint if the log exceeds the configured size.
+     */
+    void checkpointIfRequired() {
+        long threshold = options.getWriteAheadLogCheckpointThreshold();
+        try {
+            if (threshold > 0 && writeAheadLog.size() > threshold) {
+                checkpoint();
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            // the commit is durable in the log, the checkpoint is retried after the next commit
+            log.warn("Unable to write checkpoint.", ex);
+        }
+    }
+
+    /**
+     * Shuts down the factory. If resolver tracking is enabled, a warning including the sampled creation stack
+     * trace is logged for each resource resolver that was not closed. If a write-ahead log is configured,
+     * it is synced and closed. If a disk store is configured, its files are deleted. The thread pool for parallel
+     * traversals is shut down.
+     * @throws IllegalStateException If resource resolvers were not closed and
+     *          {@link MockResourceResolverFactoryOptions#setResolverTrackingFailOnLeak(boolean)} is set
+     */
+    public void shutdown() {
+        try {
+            if (lifetimeTracker != null) {
+                lifetimeTracker.checkLeaks(options.isResolverTrackingFailOnLeak());
+            }
+        } finally {
+            threadResolvers.shutdown();
+            options.shutdownTraversalPool();
+            if (writeAheadLog != null) {
+                try {
+                    writeAheadLog.close();
+                } catch (IOException ex) {
+                    log.warn("Unable to close write-ahead log.", ex);
+                }
+            }
+            if (resources instanceof DiskResourceStore diskStore) {
+                resourcesLock.writeLock().lock();
+                try {
+                    diskStore.close();
+                } catch (IOException ex) {
+                    log.warn("Unable to close disk store.", ex);
+                } finally {
+                    resourcesLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    @NotNull
+    StringInterner getInterner() {
+        return interner;
+    }
+
+    @NotNull
+    PropertyShape getPropertyShapeRoot() {
+        return propertyShapeRoot;
+    }
+
+    @Nullable
+    BinaryStore getBinaryStore() {
+        return binaryStore;
+    }
+
+    @Nullable
+    WriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    @Nullable
+    DiskResourceStore getDiskStore() {
+        return resources instanceof DiskResourceStore diskStore ? diskStore : null;
+    }
+
+    ReadWriteLock getResourcesLock() {
+        return resourcesLock;
+    }
+
+    /**
+     * @return Version of the resource store, changes whenever resources are added or removed
+     */
+    long getStoreVersion() {
+        return storeVersion;
+    }
+
+    /**
+     * Called by resolvers after changing the resource store, while holding the write lock.
+     */
+    void storeChanged() {
+        storeVersion++;
+    }
+
+    /**
+     * @return Version of resource properties, changes whenever properties are modified in any resolver
+     */
+    long getPropertiesVersion() {
+        return propertiesVersion.get();
+    }
+
+    /**
+     * Called by resolvers when resource properties are modified.
+     */
+    void propertiesChanged() {
+        propertiesVersion.incrementAndGet();
     }
 
     // Sling API 2.24.0
@@ -18,8 +18,11 @@
  */
 package org.apache.sling.testing.resourceresolver;
 
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -38,8 +41,45 @@ public class MockResourceResolverFactoryOptions {
 
     private boolean mangleNamespacePrefixes;
 
-    private final List<MockFindResourcesHandler> findResourcesHandlers = new ArrayList<>();
-    private final List<MockQueryResourceHandler> queryResourcesHandlers = new ArrayList<>();
+    private final HandlerList<MockFindResourcesHandler> findResourcesHandlers = new HandlerList<>();
+    private final HandlerList<MockQueryResourceHandler> queryResourcesHandlers = new HandlerList<>();
+
+    private boolean queryPlanCacheEnabled;
+    private final QueryPlanCache findResourcesPlanCache = new QueryPlanCache();
+    private final QueryPlanCache queryResourcesPlanCache = new QueryPlanCache();
+
+    private int traversalParallelism = 1;
+    private int parallelTraversalThreshold = 1000;
+    private ForkJoinPool traversalPool;
+    private final Lock traversalPoolLock = new ReentrantLock();
+
+    private int resolverPoolSize;
+
+    private int negativeLookupCacheSize = 1000;
+
+    private Path diskStoreDirectory;
+    private long diskStoreMemtableSize = 8L * 1024 * 1024;
+    private long diskStoreBlockCacheSize = 64L * 1024 * 1024;
+
+    private Path writeAheadLogDirectory;
+    private boolean writeAheadLogSync = true;
+    private long writeAheadLogCheckpointThreshold = 16L * 1024 * 1024;
+
+    private boolean resolverTrackingEnabled;
+    private int resolverTrackingStackSampling = 10;
+    private boolean resolverTrackingFailOnLeak;
+
+    private MockResourceResolverMetrics metrics = MockResourceResolverMetrics.NO_OP;
+
+    static final int DEFAULT_BINARY_SPOOL_THRESHOLD = 1024 * 1024;
+
+    private int binarySpoolThreshold = DEFAULT_BINARY_SPOOL_THRESHOLD;
+
+    private boolean binaryDeduplicationEnabled;
+
+    private boolean compactPropertyStorage;
+
+    private boolean valueMapConversionCache = true;
 
     public @Nullable EventAdmin getEventAdmin() {
         return eventAdmin;
@@ -98,4 +138,382 @@ public class MockResourceResolverFactoryOptions {
     public @NotNull List<MockQueryResourceHandler> getQueryResourcesHandlers() {
         return queryResourcesHandlers;
     }
+
+    public boolean isQueryPlanCacheEnabled() {
+        return queryPlanCacheEnabled;
+    }
+
+    /**
+     * Enables caching of the find/query handler dispatching. If enabled, the handler that delivered the result
+     * for a query/language combination is remembered and invoked directly for repeated queries.
+     * The cache is invalidated when handlers are added or removed.
+     * Only enable this if all registered handlers return results consistently for the same query and language.
+     * @param queryPlanCacheEnabled Enable query plan cache
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setQueryPlanCacheEnabled(boolean queryPlanCacheEnabled) {
+        this.queryPlanCacheEnabled = queryPlanCacheEnabled;
+        return this;
+    }
+
+    HandlerList<MockFindResourcesHandler> getFindResourcesHandlerList() {
+        return findResourcesHandlers;
+    }
+
+    HandlerList<MockQueryResourceHandler> getQueryResourcesHandlerList() {
+        return queryResourcesHandlers;
+    }
+
+    @Nullable
+    QueryPlanCache getFindResourcesPlanCache() {
+        return queryPlanCacheEnabled ? findResourcesPlanCache : null;
+    }
+
+    @Nullable
+    QueryPlanCache getQueryResourcesPlanCache() {
+        return queryPlanCacheEnabled ? queryResourcesPlanCache : null;
+    }
+
+    public int getTraversalParallelism() {
+        return traversalParallelism;
+    }
+
+    /**
+     * Sets the number of threads used for traversal-based evaluation of find queries
+     * (see {@link MockFindQueryResources#findResourcesByTraversal}). The thread pool is shut down with the factory,
+     * see {@link MockResourceResolverFactory#shutdown()}.
+     * @param traversalParallelism Parallelism - 1 (default) means sequential traversal
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setTraversalParallelism(int traversalParallelism) {
+        this.traversalParallelism = traversalParallelism;
+        return this;
+    }
+
+    public int getParallelTraversalThreshold() {
+        return parallelTraversalThreshold;
+    }
+
+    /**
+     * Sets the minimum number of resources in a traversed subtree for using parallel traversal.
+     * Smaller subtrees are always traversed sequentially.
+     * @param parallelTraversalThreshold Threshold - default is 1000
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setParallelTraversalThreshold(int parallelTraversalThreshold) {
+        this.parallelTraversalThreshold = parallelTraversalThreshold;
+        return this;
+    }
+
+    public int getResolverPoolSize() {
+        return resolverPoolSize;
+    }
+
+    /**
+     * Enables pooling of resource resolvers obtained via
+     * {@link MockResourceResolverFactory#getServiceResourceResolver(java.util.Map)} and
+     * {@link MockResourceResolverFactory#getAdministrativeResourceResolver(java.util.Map)}.
+     * Closed resolvers are reset (uncommitted changes are reverted, the property map is cleared)
+     * and handed out again instead of creating new ones. A closed resolver must not be used anymore.
+     * Resolvers that were adapted via {@link org.apache.sling.api.adapter.Adaptable#adaptTo(Class)} are not
+     * pooled, as the adapters cached for them cannot be reset.
+     * This option is evaluated when the factory is created.
+     * @param resolverPoolSize Maximum number of idle resolvers kept in the pool - 0 (default) disables pooling
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setResolverPoolSize(int resolverPoolSize) {
+        this.resolverPoolSize = resolverPoolSize;
+        return this;
+    }
+
+    public int getNegativeLookupCacheSize() {
+        return negativeLookupCacheSize;
+    }
+
+    /**
+     * Each resource resolver remembers paths that were looked up via
+     * {@link org.apache.sling.api.resource.ResourceResolver#getResource(String)} without a result, so repeated
+     * lookups of missing optional paths are answered from the cache. The cache is invalidated whenever resources
+     * or properties are changed.
+     * @param negativeLookupCacheSize Maximum number of missing paths cached per resolver - 0 disables the cache,
+     *          default is 1000
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setNegativeLookupCacheSize(int negativeLookupCacheSize) {
+        this.negativeLookupCacheSize = negativeLookupCacheSize;
+        return this;
+    }
+
+    public @Nullable Path getDiskStoreDirectory() {
+        return diskStoreDirectory;
+    }
+
+    /**
+     * Stores the resources in a log-structured merge tree in the given directory instead of the heap, for fixtures
+     * with more resources than fit into memory. Listing children and traversing subtrees use range scans over the
+     * sorted resource paths, so resources are returned in path order instead of creation order.
+     * Property values are limited to the types supported by the write-ahead log.
+     * The directory is working storage only, its table files are deleted when the factory is created and shut down.
+     * This option is evaluated when the factory is created.
+     * @param diskStoreDirectory Directory for the table files - null (default) keeps all resources in the heap
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setDiskStoreDirectory(@Nullable Path diskStoreDirectory) {
+        this.diskStoreDirectory = diskStoreDirectory;
+        return this;
+    }
+
+    public long getDiskStoreMemtableSize() {
+        return diskStoreMemtableSize;
+    }
+
+    /**
+     * @param diskStoreMemtableSize Size of committed changes in bytes that is kept in memory before it is flushed
+     *          to a table file of the disk store, default is 8 MB
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setDiskStoreMemtableSize(long diskStoreMemtableSize) {
+        this.diskStoreMemtableSize = diskStoreMemtableSize;
+        return this;
+    }
+
+    public long getDiskStoreBlockCacheSize() {
+        return diskStoreBlockCacheSize;
+    }
+
+    /**
+     * @param diskStoreBlockCacheSize Size of the LRU cache for blocks read from table files of the disk store
+     *          in bytes - 0 disables the cache, default is 64 MB
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setDiskStoreBlockCacheSize(long diskStoreBlockCacheSize) {
+        this.diskStoreBlockCacheSize = diskStoreBlockCacheSize;
+        return this;
+    }
+
+    public @Nullable Path getWriteAheadLogDirectory() {
+        return writeAheadLogDirectory;
+    }
+
+    /**
+     * Persists all committed changes in a write-ahead log in the given directory. When a factory is created with
+     * an existing log, the resources are restored from the latest checkpoint and the log records written after it.
+     * The resources are restored when the factory is created, before any resource resolver is obtained from it.
+     * This option is evaluated when the factory is created.
+     * @param writeAheadLogDirectory Directory for log and checkpoint files - null (default) disables the log
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setWriteAheadLogDirectory(
+            @Nullable Path writeAheadLogDirectory) {
+        this.writeAheadLogDirectory = writeAheadLogDirectory;
+        return this;
+    }
+
+    public boolean isWriteAheadLogSync() {
+        return writeAheadLogSync;
+    }
+
+    /**
+     * Forces the write-ahead log to disk before a commit returns. Concurrent commits share a single fsync.
+     * Disable for faster commits if losing the most recent commits on a system crash is acceptable.
+     * @param writeAheadLogSync Sync write-ahead log on commit, default is true
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setWriteAheadLogSync(boolean writeAheadLogSync) {
+        this.writeAheadLogSync = writeAheadLogSync;
+        return this;
+    }
+
+    public long getWriteAheadLogCheckpointThreshold() {
+        return writeAheadLogCheckpointThreshold;
+    }
+
+    /**
+     * When the write-ahead log exceeds the given size after a commit, a checkpoint with all resources is written
+     * and the log is truncated, see {@link MockResourceResolverFactory#checkpoint()}.
+     * @param writeAheadLogCheckpointThreshold Log size in bytes - 0 disables automatic checkpoints,
+     *          default is 16 MB
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setWriteAheadLogCheckpointThreshold(
+            long writeAheadLogCheckpointThreshold) {
+        this.writeAheadLogCheckpointThreshold = writeAheadLogCheckpointThreshold;
+        return this;
+    }
+
+    public boolean isResolverTrackingEnabled() {
+        return resolverTrackingEnabled;
+    }
+
+    /**
+     * Enables tracking of all open resource resolvers of the factory, see
+     * {@link MockResourceResolverFactory#getOpenResourceResolvers()} and {@link MockResourceResolverFactory#shutdown()}.
+     * While tracking is enabled, resolvers that are not closed are not garbage collected.
+     * This option is evaluated when the factory is created.
+     * @param resolverTrackingEnabled Enable resolver tracking
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setResolverTrackingEnabled(boolean resolverTrackingEnabled) {
+        this.resolverTrackingEnabled = resolverTrackingEnabled;
+        return this;
+    }
+
+    public int getResolverTrackingStackSampling() {
+        return resolverTrackingStackSampling;
+    }
+
+    /**
+     * Controls for which resolvers the stack trace of the code that opened them is captured when resolver tracking
+     * is enabled. Capturing stack traces is relatively expensive, so by default only every 10th resolver is sampled.
+     * @param resolverTrackingStackSampling Capture the stack trace of every n-th resolver - 1 captures all,
+     *          0 disables capturing
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setResolverTrackingStackSampling(
+            int resolverTrackingStackSampling) {
+        this.resolverTrackingStackSampling = resolverTrackingStackSampling;
+        return this;
+    }
+
+    public boolean isResolverTrackingFailOnLeak() {
+        return resolverTrackingFailOnLeak;
+    }
+
+    /**
+     * @param resolverTrackingFailOnLeak If true, {@link MockResourceResolverFactory#shutdown()} throws an exception
+     *          if resource resolvers were not closed. Otherwise only a warning is logged.
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setResolverTrackingFailOnLeak(
+            boolean resolverTrackingFailOnLeak) {
+        this.resolverTrackingFailOnLeak = resolverTrackingFailOnLeak;
+        return this;
+    }
+
+    public @NotNull MockResourceResolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets a metrics sink that is notified about the operations of the resource resolvers.
+     * The metrics sink is evaluated when a resource resolver is created.
+     * @param metrics Metrics sink - null resets to {@link MockResourceResolverMetrics#NO_OP}
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setMetrics(@Nullable MockResourceResolverMetrics metrics) {
+        this.metrics = metrics != null ? metrics : MockResourceResolverMetrics.NO_OP;
+        return this;
+    }
+
+    public int getBinarySpoolThreshold() {
+        return binarySpoolThreshold;
+    }
+
+    /**
+     * Sets the size above which binary values written as {@link java.io.InputStream} are spooled to a temporary file
+     * instead of being kept in memory as byte array.
+     * @param binarySpoolThreshold Threshold in bytes - default is 1MB
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setBinarySpoolThreshold(int binarySpoolThreshold) {
+        this.binarySpoolThreshold = binarySpoolThreshold;
+        return this;
+    }
+
+    public boolean isBinaryDeduplicationEnabled() {
+        return binaryDeduplicationEnabled;
+    }
+
+    /**
+     * Enables content-addressed deduplication of binary values written as {@link java.io.InputStream}:
+     * binaries with the same content (SHA-256 digest) share a single copy across all resources of the factory.
+     * Byte arrays returned for binary properties are copies of the shared binary, streams and buffers read it directly.
+     * This option is evaluated when the factory is created.
+     * @param binaryDeduplicationEnabled Enable binary deduplication
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setBinaryDeduplicationEnabled(
+            boolean binaryDeduplicationEnabled) {
+        this.binaryDeduplicationEnabled = binaryDeduplicationEnabled;
+        return this;
+    }
+
+    public boolean isCompactPropertyStorage() {
+        return compactPropertyStorage;
+    }
+
+    /**
+     * Enables a memory-efficient storage of resource properties: property names are stored once per distinct
+     * set of properties ("shape") and shared by all resources with the same properties, and <code>Long</code>,
+     * <code>Double</code> and <code>Boolean</code> values are stored unboxed. Property values are still returned
+     * as objects, and iteration is in insertion order. Recommended for large fixtures.
+     * @param compactPropertyStorage Enable compact property storage
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setCompactPropertyStorage(boolean compactPropertyStorage) {
+        this.compactPropertyStorage = compactPropertyStorage;
+        return this;
+    }
+
+    public boolean isValueMapConversionCache() {
+        return valueMapConversionCache;
+    }
+
+    /**
+     * Caches the results of type conversions in {@link org.apache.sling.api.resource.ValueMap#get(String, Class)}
+     * per property and target type, e.g. repeated reads of a date string as <code>Calendar</code>. A cached
+     * conversion is only used as long as the property value is unchanged. Enabled by default.
+     * @param valueMapConversionCache Enable conversion cache
+     * @return this
+     */
+    public @NotNull MockResourceResolverFactoryOptions setValueMapConversionCache(boolean valueMapConversionCache) {
+        this.valueMapConversionCache = valueMapConversionCache;
+        return this;
+    }
+
+    ForkJoinPool getTraversalPool() {
+        traversalPoolLock.lock();
+        try {
+            if (traversalPool == null
+                    || traversalPool.isShutdown()
+                    || traversalPool.getParallelism() != traversalParallelism) {
+                if (traversalPool != null) {
+                    traversalPool.shutdown();
+                }
+                traversalPool = new ForkJoinPool(traversalParallelism);
+            }
+            return traversalPool;
+        } finally {
+            traversalPoolLock.unlock();
+        }
+    }
+
+    /**
+     * Shuts down the traversal pool, called when a factory using these options is shut down.
+     * The pool is created again if a traversal is started afterwards.
+     */
+    void shutdownTraversalPool() {
+        traversalPoolLock.lock();
+        try {
+            if (traversalPool != null) {
+                traversalPool.shutdown();
+                traversalPool = null;
+            }
+        } finally {
+            traversalPoolLock.unlock();
+        }
+    }
+
+    /**
+     * @return Current traversal pool, or null if none was created
+     */
+    @Nullable
+    ForkJoinPool getTraversalPoolIfCreated() {
+        traversalPoolLock.lock();
+        try {
+            return traversalPool;
+        } finally {
+            traversalPoolLock.unlock();
+        }
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Receives metrics about the operations of the mock resource resolvers of a factory,
+ * see {@link MockResourceResolverFactoryOptions#setMetrics(MockResourceResolverMetrics)}.
+ * All methods have an empty default implementation, so implementations only need to override the metrics
+ * they are interested in. Durations are measured only if a metrics sink other than {@link #NO_OP} is set.
+ * <p>{@link CountingMockResourceResolverMetrics} provides an implementation that collects counters tests
+ * can assert against.</p>
+ */
+@ConsumerType
+public interface MockResourceResolverMetrics {
+
+    /**
+     * Metrics sink that ignores all metrics (default).
+     */
+    MockResourceResolverMetrics NO_OP = new MockResourceResolverMetrics() {};
+
+    /**
+     * A resource was found via {@link org.apache.sling.api.resource.ResourceResolver#getResource(String)}.
+     * @param path Requested path
+     * @param durationNanos Duration of the lookup
+     */
+    default void resourceHit(@NotNull String path, long durationNanos) {
+        // no-op
+    }
+
+    /**
+     * A resource was not found via {@link org.apache.sling.api.resource.ResourceResolver#getResource(String)}.
+     * @param path Requested path
+     * @param durationNanos Duration of the lookup
+     */
+    default void resourceMiss(@NotNull String path, long durationNanos) {
+        // no-op
+    }
+
+    /**
+     * A resource lookup was resolved to a property of the parent resource.
+     * @param path Property path
+     */
+    default void propertyResourceFallback(@NotNull String path) {
+        // no-op
+    }
+
+    /**
+     * A relative path was looked up below a search path.
+     * @param path Absolute path probed in the search path
+     */
+    default void searchPathProbe(@NotNull String path) {
+        // no-op
+    }
+
+    /**
+     * Children of a resource were listed.
+     * @param parentPath Parent path
+     * @param size Number of children
+     */
+    default void listChildren(@NotNull String parentPath, int size) {
+        // no-op
+    }
+
+    /**
+     * Changes were committed.
+     * @param changes Number of added, changed or deleted resources
+     * @param durationNanos Duration of the commit
+     */
+    default void commit(int changes, long durationNanos) {
+        // no-op
+    }
+
+    /**
+     * A resource event was sent to the event admin.
+     * @param topic Event topic
+     * @param path Resource path
+     */
+    default void eventSent(@NotNull String topic, @NotNull String path) {
+        // no-op
+    }
+
+    /**
+     * A find or query request was dispatched to the registered handlers.
+     * @param query Query
+     * @param language Query language
+     * @param durationNanos Duration of the handler dispatching
+     */
+    default void queryDispatch(@NotNull String query, @Nullable String language, long durationNanos) {
+        // no-op
+    }
+}
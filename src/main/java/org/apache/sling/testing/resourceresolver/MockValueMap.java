@@ -21,15 +21,25 @@ package org.apache.sling.testing.resourceresolver;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Calendar;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.wrappers.DeepReadModifiableValueMapDecorator;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
 
@@ -37,23 +47,39 @@ import org.apache.sling.api.wrappers.ValueMapDecorator;
  * ValueMap for mocked resources to mimick JCR-like behavior.
  * <p>Implements the following conversions:</p>
  * <ul>
- * <li>Converts all Date values to Calendar objects internally and vice versa.</li>
- * <li>Converts InputStream to byte array and vice versa.</li>
+ * <li>Stores Date values in a compact form and provides them as Calendar, Date, Instant, ZonedDateTime or
+ * OffsetDateTime - raw reads return Calendar objects.</li>
+ * <li>Converts InputStream to byte array and vice versa. Streams exceeding the
+ * {@link MockResourceResolverFactoryOptions#setBinarySpoolThreshold(int) spool threshold} are spooled to a
+ * temporary file and streamed from there. Raw reads return byte arrays independent of the binary size, streams
+ * are only opened when requested as InputStream. If {@link MockResourceResolverFactoryOptions#setBinaryDeduplicationEnabled(boolean)
+ * binary deduplication} is enabled, binaries with the same content share a single copy.</li>
+ * <li>Provides binary values as read-only {@link ByteBuffer} or {@link SeekableByteChannel} without copying
+ * the data; spooled binaries are memory-mapped.</li>
  * </ul>
  */
 public class MockValueMap extends DeepReadModifiableValueMapDecorator implements ModifiableValueMap {
 
     private final Resource resource;
     private final MockResourceResolver mockResourceResolver;
+    private final boolean conversionCacheEnabled;
+    private final boolean copyBinaries;
+    private volatile ConversionCache conversionCache;
+    private volatile Map<String, DeepReadTarget> deepReadTargets;
 
     public MockValueMap(Resource resource) {
         this(resource, new HashMap<>());
     }
 
     public MockValueMap(Resource resource, Map<String, Object> map) {
-        super(resource, new ValueMapDecorator(convertForWriteAll(map)));
+        super(resource, new ValueMapDecorator(convertForWriteAll(map, getMockResourceResolver(resource), false)));
         this.resource = resource;
         this.mockResourceResolver = getMockResourceResolver(resource);
+        this.conversionCacheEnabled = mockResourceResolver == null
+                || mockResourceResolver.getOptions().isValueMapConversionCache();
+        // deduplicated binaries are shared between properties, so callers must not get the stored array
+        this.copyBinaries = mockResourceResolver != null
+                && mockResourceResolver.getOptions().isBinaryDeduplicationEnabled();
     }
 
     private static MockResourceResolver getMockResourceResolver(Resource resource) {
@@ -70,54 +96,492 @@ public class MockValueMap extends DeepReadModifiableValueMapDecorator implements
     public <T> T get(String name, Class<T> type) {
 
         if (type == InputStream.class) {
+            // Stream spooled binaries directly from their temporary file
+            if (super.get(name) instanceof MockBinary binary) {
+                return (T) binary.getStream();
+            }
             // Support conversion from byte array to InputStream
-            byte[] data = get(name, byte[].class);
+            byte[] data = getBytesForReading(name);
             if (data != null) {
                 return (T) new ByteArrayInputStream(data);
             } else {
                 return null;
             }
+        } else if (type == ByteBuffer.class) {
+            if (super.get(name) instanceof MockBinary binary) {
+                return (T) binary.getByteBuffer();
+            }
+            byte[] data = getBytesForReading(name);
+            return data != null ? (T) ByteBuffer.wrap(data).asReadOnlyBuffer() : null;
+        } else if (type == SeekableByteChannel.class) {
+            if (super.get(name) instanceof MockBinary binary) {
+                return (T) binary.getChannel();
+            }
+            byte[] data = getBytesForReading(name);
+            return data != null ? (T) new ByteBufferChannel(ByteBuffer.wrap(data)) : null;
+        } else if (type == byte[].class && super.get(name) instanceof MockBinary binary) {
+            return (T) binary.toByteArray();
+        } else if (type != null && type != Object.class && super.get(name) instanceof MockBinary binary) {
+            // convert spooled binaries like binaries kept in memory
+            return new ValueMapDecorator(Collections.singletonMap(name, binary.toByteArray())).get(name, type);
         } else if (type == null) {
-            return (T) super.get(name);
+            return (T) get(name);
+        } else if (name.indexOf('/') >= 0) {
+            // deep read is delegated to the value map of the referenced resource
+            ValueMap target = getDeepReadTarget(name);
+            if (target != null) {
+                return target.get(name.substring(name.lastIndexOf('/') + 1), type);
+            }
+            return super.get(name, type);
+        }
+
+        Object rawValue = super.get(name);
+        if (rawValue instanceof TemporalValue temporal) {
+            T value = temporal.convert(type);
+            if (value != null) {
+                return value;
+            }
+        }
+        if (rawValue == null || type.isInstance(rawValue)) {
+            // no conversion required
+            if (copyBinaries && rawValue instanceof byte[] data) {
+                return (T) data.clone();
+            }
+            return super.get(name, type);
+        }
+        if (conversionCacheEnabled && ConversionCache.isCacheable(type)) {
+            return getCached(name, type, rawValue);
+        }
+        return convert(name, rawValue, type);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T get(String name, T defaultValue) {
+        if (defaultValue == null) {
+            return (T) get(name);
+        }
+        T value = get(name, (Class<T>) defaultValue.getClass());
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (key instanceof String name && name.indexOf('/') >= 0) {
+            ValueMap target = getDeepReadTarget(name);
+            if (target != null) {
+                return target.get(name.substring(name.lastIndexOf('/') + 1));
+            }
+        }
+        return toExternal(super.get(key), copyBinaries);
+    }
+
+    /**
+     * @return Binary value as byte array that is only read, without copying deduplicated binaries
+     */
+    private byte[] getBytesForReading(String name) {
+        if (name.indexOf('/') < 0 && super.get(name) instanceof byte[] data) {
+            return data;
+        }
+        return get(name, byte[].class);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key instanceof String name && name.indexOf('/') >= 0) {
+            ValueMap target = getDeepReadTarget(name);
+            if (target != null) {
+                return target.containsKey(name.substring(name.lastIndexOf('/') + 1));
+            }
+        }
+        return super.containsKey(key);
+    }
+
+    /**
+     * Resolves the value map of the child resource referenced by a deep read property name directly from the
+     * resource store, without creating intermediate resources. The resolved value map is cached per relative
+     * path until resources are added or removed.
+     * @param name Property name containing a relative path
+     * @return Value map of the referenced resource, or null if it has to be resolved via the resource resolver
+     */
+    private ValueMap getDeepReadTarget(String name) {
+        if (mockResourceResolver == null) {
+            return null;
+        }
+        String relativePath = name.substring(0, name.lastIndexOf('/'));
+        long version = mockResourceResolver.getStructureVersion();
+        Map<String, DeepReadTarget> targets = deepReadTargets;
+        DeepReadTarget target = targets != null ? targets.get(relativePath) : null;
+        if (target != null && target.version == version) {
+            return target.valueMap;
+        }
+        String parentPath = resource.getPath();
+        String path =
+                ResourcePaths.normalize("/".equals(parentPath) ? "/" + relativePath : parentPath + "/" + relativePath);
+        ValueMap valueMap = path != null ? mockResourceResolver.getStoredValueMap(path) : null;
+        if (valueMap == null) {
+            return null;
+        }
+        if (targets == null) {
+            targets = new ConcurrentHashMap<>(4);
+            deepReadTargets = targets;
+        }
+        targets.put(relativePath, new DeepReadTarget(valueMap, version));
+        return valueMap;
+    }
+
+    private <T> T convert(String name, Object rawValue, Class<T> type) {
+        if (rawValue instanceof TemporalValue temporal) {
+            return new ValueMapDecorator(Collections.singletonMap(name, temporal.toCalendar())).get(name, type);
         }
         return super.get(name, type);
     }
 
+    /**
+     * Get converted value from conversion cache. Deep paths are not cached, as the referenced resource may change.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T getCached(String name, Class<T> type, Object rawValue) {
+        ConversionCache cache = getConversionCache();
+        ConversionCache.Conversion conversion = cache.get(name, type, rawValue);
+        if (conversion != null) {
+            return (T) conversion.getValue();
+        }
+        T value = convert(name, rawValue, type);
+        cache.put(name, type, rawValue, value);
+        return value;
+    }
+
+    private ConversionCache getConversionCache() {
+        ConversionCache cache = conversionCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = conversionCache;
+                if (cache == null) {
+                    cache = new ConversionCache();
+                    conversionCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private void invalidateConversionCache(Object key) {
+        ConversionCache cache = conversionCache;
+        if (cache != null) {
+            if (key != null) {
+                cache.invalidate(key);
+            } else {
+                cache.clear();
+            }
+        }
+    }
+
     @Override
     public Object put(String key, Object value) {
-        markResourceAsChanged();
-        return super.put(key, convertForWrite(value));
+        return put(mockResourceResolver, key, value);
+    }
+
+    private Object put(MockResourceResolver writer, String key, Object value) {
+        markPropertyChanged(writer, markResourceAsChanged(writer), key, true);
+        invalidateConversionCache(key);
+        return toExternal(
+                super.put(intern(key, mockResourceResolver), convertForWrite(value, mockResourceResolver)),
+                copyBinaries);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void putAll(Map<? extends String, ?> map) {
-        markResourceAsChanged();
-        super.putAll(convertForWriteAll((Map<String, Object>) map));
+        putAll(mockResourceResolver, map);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void putAll(MockResourceResolver writer, Map<? extends String, ?> map) {
+        Map<String, Boolean> changes = markResourceAsChanged(writer);
+        for (String key : map.keySet()) {
+            markPropertyChanged(writer, changes, key, true);
+            invalidateConversionCache(key);
+        }
+        super.putAll(convertForWriteAll((Map<String, Object>) map, mockResourceResolver, true));
     }
 
     @Override
     public Object remove(Object key) {
-        markResourceAsChanged();
-        return super.remove(key);
+        return remove(mockResourceResolver, key);
+    }
+
+    private Object remove(MockResourceResolver writer, Object key) {
+        markPropertyChanged(writer, markResourceAsChanged(writer), key, false);
+        invalidateConversionCache(key);
+        return toExternal(super.remove(key), copyBinaries);
     }
 
     @Override
     public void clear() {
-        markResourceAsChanged();
+        clear(mockResourceResolver);
+    }
+
+    private void clear(MockResourceResolver writer) {
+        Map<String, Boolean> changes = markResourceAsChanged(writer);
+        if (changes != null) {
+            for (String key : keySet()) {
+                if (key != null && key.indexOf('/') < 0) {
+                    changes.putIfAbsent(key, true);
+                }
+            }
+        }
+        invalidateConversionCache(null);
         super.clear();
     }
 
-    private static Object convertForWrite(Object value) {
+    /**
+     * Returns this value map for modifications through a resource of the given resolver. Resources of other
+     * resolvers than the one that created the value map share it, but changes made through them have to be
+     * recorded in their own resolver to be committed and logged with it.
+     * @param resolver Resolver of the resource
+     * @return Modifiable value map recording changes in the given resolver
+     */
+    ModifiableValueMap forResolver(ResourceResolver resolver) {
+        if (resolver == mockResourceResolver || !(resolver instanceof MockResourceResolver)) {
+            return this;
+        }
+        return new ResolverValueMap(this, (MockResourceResolver) resolver);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (Object rawValue : super.values()) {
+            // a byte array read from a spooled binary never equals the given value, so it is not read
+            if (!(rawValue instanceof MockBinary) && Objects.equals(value, TemporalValue.toExternal(rawValue))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return new AbstractCollection<Object>() {
+            @Override
+            public Iterator<Object> iterator() {
+                Iterator<Object> iterator = MockValueMap.super.values().iterator();
+                return new Iterator<Object>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Object next() {
+                        return toExternal(iterator.next(), copyBinaries);
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MockValueMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return entrySet(true);
+    }
+
+    /**
+     * @param convertBinaries Whether to provide spooled binaries as byte array and copy deduplicated ones -
+     *            hashCode uses the identity of the stored binaries instead of reading or copying each
+     */
+    private Set<Map.Entry<String, Object>> entrySet(boolean convertBinaries) {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                Iterator<Map.Entry<String, Object>> iterator =
+                        MockValueMap.super.entrySet().iterator();
+                return new Iterator<Map.Entry<String, Object>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        Map.Entry<String, Object> entry = iterator.next();
+                        Object value = entry.getValue();
+                        if (value instanceof TemporalValue
+                                || (convertBinaries
+                                        && (value instanceof MockBinary
+                                                || (copyBinaries && value instanceof byte[])))) {
+                            return new ExternalEntry(entry, mockResourceResolver, copyBinaries);
+                        }
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MockValueMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Map<?, ?> other) || other.size() != size()) {
+            return false;
+        }
+        // compare stored values of other mock value maps directly: spooled binaries by identity without opening
+        // streams, temporal values without converting them to Calendar
+        Object otherDelegate = other instanceof ReadonlyValueMapDecorator readonly ? readonly.getDelegate() : other;
+        MockValueMap otherMockValueMap = otherDelegate instanceof MockValueMap mockValueMap ? mockValueMap : null;
+        for (Map.Entry<String, Object> entry : MockValueMap.super.entrySet()) {
+            Object value = entry.getValue();
+            Object otherValue;
+            if (otherMockValueMap != null) {
+                otherValue = otherMockValueMap.getStored(entry.getKey());
+                if (!(value instanceof TemporalValue && otherValue instanceof TemporalValue)) {
+                    value = TemporalValue.toExternal(value);
+                    otherValue = TemporalValue.toExternal(otherValue);
+                }
+            } else {
+                value = TemporalValue.toExternal(value);
+                otherValue = other.get(entry.getKey());
+            }
+            if (value == null ? otherValue != null || !other.containsKey(entry.getKey()) : !value.equals(otherValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object getStored(String key) {
+        return super.get(key);
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        for (Map.Entry<String, Object> entry : entrySet(false)) {
+            hashCode += entry.hashCode();
+        }
+        return hashCode;
+    }
+
+    /**
+     * Value map resolved for a deep read, valid as long as the resource structure is unchanged.
+     */
+    private static final class DeepReadTarget {
+
+        private final ValueMap valueMap;
+        private final long version;
+
+        DeepReadTarget(ValueMap valueMap, long version) {
+            this.valueMap = valueMap;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Entry of a temporal value or binary, provides the value as Calendar or byte array.
+     */
+    private static final class ExternalEntry implements Map.Entry<String, Object> {
+
+        private final Map.Entry<String, Object> delegate;
+        private final MockResourceResolver resolver;
+        private final boolean copyBinaries;
+
+        ExternalEntry(Map.Entry<String, Object> delegate, MockResourceResolver resolver, boolean copyBinaries) {
+            this.delegate = delegate;
+            this.resolver = resolver;
+            this.copyBinaries = copyBinaries;
+        }
+
+        @Override
+        public String getKey() {
+            return delegate.getKey();
+        }
+
+        @Override
+        public Object getValue() {
+            return toExternal(delegate.getValue(), copyBinaries);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return toExternal(delegate.setValue(convertForWrite(value, resolver)), copyBinaries);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Map.Entry<?, ?> other
+                    && Objects.equals(getKey(), other.getKey())
+                    && Objects.equals(getValue(), other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * @return Copy of the properties as stored, i.e. without converting temporal values and binaries
+     */
+    Map<String, Object> getRawProperties() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : super.entrySet()) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return Stored value as provided to callers - temporal values as Calendar, spooled binaries as byte array
+     *         like binaries kept in memory
+     * @param copyBinaries Whether to copy byte arrays, as deduplicated binaries are shared between properties
+     */
+    private static Object toExternal(Object value, boolean copyBinaries) {
+        if (value instanceof MockBinary binary) {
+            return binary.toByteArray();
+        }
+        if (copyBinaries && value instanceof byte[] data) {
+            return data.clone();
+        }
+        return TemporalValue.toExternal(value);
+    }
+
+    private static Object convertForWrite(Object value, MockResourceResolver resolver) {
         if (value instanceof Date) {
-            // Store Date values as Calendar values
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTime((Date) value);
-            value = calendar;
+            // Store Date values in compact form, they are converted to Calendar lazily when read
+            value = TemporalValue.of((Date) value);
         } else if (value instanceof InputStream) {
-            // Store InputStream values as byte array
+            // Store InputStream values as byte array, or spool them to a temporary file if they are large
             try {
-                value = IOUtils.toByteArray((InputStream) value);
+                value = resolver != null
+                        ? resolver.readBinary((InputStream) value)
+                        : MockBinary.read(
+                                (InputStream) value, MockResourceResolverFactoryOptions.DEFAULT_BINARY_SPOOL_THRESHOLD);
             } catch (IOException ex) {
                 throw new RuntimeException("Unable to convert input stream to byte array.");
             }
@@ -125,22 +589,109 @@ public class MockValueMap extends DeepReadModifiableValueMapDecorator implements
         return value;
     }
 
-    private static Map<String, Object> convertForWriteAll(Map<String, Object> map) {
-        Map<String, Object> newMap = new HashMap<String, Object>();
+    private static String intern(String name, MockResourceResolver resolver) {
+        return name != null && resolver != null ? resolver.intern(name) : name;
+    }
+
+    /**
+     * @param internNames Whether to intern the property names - only done for writes, not when wrapping stored or
+     *            copied properties, as those names were already interned when they were written
+     */
+    private static Map<String, Object> convertForWriteAll(
+            Map<String, Object> map, MockResourceResolver resolver, boolean internNames) {
+        Map<String, Object> newMap = resolver != null && resolver.getOptions().isCompactPropertyStorage()
+                ? new CompactPropertyMap(resolver.getPropertyShapeRoot())
+                : new HashMap<String, Object>();
         if (map != null) {
             for (Map.Entry<String, Object> entry : map.entrySet()) {
-                newMap.put(entry.getKey(), convertForWrite(entry.getValue()));
+                String name = internNames ? intern(entry.getKey(), resolver) : entry.getKey();
+                newMap.put(name, convertForWrite(entry.getValue(), resolver));
             }
         }
         return newMap;
     }
 
     /**
-     * Put access to the value map - mark the resource as changed.
+     * Write access to the value map - mark the resource as changed in the writing resolver.
+     * @param writer Resolver the value map is modified through
+     * @return Property changes recorded for the resource, or null if there is no mock resource resolver
+     */
+    private Map<String, Boolean> markResourceAsChanged(MockResourceResolver writer) {
+        if (writer == null) {
+            return null;
+        }
+        return writer.propertiesChanged(resource.getPath(), this);
+    }
+
+    /**
+     * Write access to a property - record the property change. Must be called before the property is modified.
+     * @param writer Resolver the value map is modified through
+     * @param changes Property changes recorded for the resource
+     * @param key Property name
+     * @param adding Whether the property is set, as opposed to removed
+     */
+    private void markPropertyChanged(
+            MockResourceResolver writer, Map<String, Boolean> changes, Object key, boolean adding) {
+        if (changes == null || !(key instanceof String name)) {
+            return;
+        }
+        if (name.indexOf('/') >= 0) {
+            // names containing a slash are read as deep paths, their previous existence is unknown
+            if (adding) {
+                writer.propertyAdded();
+            }
+            return;
+        }
+        boolean existed = super.containsKey(name);
+        if (adding && !existed) {
+            writer.propertyAdded();
+        }
+        changes.putIfAbsent(name, existed);
+    }
+
+    /**
+     * Value map of a resource obtained from another resolver than the one that created the value map. Reads are
+     * delegated, writes are recorded in the resolver of the resource.
      */
-    private void markResourceAsChanged() {
-        if (this.mockResourceResolver != null) {
-            this.mockResourceResolver.addChanged(resource.getPath(), this);
+    private static final class ResolverValueMap extends ValueMapDecorator implements ModifiableValueMap {
+
+        private final MockValueMap map;
+        private final MockResourceResolver resolver;
+
+        ResolverValueMap(MockValueMap map, MockResourceResolver resolver) {
+            super(map);
+            this.map = map;
+            this.resolver = resolver;
+        }
+
+        @Override
+        public <T> T get(String name, Class<T> type) {
+            return map.get(name, type);
+        }
+
+        @Override
+        public <T> T get(String name, T defaultValue) {
+            return map.get(name, defaultValue);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return map.put(resolver, key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ?> values) {
+            map.putAll(resolver, values);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return map.remove(resolver, key);
+        }
+
+        @Override
+        public void clear() {
+            map.clear(resolver);
         }
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Remembers paths for which a resource lookup of a resolver returned no result, so repeated lookups of
+ * missing optional paths are answered without probing the resource store again.
+ * All entries are tied to the version of the resource structure and properties they were recorded for and are
+ * dropped as soon as the version changes. Thread-safe, as a resolver may be shared by several threads, e.g. the
+ * resolver of {@link MockResourceProvider} - the access-ordered map is modified on every read, so all accesses
+ * are guarded by a lock.
+ */
+final class NegativeLookupCache {
+
+    private final Map<String, Boolean> paths;
+    private final Lock lock = new ReentrantLock();
+    private long version;
+    private long hits;
+    private long misses;
+
+    NegativeLookupCache(int maxEntries) {
+        this.paths = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param path Path as passed to the resolver
+     * @param currentVersion Current version of the repository content
+     * @return true if the path is known to not exist
+     */
+    boolean isMissing(@NotNull String path, long currentVersion) {
+        lock.lock();
+        try {
+            if (currentVersion != version) {
+                paths.clear();
+                version = currentVersion;
+                return false;
+            }
+            if (paths.get(path) != null) {
+                hits++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param path Path that was looked up without a result
+     * @param currentVersion Current version of the repository content
+     */
+    void addMissing(@NotNull String path, long currentVersion) {
+        lock.lock();
+        try {
+            if (currentVersion != version) {
+                paths.clear();
+                version = currentVersion;
+            }
+            misses++;
+            paths.put(path, Boolean.TRUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            paths.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return paths.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.time.Duration;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Information about a resource resolver that was not closed yet, as reported by
+ * {@link MockResourceResolverFactory#getOpenResourceResolvers()}.
+ */
+public final class OpenResourceResolver {
+
+    private final ResourceResolver resolver;
+    private final long openedNanos;
+    private final Throwable creationStack;
+
+    OpenResourceResolver(@NotNull ResourceResolver resolver, long openedNanos, @Nullable Throwable creationStack) {
+        this.resolver = resolver;
+        this.openedNanos = openedNanos;
+        this.creationStack = creationStack;
+    }
+
+    /**
+     * @return Resource resolver
+     */
+    public @NotNull ResourceResolver getResourceResolver() {
+        return resolver;
+    }
+
+    /**
+     * @return Time since the resolver was opened
+     */
+    public @NotNull Duration getAge() {
+        return Duration.ofNanos(System.nanoTime() - openedNanos);
+    }
+
+    /**
+     * @return Stack trace of the code that opened the resolver, or null if it was not sampled
+     *         (see {@link MockResourceResolverFactoryOptions#setResolverTrackingStackSampling(int)})
+     */
+    public StackTraceElement @Nullable [] getCreationStackTrace() {
+        return creationStack != null ? creationStack.getStackTrace() : null;
+    }
+
+    Throwable getCreationStack() {
+        return creationStack;
+    }
+
+    long getOpenedNanos() {
+        return openedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "OpenResourceResolver [resolver=" + resolver + ", age=" + getAge() + "]";
+    }
+}
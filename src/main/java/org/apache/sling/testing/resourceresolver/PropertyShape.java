@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Shape ("hidden class") of a {@link CompactPropertyMap}: the ordered property names together with the kind of
+ * slot each value is stored in. Shapes are immutable and shared by all maps with the same property names and
+ * value kinds, so the names and slot tables are stored only once. New shapes are derived by adding a property
+ * to an existing shape; these transitions are cached. All shapes derived from the same root shape form a tree
+ * that is owned by the resource resolver factory, so it is released together with the factory.
+ */
+final class PropertyShape {
+
+    /** Value stored as long in the primitive slots */
+    static final byte LONG = 0;
+    /** Value stored as double bits in the primitive slots */
+    static final byte DOUBLE = 1;
+    /** Value stored as 0/1 in the primitive slots */
+    static final byte BOOLEAN = 2;
+    /** Value stored as reference in the reference slots */
+    static final byte REFERENCE = 3;
+
+    private static final int LINEAR_SEARCH_MAX = 8;
+
+    private final PropertyShape root;
+    private final String[] names;
+    private final byte[] kinds;
+    private final int[] slots;
+    private final int primitiveCount;
+    private final int referenceCount;
+    private final Map<String, Integer> index;
+    private final Map<Transition, PropertyShape> transitions = new ConcurrentHashMap<>();
+
+    private PropertyShape(
+            PropertyShape root, String[] names, byte[] kinds, int[] slots, int primitiveCount, int referenceCount) {
+        this.root = root != null ? root : this;
+        this.names = names;
+        this.kinds = kinds;
+        this.slots = slots;
+        this.primitiveCount = primitiveCount;
+        this.referenceCount = referenceCount;
+        if (names.length > LINEAR_SEARCH_MAX) {
+            // never modified after construction, HashMap is used as property names may be null
+            Map<String, Integer> map = new HashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                map.put(names[i], i);
+            }
+            this.index = map;
+        } else {
+            this.index = null;
+        }
+    }
+
+    /**
+     * @return New empty shape, root of an independent tree of shapes
+     */
+    @NotNull
+    static PropertyShape createRoot() {
+        return new PropertyShape(null, new String[0], new byte[0], new int[0], 0, 0);
+    }
+
+    /**
+     * @return Empty shape this shape was derived from
+     */
+    @NotNull
+    PropertyShape getRoot() {
+        return root;
+    }
+
+    /**
+     * @param value Value
+     * @return Slot kind for storing the given value
+     */
+    static byte kindOf(Object value) {
+        if (value == null) {
+            return REFERENCE;
+        }
+        Class<?> type = value.getClass();
+        if (type == Long.class) {
+            return LONG;
+        } else if (type == Double.class) {
+            return DOUBLE;
+        } else if (type == Boolean.class) {
+            return BOOLEAN;
+        }
+        return REFERENCE;
+    }
+
+    /**
+     * @param name Property name
+     * @return Position of the property in this shape, or -1
+     */
+    int indexOf(Object name) {
+        if (index != null) {
+            Integer result = index.get(name);
+            return result != null ? result : -1;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (Objects.equals(names[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String getName(int position) {
+        return names[position];
+    }
+
+    byte getKind(int position) {
+        return kinds[position];
+    }
+
+    /**
+     * @param position Position of the property
+     * @return Index in the primitive or reference slots, depending on the kind
+     */
+    int getSlot(int position) {
+        return slots[position];
+    }
+
+    int getPrimitiveCount() {
+        return primitiveCount;
+    }
+
+    int getReferenceCount() {
+        return referenceCount;
+    }
+
+    /**
+     * @param name New property name (must not be part of this shape)
+     * @param kind Slot kind
+     * @return Shape with the additional property
+     */
+    @NotNull
+    PropertyShape with(@Nullable String name, byte kind) {
+        return transitions.computeIfAbsent(new Transition(name, kind), transition -> {
+            int length = names.length;
+            String[] newNames = new String[length + 1];
+            byte[] newKinds = new byte[length + 1];
+            int[] newSlots = new int[length + 1];
+            System.arraycopy(names, 0, newNames, 0, length);
+            System.arraycopy(kinds, 0, newKinds, 0, length);
+            System.arraycopy(slots, 0, newSlots, 0, length);
+            newNames[length] = name;
+            newKinds[length] = kind;
+            int newPrimitiveCount = primitiveCount;
+            int newReferenceCount = referenceCount;
+            if (kind == REFERENCE) {
+                newSlots[length] = newReferenceCount++;
+            } else {
+                newSlots[length] = newPrimitiveCount++;
+            }
+            return new PropertyShape(root, newNames, newKinds, newSlots, newPrimitiveCount, newReferenceCount);
+        });
+    }
+
+    private static final class Transition {
+
+        private final String name;
+        private final byte kind;
+
+        Transition(String name, byte kind) {
+            this.name = name;
+            this.kind = kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(name) * 31 + kind;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Transition)) {
+                return false;
+            }
+            Transition other = (Transition) obj;
+            return kind == other.kind && Objects.equals(name, other.name);
+        }
+    }
+}
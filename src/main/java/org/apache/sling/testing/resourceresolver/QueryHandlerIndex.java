@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of find/query handlers by the query languages and query patterns they declare via
+ * {@link MockQueryHandlerScope}. Handlers without scope match all queries.
+ * The handler indexes are precomputed per language and literal query, so a lookup only allocates if a regular
+ * expression pattern matches. Regular expressions are only evaluated for queries starting with their literal prefix.
+ */
+final class QueryHandlerIndex {
+
+    private static final int[] NONE = new int[0];
+
+    /** Index per declared language, including the handlers supporting all languages */
+    private final Map<String, LanguageIndex> languageIndexes = new HashMap<>();
+
+    /** Index of handlers supporting all languages, used for other languages */
+    private final LanguageIndex anyLanguageIndex;
+
+    QueryHandlerIndex(@NotNull Object[] handlers) {
+        Set<String> languages = new HashSet<>();
+        for (Object handler : handlers) {
+            Collection<String> handlerLanguages = getLanguages(handler);
+            if (handlerLanguages != null) {
+                languages.addAll(handlerLanguages);
+            }
+        }
+        anyLanguageIndex = new LanguageIndex(handlers, null);
+        for (String language : languages) {
+            languageIndexes.put(language, new LanguageIndex(handlers, language));
+        }
+    }
+
+    /**
+     * @param query Query
+     * @param language Language
+     * @return Indexes of the handlers that support the given query in registration order.
+     *         The returned array must not be modified.
+     */
+    int @NotNull [] lookup(@NotNull String query, @Nullable String language) {
+        LanguageIndex index = language != null ? languageIndexes.get(language) : null;
+        return (index != null ? index : anyLanguageIndex).lookup(query);
+    }
+
+    private static Collection<String> getLanguages(Object handler) {
+        if (handler instanceof MockQueryHandlerScope scope) {
+            Collection<String> languages = scope.getLanguages();
+            return languages == null || languages.isEmpty() ? null : languages;
+        }
+        return null;
+    }
+
+    private static Collection<MockQueryPattern> getPatterns(Object handler) {
+        if (handler instanceof MockQueryHandlerScope scope) {
+            Collection<MockQueryPattern> patterns = scope.getQueryPatterns();
+            return patterns == null || patterns.isEmpty() ? null : patterns;
+        }
+        return null;
+    }
+
+    private static int[] toArray(Collection<Integer> indexes) {
+        return indexes.isEmpty()
+                ? NONE
+                : indexes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static final class LanguageIndex {
+
+        /** Handlers matching all queries */
+        private final int[] allQueries;
+        /** Handlers matching all queries or the literal query */
+        private final Map<String, int[]> literals = new HashMap<>();
+        /** Regular expression patterns ordered by handler index */
+        private final RegexEntry[] regexEntries;
+
+        /**
+         * @param handlers All handlers
+         * @param language Language, or null to only include handlers supporting all languages
+         */
+        LanguageIndex(Object[] handlers, String language) {
+            List<Integer> all = new ArrayList<>();
+            Map<String, TreeSet<Integer>> literalHandlers = new HashMap<>();
+            List<RegexEntry> regex = new ArrayList<>();
+            for (int i = 0; i < handlers.length; i++) {
+                Collection<String> languages = getLanguages(handlers[i]);
+                if (languages != null && (language == null || !languages.contains(language))) {
+                    continue;
+                }
+                Collection<MockQueryPattern> patterns = getPatterns(handlers[i]);
+                if (patterns == null) {
+                    all.add(i);
+                    continue;
+                }
+                for (MockQueryPattern pattern : patterns) {
+                    if (pattern.isLiteral()) {
+                        literalHandlers
+                                .computeIfAbsent(pattern.getLiteralPrefix(), key -> new TreeSet<>())
+                                .add(i);
+                    } else {
+                        regex.add(new RegexEntry(i, pattern));
+                    }
+                }
+            }
+            this.allQueries = toArray(all);
+            for (Map.Entry<String, TreeSet<Integer>> entry : literalHandlers.entrySet()) {
+                TreeSet<Integer> indexes = entry.getValue();
+                indexes.addAll(all);
+                literals.put(entry.getKey(), toArray(indexes));
+            }
+            this.regexEntries = regex.toArray(new RegexEntry[0]);
+        }
+
+        int[] lookup(String query) {
+            int[] base = literals.getOrDefault(query, allQueries);
+            if (regexEntries.length == 0) {
+                return base;
+            }
+            int[] matches = null;
+            int matchCount = 0;
+            for (RegexEntry entry : regexEntries) {
+                int handlerIndex = entry.handlerIndex;
+                if ((matchCount > 0 && matches[matchCount - 1] == handlerIndex)
+                        || !query.startsWith(entry.prefix)
+                        || Arrays.binarySearch(base, handlerIndex) >= 0
+                        || !entry.pattern.matches(query)) {
+                    continue;
+                }
+                if (matches == null) {
+                    matches = new int[regexEntries.length];
+                }
+                matches[matchCount++] = handlerIndex;
+            }
+            return matchCount == 0 ? base : merge(base, matches, matchCount);
+        }
+
+        /**
+         * Merges two sorted arrays without common elements.
+         */
+        private static int[] merge(int[] first, int[] second, int secondLength) {
+            int[] result = new int[first.length + secondLength];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < first.length && j < secondLength) {
+                result[k++] = first[i] < second[j] ? first[i++] : second[j++];
+            }
+            while (i < first.length) {
+                result[k++] = first[i++];
+            }
+            while (j < secondLength) {
+                result[k++] = second[j++];
+            }
+            return result;
+        }
+    }
+
+    private static final class RegexEntry {
+
+        private final int handlerIndex;
+        private final MockQueryPattern pattern;
+        private final String prefix;
+
+        RegexEntry(int handlerIndex, MockQueryPattern pattern) {
+            this.handlerIndex = handlerIndex;
+            this.pattern = pattern;
+            this.prefix = pattern.getLiteralPrefix();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Caches the "query plan" for find/query handler dispatching: for each combination of query and language
+ * the parsed query and the handler that delivered the result is remembered, so repeated queries
+ * invoke this handler directly instead of probing all handlers registered before it. Queries without a matching
+ * handler are not cached, so a handler that starts delivering a result later is still found.
+ * <p>Plans are keyed by the version of the handler list in addition to query and language, and the cache is
+ * cleared when a newer version is seen - so registering a paged or traversal-based handler never reuses a
+ * plan made without it. A plan is only used if its handler is still registered at the same position.</p>
+ */
+final class QueryPlanCache {
+
+    static final int MAX_ENTRIES = 1000;
+
+    private final Map<Key, Plan> plans = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Plan> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final Lock lock = new ReentrantLock();
+
+    private int handlersVersion;
+
+    /**
+     * Dispatches a query to the first handler that supports the query and returns a non-null result.
+     * @param handlers Handlers
+     * @param cache Plan cache or null if caching is disabled
+     * @param query Query
+     * @param language Language
+     * @param invoker Invokes a handler with the parsed query
+     * @return Result of the first matching handler, or empty iterator
+     */
+    static <H, R> @NotNull Iterator<R> dispatch(
+            @NotNull HandlerList<H> handlers,
+            @Nullable QueryPlanCache cache,
+            @NotNull String query,
+            @Nullable String language,
+            @NotNull BiFunction<H, MockQuery, Iterator<R>> invoker) {
+        HandlerList.Snapshot<H> snapshot = handlers.snapshot();
+        int version = snapshot.getVersion();
+        Plan plan = cache != null ? cache.get(query, language, version) : null;
+        if (plan != null && snapshot.get(plan.handlerIndex) != plan.handler) {
+            plan = null;
+        }
+        MockQuery parsedQuery = plan != null ? plan.query : new MockQuery(query, language);
+        if (plan != null) {
+            Iterator<R> result = invoker.apply(snapshot.get(plan.handlerIndex), parsedQuery);
+            if (result != null) {
+                return result;
+            }
+            // handler does no longer deliver a result - fall back to probing all handlers
+        }
+        for (int index : snapshot.getIndex().lookup(query, language)) {
+            Iterator<R> result = invoker.apply(snapshot.get(index), parsedQuery);
+            if (result != null) {
+                if (cache != null) {
+                    cache.put(parsedQuery, version, index, snapshot.get(index));
+                }
+                return result;
+            }
+        }
+        // results without a matching handler are not cached, handlers may start delivering a result later
+        return Collections.emptyIterator();
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return plans.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Plan get(String query, String language, int version) {
+        lock.lock();
+        try {
+            updateVersion(version);
+            return plans.get(new Key(query, language, version));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(MockQuery query, int version, int handlerIndex, Object handler) {
+        lock.lock();
+        try {
+            updateVersion(version);
+            if (version == handlersVersion) {
+                // plans of dispatches that started before the handler list was modified are not kept
+                plans.put(
+                        new Key(query.getQuery(), query.getLanguage(), version),
+                        new Plan(query, handlerIndex, handler));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateVersion(int version) {
+        if (version > handlersVersion) {
+            plans.clear();
+            handlersVersion = version;
+        }
+    }
+
+    private static final class Plan {
+
+        private final MockQuery query;
+        private final int handlerIndex;
+        private final Object handler;
+
+        Plan(MockQuery query, int handlerIndex, Object handler) {
+            this.query = query;
+            this.handlerIndex = handlerIndex;
+            this.handler = handler;
+        }
+    }
+
+    private static final class Key {
+
+        private final String query;
+        private final String language;
+        private final int handlersVersion;
+        private final int hashCode;
+
+        Key(String query, String language, int handlersVersion) {
+            this.query = query;
+            this.language = language;
+            this.handlersVersion = handlersVersion;
+            this.hashCode = Objects.hash(query, language, handlersVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return handlersVersion == other.handlersVersion
+                    && query.equals(other.query)
+                    && Objects.equals(language, other.language);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Tracks all open resource resolvers of a factory with their opening time and - sampled - the stack trace
+ * of the code that opened them, to report resolvers that are never closed.
+ */
+final class ResolverLifetimeTracker {
+
+    private static final Logging log = Logging.getLogger(ResolverLifetimeTracker.class);
+
+    private final int stackSampling;
+    private final AtomicLong openedCount = new AtomicLong();
+    private final Map<ResourceResolver, OpenResourceResolver> open = new IdentityHashMap<>();
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * @param stackSampling Capture the creation stack trace of every n-th resolver, 0 to disable
+     */
+    ResolverLifetimeTracker(int stackSampling) {
+        this.stackSampling = stackSampling;
+    }
+
+    void opened(@NotNull ResourceResolver resolver) {
+        long count = openedCount.incrementAndGet();
+        Throwable creationStack = null;
+        if (stackSampling > 0 && count % stackSampling == 0) {
+            creationStack = new Throwable("Resource resolver opened here");
+        }
+        OpenResourceResolver item = new OpenResourceResolver(resolver, System.nanoTime(), creationStack);
+        lock.lock();
+        try {
+            open.put(resolver, item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void closed(@NotNull ResourceResolver resolver) {
+        lock.lock();
+        try {
+            open.remove(resolver);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Open resolvers, oldest first
+     */
+    @NotNull
+    List<OpenResourceResolver> getOpen() {
+        List<OpenResourceResolver> result;
+        lock.lock();
+        try {
+            result = new ArrayList<>(open.values());
+        } finally {
+            lock.unlock();
+        }
+        result.sort(Comparator.comparingLong(OpenResourceResolver::getOpenedNanos));
+        return result;
+    }
+
+    int getOpenCount() {
+        lock.lock();
+        try {
+            return open.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs a warning for each resolver that is still open.
+     * @param failOnLeak Throw an exception if resolvers are still open
+     */
+    void checkLeaks(boolean failOnLeak) {
+        List<OpenResourceResolver> leaked = getOpen();
+        if (leaked.isEmpty()) {
+            return;
+        }
+        for (OpenResourceResolver item : leaked) {
+            log.warn("Resource resolver was not closed (age: {}).", item.getAge(), item.getCreationStack());
+        }
+        if (failOnLeak) {
+            throw new IllegalStateException(leaked.size() + " resource resolver(s) were not closed.");
+        }
+    }
+}
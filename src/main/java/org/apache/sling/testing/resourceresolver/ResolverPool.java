@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Pool of idle service/administrative resource resolvers.
+ * Resolvers are reset when they are released, and handed out again in LIFO order.
+ */
+final class ResolverPool {
+
+    private final int maxIdle;
+    private final ArrayDeque<MockResourceResolver> idle = new ArrayDeque<>();
+    private final Lock lock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ResolverPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return Idle resolver, or null if the pool is empty
+     */
+    @Nullable
+    MockResourceResolver acquire() {
+        MockResourceResolver resolver;
+        lock.lock();
+        try {
+            resolver = idle.poll();
+        } finally {
+            lock.unlock();
+        }
+        if (resolver != null) {
+            resolver.reopen();
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return resolver;
+    }
+
+    /**
+     * Resets the closed resolver and puts it back to the pool, unless the pool is full.
+     * @param resolver Closed resolver
+     */
+    void release(@NotNull MockResourceResolver resolver) {
+        if (!resolver.recycle()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (idle.size() < maxIdle) {
+                idle.push(resolver);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+}
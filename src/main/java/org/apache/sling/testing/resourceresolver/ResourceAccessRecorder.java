@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.sling.api.resource.ResourceUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Records the repository accesses of a {@link MockResourceResolver} together with their call site,
+ * and detects inefficient access patterns:
+ * <ul>
+ * <li>Resources that are looked up or listed repeatedly</li>
+ * <li>N+1 lookups: children of a resource are looked up one by one after they were already listed,
+ * e.g. calling <code>getChild</code> in a loop over <code>listChildren</code></li>
+ * <li>Repeated <code>isResourceType</code> walks up the resource super type hierarchy for the same resource
+ * and type</li>
+ * </ul>
+ * <p>Usage in a test:</p>
+ * <pre>
+ * ResourceAccessRecorder recorder = new ResourceAccessRecorder();
+ * ((MockResourceResolver) resolver).setAccessRecorder(recorder);
+ * // code under test
+ * assertEquals(Collections.emptyList(), recorder.getFindings());
+ * </pre>
+ * <p>Like the resource resolver, the recorder is not thread-safe.</p>
+ */
+public final class ResourceAccessRecorder {
+
+    /**
+     * Type of repository access.
+     */
+    public enum AccessType {
+        /** Resource lookup via <code>getResource</code>, <code>getChild</code> or <code>getParent</code> */
+        GET_RESOURCE,
+        /** Listing children of a resource */
+        LIST_CHILDREN,
+        /** Checking the resource type including the resource super type hierarchy */
+        IS_RESOURCE_TYPE
+    }
+
+    /**
+     * A single repository access.
+     */
+    public static final class Access {
+
+        private final AccessType type;
+        private final String path;
+        private final String detail;
+        private final String callSite;
+
+        Access(AccessType type, String path, String detail, String callSite) {
+            this.type = type;
+            this.path = path;
+            this.detail = detail;
+            this.callSite = callSite;
+        }
+
+        public @NotNull AccessType getType() {
+            return type;
+        }
+
+        public @NotNull String getPath() {
+            return path;
+        }
+
+        /**
+         * @return Resource type for {@link AccessType#IS_RESOURCE_TYPE}, null otherwise
+         */
+        public @Nullable String getDetail() {
+            return detail;
+        }
+
+        /**
+         * @return First stack frame outside the JDK, the Sling API and the resource resolver mock, or null if not known
+         */
+        public @Nullable String getCallSite() {
+            return callSite;
+        }
+
+        String getKey() {
+            return detail != null ? path + " [" + detail + "]" : path;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + getKey() + (callSite != null ? " at " + callSite : "");
+        }
+    }
+
+    private static final CodeSource MOCK_CODE_SOURCE = codeSource(ResourceAccessRecorder.class);
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private final int threshold;
+    private final List<Access> accesses = new ArrayList<>();
+    private final Set<String> listedParents = new HashSet<>();
+    private final Map<String, Integer> childLookupsAfterListing = new LinkedHashMap<>();
+
+    /**
+     * Reports accesses that are repeated at least twice.
+     */
+    public ResourceAccessRecorder() {
+        this(2);
+    }
+
+    /**
+     * @param threshold Minimum number of repeated accesses that are reported as finding
+     */
+    public ResourceAccessRecorder(int threshold) {
+        this.threshold = threshold;
+    }
+
+    void getResource(@NotNull String path) {
+        String callSite = callSite();
+        accesses.add(new Access(AccessType.GET_RESOURCE, path, null, callSite));
+        String parentPath = ResourceUtil.getParent(path);
+        if (parentPath != null && listedParents.contains(parentPath)) {
+            childLookupsAfterListing.merge(parentPath + (callSite != null ? " at " + callSite : ""), 1, Integer::sum);
+        }
+    }
+
+    void listChildren(@NotNull String parentPath) {
+        accesses.add(new Access(AccessType.LIST_CHILDREN, parentPath, null, callSite()));
+        listedParents.add(parentPath);
+    }
+
+    void isResourceType(@NotNull String path, @NotNull String resourceType) {
+        accesses.add(new Access(AccessType.IS_RESOURCE_TYPE, path, resourceType, callSite()));
+    }
+
+    /**
+     * @return All recorded accesses in chronological order
+     */
+    public @NotNull List<Access> getAccesses() {
+        return Collections.unmodifiableList(accesses);
+    }
+
+    /**
+     * @param type Access type
+     * @return Number of recorded accesses of the given type
+     */
+    public int getAccessCount(@NotNull AccessType type) {
+        int count = 0;
+        for (Access access : accesses) {
+            if (access.getType() == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param type Access type
+     * @return Paths (including the resource type for {@link AccessType#IS_RESOURCE_TYPE}) that were accessed
+     *         at least threshold times, with the number of accesses
+     */
+    public @NotNull Map<String, Integer> getRepeatedAccesses(@NotNull AccessType type) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Access access : accesses) {
+            if (access.getType() == type) {
+                counts.merge(access.getKey(), 1, Integer::sum);
+            }
+        }
+        counts.values().removeIf(count -> count < threshold);
+        return counts;
+    }
+
+    /**
+     * @return Parent paths and call sites of children that were looked up one by one at least threshold times
+     *         after the parent was already listed, with the number of lookups
+     */
+    public @NotNull Map<String, Integer> getNPlusOneLookups() {
+        Map<String, Integer> result = new LinkedHashMap<>(childLookupsAfterListing);
+        result.values().removeIf(count -> count < threshold);
+        return result;
+    }
+
+    /**
+     * @return Human-readable description of all detected inefficient access patterns - empty if none were found
+     */
+    public @NotNull List<String> getFindings() {
+        List<String> findings = new ArrayList<>();
+        getRepeatedAccesses(AccessType.GET_RESOURCE)
+                .forEach((path, count) -> findings.add("Resource looked up " + count + " times: " + path));
+        getRepeatedAccesses(AccessType.LIST_CHILDREN)
+                .forEach((path, count) -> findings.add("Children listed " + count + " times: " + path));
+        getRepeatedAccesses(AccessType.IS_RESOURCE_TYPE)
+                .forEach((path, count) -> findings.add("Resource type checked " + count + " times: " + path));
+        getNPlusOneLookups()
+                .forEach((parent, count) ->
+                        findings.add("N+1 lookup: " + count + " children looked up after listing " + parent));
+        return findings;
+    }
+
+    /**
+     * Removes all recorded accesses.
+     */
+    public void reset() {
+        accesses.clear();
+        listedParents.clear();
+        childLookupsAfterListing.clear();
+    }
+
+    private static String callSite() {
+        return STACK_WALKER.walk(frames -> frames.filter(frame -> !isInternal(frame.getDeclaringClass()))
+                .findFirst()
+                .map(StackWalker.StackFrame::toStackTraceElement)
+                .map(StackTraceElement::toString)
+                .orElse(null));
+    }
+
+    private static boolean isInternal(Class<?> clazz) {
+        final String name = clazz.getName();
+        // skips e.g. stream pipelines invoking a method reference to the resolver
+        return name.startsWith("java.")
+                || name.startsWith("jdk.")
+                || name.startsWith("sun.")
+                || name.startsWith("org.apache.sling.api.")
+                || (MOCK_CODE_SOURCE != null && Objects.equals(MOCK_CODE_SOURCE, codeSource(clazz)));
+    }
+
+    private static CodeSource codeSource(Class<?> clazz) {
+        return clazz.getProtectionDomain() != null ? clazz.getProtectionDomain().getCodeSource() : null;
+    }
+}
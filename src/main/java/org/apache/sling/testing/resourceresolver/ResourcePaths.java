@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import org.apache.sling.api.resource.ResourceUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Helper methods for resource paths.
+ */
+final class ResourcePaths {
+
+    private ResourcePaths() {
+        // static methods only
+    }
+
+    /**
+     * Normalizes the given path like {@link ResourceUtil#normalize(String)}, but returns canonical paths
+     * unchanged without scanning them twice or allocating a new string.
+     * @param path Path
+     * @return Normalized path, or null if the path cannot be normalized (e.g. points above the root)
+     */
+    static @Nullable String normalize(@NotNull String path) {
+        return isCanonical(path) ? path : ResourceUtil.normalize(path);
+    }
+
+    /**
+     * @param path Path
+     * @return true if the path is not empty, contains no segments consisting of dots only (like <code>.</code>
+     *         or <code>..</code>) and no double slashes, and has no trailing slash (except for the root path)
+     */
+    static boolean isCanonical(@NotNull String path) {
+        final int length = path.length();
+        if (length == 0) {
+            return false;
+        }
+        if (length > 1 && path.charAt(length - 1) == '/') {
+            return false;
+        }
+        int segmentStart = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || path.charAt(i) == '/') {
+                final int segmentLength = i - segmentStart;
+                if (segmentLength == 0 && i > 0 && i < length) {
+                    // double slash
+                    return false;
+                }
+                if (segmentLength > 0 && isDotsOnly(path, segmentStart, i)) {
+                    // ".", ".." or invalid segment
+                    return false;
+                }
+                segmentStart = i + 1;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDotsOnly(String path, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.apache.sling.api.resource.Resource;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Evaluates a predicate against all resources of a subtree snapshot.
+ * Large subtrees are evaluated in parallel using fork/join, splitting the snapshot into ranges and concatenating
+ * the partial results, so the result order is the same as for sequential evaluation.
+ * Subtrees of a {@link DiskResourceStore} are collected with a range scan per child of the root, in parallel
+ * as well - splitting at child boundaries.
+ */
+final class ResourceTraversal {
+
+    private ResourceTraversal() {
+        // static methods only
+    }
+
+    /**
+     * @param nodes Subtree snapshot (path to properties) in repository order
+     * @param resourceFactory Creates a resource for a snapshot entry
+     * @param predicate Predicate
+     * @param options Factory options defining parallelism and leafSize
+     * @return Matching resources in repository order
+     */
+    static @NotNull List<Resource> evaluate(
+            @NotNull List<Map.Entry<String, Map<String, Object>>> nodes,
+            @NotNull Function<Map.Entry<String, Map<String, Object>>, Resource> resourceFactory,
+            @NotNull Predicate<Resource> predicate,
+            @NotNull MockResourceResolverFactoryOptions options) {
+        int threshold = Math.max(1, options.getParallelTraversalThreshold());
+        if (options.getTraversalParallelism() <= 1 || nodes.size() < threshold) {
+            return evaluateRange(nodes, 0, nodes.size(), resourceFactory, predicate);
+        }
+        ForkJoinPool pool = options.getTraversalPool();
+        int leafSize = Math.max(1, nodes.size() / (pool.getParallelism() * 4));
+        return pool.invoke(new TraversalTask(nodes, 0, nodes.size(), leafSize, resourceFactory, predicate));
+    }
+
+    /**
+     * Collects a subtree of a disk store, must be called while holding the read lock of the resource store.
+     * The forked scans only read the store while the calling thread waits for them.
+     * @param store Disk store
+     * @param rootPath Root path
+     * @param options Factory options defining parallelism
+     * @return Root resource and its descendants, each child followed by its subtree. The properties are decoded
+     *         lazily.
+     */
+    static @NotNull List<Map.Entry<String, Map<String, Object>>> scanSubtree(
+            @NotNull DiskResourceStore store,
+            @NotNull String rootPath,
+            @NotNull MockResourceResolverFactoryOptions options) {
+        List<Map.Entry<String, Map<String, Object>>> result = new ArrayList<>();
+        Map.Entry<String, Map<String, Object>> root = store.getEntry(rootPath);
+        if (root != null) {
+            result.add(root);
+        }
+        List<Map.Entry<String, Map<String, Object>>> children = new ArrayList<>();
+        store.scanChildren(rootPath).forEach(children::add);
+        if (options.getTraversalParallelism() <= 1 || children.size() < 2) {
+            result.addAll(scanChildSubtrees(store, children, 0, children.size()));
+        } else {
+            result.addAll(options.getTraversalPool().invoke(new ScanTask(store, children, 0, children.size())));
+        }
+        return result;
+    }
+
+    private static List<Map.Entry<String, Map<String, Object>>> scanChildSubtrees(
+            DiskResourceStore store, List<Map.Entry<String, Map<String, Object>>> children, int from, int to) {
+        List<Map.Entry<String, Map<String, Object>>> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Map.Entry<String, Map<String, Object>> child = children.get(i);
+            result.add(child);
+            store.scan(child.getKey() + "/").forEach(result::add);
+        }
+        return result;
+    }
+
+    private static List<Resource> evaluateRange(
+            List<Map.Entry<String, Map<String, Object>>> nodes,
+            int from,
+            int to,
+            Function<Map.Entry<String, Map<String, Object>>, Resource> resourceFactory,
+            Predicate<Resource> predicate) {
+        List<Resource> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Resource resource = resourceFactory.apply(nodes.get(i));
+            if (predicate.test(resource)) {
+                result.add(resource);
+            }
+        }
+        return result;
+    }
+
+    private static final class TraversalTask extends RecursiveTask<List<Resource>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Map.Entry<String, Map<String, Object>>> nodes;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final transient Function<Map.Entry<String, Map<String, Object>>, Resource> resourceFactory;
+        private final transient Predicate<Resource> predicate;
+
+        TraversalTask(
+                List<Map.Entry<String, Map<String, Object>>> nodes,
+                int from,
+                int to,
+                int leafSize,
+                Function<Map.Entry<String, Map<String, Object>>, Resource> resourceFactory,
+                Predicate<Resource> predicate) {
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.resourceFactory = resourceFactory;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected List<Resource> compute() {
+            if (to - from <= leafSize) {
+                return evaluateRange(nodes, from, to, resourceFactory, predicate);
+            }
+            int middle = (from + to) >>> 1;
+            TraversalTask left = new TraversalTask(nodes, from, middle, leafSize, resourceFactory, predicate);
+            TraversalTask right = new TraversalTask(nodes, middle, to, leafSize, resourceFactory, predicate);
+            left.fork();
+            List<Resource> result = right.compute();
+            List<Resource> merged = left.join();
+            merged.addAll(result);
+            return merged;
+        }
+    }
+
+    private static final class ScanTask extends RecursiveTask<List<Map.Entry<String, Map<String, Object>>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient DiskResourceStore store;
+        private final transient List<Map.Entry<String, Map<String, Object>>> children;
+        private final int from;
+        private final int to;
+
+        ScanTask(DiskResourceStore store, List<Map.Entry<String, Map<String, Object>>> children, int from, int to) {
+            this.store = store;
+            this.children = children;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Map.Entry<String, Map<String, Object>>> compute() {
+            if (to - from <= 1) {
+                return scanChildSubtrees(store, children, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(store, children, from, middle);
+            ScanTask right = new ScanTask(store, children, middle, to);
+            left.fork();
+            List<Map.Entry<String, Map<String, Object>>> result = right.compute();
+            List<Map.Entry<String, Map<String, Object>>> merged = left.join();
+            merged.addAll(result);
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable file of key/value entries sorted by key, as written by {@link DiskResourceStore} when flushing
+ * the memtable or merging tables.
+ * <p>The file consists of data blocks of about {@link #BLOCK_SIZE} bytes, followed by a block index with the first
+ * key, offset and length of each block, and a footer pointing to the index. The block index is kept in memory,
+ * so a lookup reads at most one data block, which is served from the {@link BlockCache} if possible.
+ * Deleted keys are stored as tombstones with an empty value.</p>
+ */
+final class SortedTable implements Closeable {
+
+    static final int BLOCK_SIZE = 4096;
+
+    /** Value of deleted keys */
+    static final byte[] TOMBSTONE = new byte[0];
+
+    private static final int MAGIC = 0x534c5354;
+    private static final int FOOTER_SIZE = 12;
+
+    private final long id;
+    private final Path file;
+    private final FileChannel channel;
+    private final BlockCache cache;
+    private final String[] firstKeys;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private SortedTable(long id, Path file, BlockCache cache) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.cache = cache;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer footer = read(channel.size() - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Invalid table file: " + file);
+            }
+            ByteBuffer index = read(indexOffset, (int) (channel.size() - FOOTER_SIZE - indexOffset));
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(index.array(), index.position(), index.remaining()));
+            int blockCount = in.readInt();
+            this.firstKeys = new String[blockCount];
+            this.offsets = new long[blockCount];
+            this.lengths = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                firstKeys[i] = ValueCodec.readString(in);
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes a new table file.
+     * @param id Table ID, unique within the store
+     * @param file File
+     * @param entries Entries in ascending key order - tombstones are written as well
+     * @param cache Block cache
+     * @return Table
+     * @throws IOException I/O exception
+     */
+    static @NotNull SortedTable write(
+            long id, @NotNull Path file, @NotNull EntryCursor entries, @NotNull BlockCache cache) throws IOException {
+        List<String> firstKeys = new ArrayList<>();
+        List<long[]> positions = new ArrayList<>();
+        try (FileChannel out = FileChannel.open(
+                        file,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                OutputStream fileOut = new BufferedOutputStream(Channels.newOutputStream(out))) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+            DataOutputStream blockOut = new DataOutputStream(block);
+            long offset = 0;
+            while (entries.isValid()) {
+                if (block.size() == 0) {
+                    firstKeys.add(entries.getKey());
+                }
+                ValueCodec.writeString(blockOut, entries.getKey());
+                byte[] value = entries.getValue();
+                blockOut.writeInt(value.length);
+                blockOut.write(value);
+                if (block.size() >= BLOCK_SIZE) {
+                    block.writeTo(fileOut);
+                    positions.add(new long[] {offset, block.size()});
+                    offset += block.size();
+                    block.reset();
+                }
+                entries.next();
+            }
+            if (block.size() > 0) {
+                block.writeTo(fileOut);
+                positions.add(new long[] {offset, block.size()});
+                offset += block.size();
+            }
+            DataOutputStream indexOut = new DataOutputStream(fileOut);
+            indexOut.writeInt(firstKeys.size());
+            for (int i = 0; i < firstKeys.size(); i++) {
+                ValueCodec.writeString(indexOut, firstKeys.get(i));
+                indexOut.writeLong(positions.get(i)[0]);
+                indexOut.writeInt((int) positions.get(i)[1]);
+            }
+            indexOut.writeLong(offset);
+            indexOut.writeInt(MAGIC);
+            indexOut.flush();
+        }
+        return new SortedTable(id, file, cache);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    /**
+     * @return Size of the table file in bytes
+     */
+    long getFileSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * @param key Key
+     * @return Value, {@link #TOMBSTONE} if the key was deleted, or null if the key is not contained in this table
+     * @throws IOException I/O exception
+     */
+    byte @Nullable [] get(@NotNull String key) throws IOException {
+        int blockIndex = findBlock(key);
+        if (blockIndex < 0) {
+            return null;
+        }
+        Block block = getBlock(blockIndex);
+        int index = Arrays.binarySearch(block.keys, key);
+        return index >= 0 ? block.values[index] : null;
+    }
+
+    /**
+     * @return Cursor positioned at the first entry
+     */
+    @NotNull
+    EntryCursor cursor() throws IOException {
+        return new TableCursor();
+    }
+
+    /**
+     * Closes and deletes the table file.
+     */
+    void delete() throws IOException {
+        close();
+        cache.invalidate(id);
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return Index of the last block with a first key less than or equal to the given key, or -1
+     */
+    private int findBlock(String key) {
+        int index = Arrays.binarySearch(firstKeys, key);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private Block getBlock(int blockIndex) throws IOException {
+        Block block = cache.get(id, blockIndex);
+        if (block == null) {
+            block = Block.parse(read(offsets[blockIndex], lengths[blockIndex]));
+            cache.put(id, blockIndex, block);
+        }
+        return block;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of table file: " + file);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Parsed data block.
+     */
+    static final class Block {
+
+        private final String[] keys;
+        private final byte[][] values;
+        private final int size;
+
+        private Block(String[] keys, byte[][] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        static Block parse(ByteBuffer data) throws IOException {
+            int size = data.remaining();
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(data.array(), data.position(), data.remaining()));
+            List<String> keys = new ArrayList<>();
+            List<byte[]> values = new ArrayList<>();
+            while (in.available() > 0) {
+                keys.add(ValueCodec.readString(in));
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                values.add(value.length == 0 ? TOMBSTONE : value);
+            }
+            return new Block(keys.toArray(new String[0]), values.toArray(new byte[0][]), size);
+        }
+
+        /**
+         * @return Size of the block data in bytes, used as cache weight
+         */
+        int getSize() {
+            return size;
+        }
+    }
+
+    private final class TableCursor implements EntryCursor {
+
+        private int blockIndex;
+        private Block block;
+        private int index;
+
+        TableCursor() throws IOException {
+            load(0, 0);
+        }
+
+        @Override
+        public boolean isValid() {
+            return block != null;
+        }
+
+        @Override
+        public @NotNull String getKey() {
+            return block.keys[index];
+        }
+
+        @Override
+        public byte @NotNull [] getValue() {
+            return block.values[index];
+        }
+
+        @Override
+        public void next() throws IOException {
+            load(blockIndex, index + 1);
+        }
+
+        @Override
+        public void seek(@NotNull String key) throws IOException {
+            int candidate = Math.max(findBlock(key), 0);
+            if (candidate >= firstKeys.length) {
+                block = null;
+                return;
+            }
+            Block candidateBlock = getBlock(candidate);
+            int position = Arrays.binarySearch(candidateBlock.keys, key);
+            load(candidate, position >= 0 ? position : -position - 1);
+        }
+
+        private void load(int newBlockIndex, int newIndex) throws IOException {
+            blockIndex = newBlockIndex;
+            index = newIndex;
+            block = blockIndex < firstKeys.length ? getBlock(blockIndex) : null;
+            while (block != null && index >= block.keys.length) {
+                blockIndex++;
+                index = 0;
+                block = blockIndex < firstKeys.length ? getBlock(blockIndex) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Interning table for property names of a repository, so equal names created in different places (e.g. when
+ * loading content from JSON) are stored only once, and equality checks between interned names succeed on the
+ * identity check. Names are referenced weakly, so names no longer used by any resource are released.
+ * Names are interned when properties are written, restored from the write-ahead log or decoded by the disk
+ * store - reading resources kept on the heap does not access the table.
+ */
+final class StringInterner {
+
+    private final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * @param value String
+     * @return Canonical instance of the given string
+     */
+    @NotNull
+    String intern(@NotNull String value) {
+        lock.lock();
+        try {
+            WeakReference<String> ref = strings.get(value);
+            String existing = ref != null ? ref.get() : null;
+            if (existing != null) {
+                return existing;
+            }
+            strings.put(value, new WeakReference<>(value));
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return strings.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
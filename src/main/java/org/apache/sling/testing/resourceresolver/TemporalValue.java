@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compact immutable representation of a date property value: epoch milliseconds plus time zone.
+ * Storing dates this way avoids creating a {@link Calendar} for each written value - the Calendar, Date or
+ * java.time representation is created lazily when the property is read.
+ */
+final class TemporalValue {
+
+    /**
+     * Calendar prototypes per locale and zone id, holding the time zone and the locale dependent calendar settings.
+     * Looking these up is much more expensive than cloning the prototype, which also clones the time zone, as
+     * calendars hand out their time zone for modification. The prototypes themselves are never modified. They are
+     * keyed by the default locale at the time of the conversion, as {@link Calendar#getInstance(TimeZone)} is.
+     */
+    private static final Map<Locale, Map<ZoneId, Calendar>> CALENDARS = new ConcurrentHashMap<>();
+
+    private final long epochMillis;
+    private final ZoneId zone;
+
+    private TemporalValue(long epochMillis, ZoneId zone) {
+        this.epochMillis = epochMillis;
+        this.zone = zone;
+    }
+
+    /**
+     * @param date Date
+     * @return Temporal value in the default time zone
+     */
+    static @NotNull TemporalValue of(@NotNull Date date) {
+        return new TemporalValue(date.getTime(), ZoneId.systemDefault());
+    }
+
+    /**
+     * @param epochMillis Epoch milliseconds
+     * @param zone Time zone
+     * @return Temporal value
+     */
+    static @NotNull TemporalValue of(long epochMillis, @NotNull ZoneId zone) {
+        return new TemporalValue(epochMillis, zone);
+    }
+
+    long getEpochMillis() {
+        return epochMillis;
+    }
+
+    @NotNull
+    ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Converts a stored value to the value visible to the outside, i.e. temporal values to Calendar.
+     * @param value Stored value
+     * @return Visible value
+     */
+    static @Nullable Object toExternal(@Nullable Object value) {
+        if (value instanceof TemporalValue temporal) {
+            return temporal.toCalendar();
+        }
+        return value;
+    }
+
+    /**
+     * @param type Target type
+     * @return Converted value, or null if the type is not a date type - use {@link #toCalendar()} to
+     *         convert to other types
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    <T> T convert(@NotNull Class<T> type) {
+        if (type == Calendar.class) {
+            return (T) toCalendar();
+        } else if (type == Date.class) {
+            return (T) new Date(epochMillis);
+        } else if (type == Instant.class) {
+            return (T) Instant.ofEpochMilli(epochMillis);
+        } else if (type == ZonedDateTime.class) {
+            return (T) Instant.ofEpochMilli(epochMillis).atZone(zone);
+        } else if (type == OffsetDateTime.class) {
+            return (T) Instant.ofEpochMilli(epochMillis).atZone(zone).toOffsetDateTime();
+        }
+        return null;
+    }
+
+    /**
+     * @return New calendar instance
+     */
+    @NotNull
+    Calendar toCalendar() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        Calendar calendar = (Calendar) CALENDARS
+                .computeIfAbsent(locale, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(zone, id -> Calendar.getInstance(TimeZone.getTimeZone(id), locale))
+                .clone();
+        calendar.setTimeInMillis(epochMillis);
+        return calendar;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TemporalValue other && epochMillis == other.epochMillis && zone.equals(other.zone);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(epochMillis) * 31 + zone.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toCalendar().toString();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Tracks the resource resolvers opened by the current thread for {@link MockResourceResolverFactory#getThreadResourceResolver()}.
+ * <p>Resolvers are held via weak references in an unsynchronized per-thread deque (it is only accessed by the owning thread).
+ * The thread local value is removed as soon as the last resolver of a thread is closed, so threads (including virtual
+ * threads) do not keep an empty deque. Resolvers that are garbage collected without being closed are detected via
+ * a reference queue and reported as leaked. The references are additionally kept in a concurrent set until they are
+ * cleared or enqueued, so leaks are also detected for threads that have already exited - the reference queue is
+ * drained by any thread opening a resolver, and on factory shutdown.</p>
+ */
+final class ThreadResolverTracker {
+
+    private static final Logging log = Logging.getLogger(ThreadResolverTracker.class);
+
+    private final ThreadLocal<ArrayDeque<ResolverReference>> resolvers = new ThreadLocal<>();
+
+    private final ReferenceQueue<ResourceResolver> collectedResolvers = new ReferenceQueue<>();
+
+    // keeps references reachable after the owning thread has exited, otherwise they would never be enqueued
+    private final Set<ResolverReference> openResolvers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong leakedCount = new AtomicLong();
+
+    /**
+     * Register a resolver opened by the current thread.
+     * @param resolver Resolver
+     */
+    void opened(@NotNull ResourceResolver resolver) {
+        expungeLeaked();
+        ArrayDeque<ResolverReference> deque = resolvers.get();
+        if (deque == null) {
+            deque = new ArrayDeque<>();
+            resolvers.set(deque);
+        }
+        ResolverReference ref = new ResolverReference(resolver, collectedResolvers);
+        openResolvers.add(ref);
+        deque.push(ref);
+    }
+
+    /**
+     * Unregister a closed resolver. If it was opened by another thread, its reference is cleared - so it is
+     * skipped when the owning thread dequeues it, and never reported as leaked.
+     * @param resolver Resolver
+     */
+    void closed(@NotNull ResourceResolver resolver) {
+        if (!closedByOwner(resolver)) {
+            for (ResolverReference ref : openResolvers) {
+                if (ref.get() == resolver) {
+                    ref.clear();
+                    openResolvers.remove(ref);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the resolver was found in the deque of the current thread
+     */
+    private boolean closedByOwner(ResourceResolver resolver) {
+        ArrayDeque<ResolverReference> deque = resolvers.get();
+        if (deque == null) {
+            return false;
+        }
+        boolean found = false;
+        Iterator<ResolverReference> it = deque.iterator();
+        while (it.hasNext()) {
+            ResolverReference ref = it.next();
+            ResourceResolver item = ref.get();
+            if (item == resolver) {
+                ref.clear();
+                openResolvers.remove(ref);
+                it.remove();
+                found = true;
+                break;
+            } else if (item == null) {
+                it.remove();
+            }
+        }
+        if (deque.isEmpty()) {
+            resolvers.remove();
+        }
+        return found;
+    }
+
+    /**
+     * @return Most recently opened resolver of the current thread that was not closed yet
+     */
+    @Nullable
+    ResourceResolver current() {
+        ArrayDeque<ResolverReference> deque = resolvers.get();
+        if (deque == null) {
+            return null;
+        }
+        while (!deque.isEmpty()) {
+            ResourceResolver resolver = deque.peek().get();
+            if (resolver != null) {
+                return resolver;
+            }
+            deque.pop();
+        }
+        resolvers.remove();
+        return null;
+    }
+
+    /**
+     * @return Number of resolvers that were garbage collected without being closed.
+     */
+    long getLeakedCount() {
+        expungeLeaked();
+        return leakedCount.get();
+    }
+
+    /**
+     * Reports resolvers that were garbage collected without being closed, called on factory shutdown.
+     */
+    void shutdown() {
+        expungeLeaked();
+    }
+
+    private void expungeLeaked() {
+        int count = 0;
+        Reference<? extends ResourceResolver> ref = collectedResolvers.poll();
+        while (ref != null) {
+            openResolvers.remove(ref);
+            count++;
+            ref = collectedResolvers.poll();
+        }
+        if (count > 0) {
+            long total = leakedCount.addAndGet(count);
+            log.warn(
+                    "{} resource resolver(s) were garbage collected without being closed ({} in total).", count, total);
+        }
+    }
+
+    private static final class ResolverReference extends WeakReference<ResourceResolver> {
+        ResolverReference(ResourceResolver referent, ReferenceQueue<ResourceResolver> queue) {
+            super(referent, queue);
+        }
+    }
+}
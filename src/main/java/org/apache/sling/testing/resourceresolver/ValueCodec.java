@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compact binary encoding of resource properties, used by the {@link WriteAheadLog} and the {@link DiskResourceStore}.
+ * Property values are written with a one-byte type tag. Common property types are encoded natively, other
+ * serializable values via Java serialization - restricted to classes of the <code>java.lang</code>,
+ * <code>java.math</code>, <code>java.time</code> and <code>java.util</code> packages, so reading the log or store
+ * cannot instantiate arbitrary classes.
+ */
+final class ValueCodec {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte BIG_DECIMAL = 6;
+    private static final byte CALENDAR = 7;
+    private static final byte TEMPORAL = 8;
+    private static final byte BYTES = 9;
+    private static final byte BINARY = 10;
+    private static final byte ARRAY = 11;
+    private static final byte SERIALIZED = 12;
+    private static final byte BINARY_REFERENCE = 13;
+
+    private static final Map<String, Class<?>> ARRAY_COMPONENT_TYPES = Map.of(
+            "long",
+            long.class,
+            "int",
+            int.class,
+            "double",
+            double.class,
+            "boolean",
+            boolean.class,
+            String.class.getName(),
+            String.class,
+            Long.class.getName(),
+            Long.class,
+            Integer.class.getName(),
+            Integer.class,
+            Double.class.getName(),
+            Double.class,
+            Boolean.class.getName(),
+            Boolean.class,
+            BigDecimal.class.getName(),
+            BigDecimal.class);
+
+    /**
+     * Packages of classes that may be written and read with Java serialization.
+     */
+    private static final String[] SERIALIZABLE_PACKAGES = {"java.lang.", "java.math.", "java.time.", "java.util."};
+
+    private static final int MAX_SERIALIZATION_DEPTH = 64;
+
+    private static final ObjectInputFilter SERIALIZATION_FILTER = info -> {
+        if (info.depth() > MAX_SERIALIZATION_DEPTH) {
+            return ObjectInputFilter.Status.REJECTED;
+        }
+        Class<?> serialClass = info.serialClass();
+        if (serialClass == null) {
+            return ObjectInputFilter.Status.UNDECIDED;
+        }
+        return isSerializable(serialClass) ? ObjectInputFilter.Status.ALLOWED : ObjectInputFilter.Status.REJECTED;
+    };
+
+    private ValueCodec() {
+        // static methods only
+    }
+
+    /**
+     * @param out Output
+     * @param properties Properties
+     * @throws IOException If a property name is null or a property value cannot be encoded
+     */
+    static void writeProperties(@NotNull DataOutput out, @NotNull Map<String, Object> properties) throws IOException {
+        writeProperties(out, properties, null);
+    }
+
+    /**
+     * @param out Output
+     * @param properties Properties
+     * @param binaries Table to reference spooled binaries in instead of writing their content, or null
+     * @throws IOException If a property name is null or a property value cannot be encoded
+     */
+    static void writeProperties(
+            @NotNull DataOutput out, @NotNull Map<String, Object> properties, @Nullable BinaryReferences binaries)
+            throws IOException {
+        out.writeInt(properties.size());
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new NotSerializableException("Property name must not be null.");
+            }
+            out.writeUTF(entry.getKey());
+            if (binaries != null && entry.getValue() instanceof MockBinary binary) {
+                out.writeByte(BINARY_REFERENCE);
+                out.writeInt(binaries.add(binary));
+            } else {
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param in Input
+     * @param interner Interner for the property names, or null to keep the decoded names
+     * @param binarySpoolThreshold Binaries exceeding this size are spooled to temporary files
+     * @return Properties in the stored order
+     * @throws IOException I/O exception
+     */
+    static @NotNull Map<String, Object> readProperties(
+            @NotNull DataInput in, @Nullable StringInterner interner, int binarySpoolThreshold) throws IOException {
+        return readProperties(in, interner, binarySpoolThreshold, null);
+    }
+
+    /**
+     * @param in Input
+     * @param interner Interner for the property names, or null to keep the decoded names
+     * @param binarySpoolThreshold Binaries exceeding this size are spooled to temporary files
+     * @param binaries Table the spooled binaries were referenced in when writing, or null
+     * @return Properties in the stored order
+     * @throws IOException I/O exception
+     */
+    static @NotNull Map<String, Object> readProperties(
+            @NotNull DataInput in,
+            @Nullable StringInterner interner,
+            int binarySpoolThreshold,
+            @Nullable BinaryReferences binaries)
+            throws IOException {
+        int size = in.readInt();
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String name = in.readUTF();
+            byte tag = in.readByte();
+            Object value;
+            if (tag == BINARY_REFERENCE) {
+                if (binaries == null) {
+                    throw new IOException("Unexpected binary reference.");
+                }
+                value = binaries.get(in.readInt());
+            } else {
+                value = readValue(in, tag, binarySpoolThreshold);
+            }
+            properties.put(interner != null ? interner.intern(name) : name, value);
+        }
+        return properties;
+    }
+
+    /**
+     * Spooled binaries are streamed from their temporary file into the output - when encoding into a byte array,
+     * as the {@link WriteAheadLog} records do, their content is held in memory until the record is written.
+     * The {@link DiskResourceStore} references them via {@link BinaryReferences} instead.
+     * @param out Output
+     * @param value Value
+     * @throws IOException If the value cannot be encoded
+     */
+    static void writeValue(@NotNull DataOutput out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String string) {
+            out.writeByte(STRING);
+            writeString(out, string);
+        } else if (value instanceof Long longValue) {
+            out.writeByte(LONG);
+            out.writeLong(longValue);
+        } else if (value instanceof Integer intValue) {
+            out.writeByte(INTEGER);
+            out.writeInt(intValue);
+        } else if (value instanceof Double doubleValue) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(doubleValue);
+        } else if (value instanceof Boolean booleanValue) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(booleanValue);
+        } else if (value instanceof BigDecimal decimal) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeUTF(decimal.toString());
+        } else if (value instanceof Calendar calendar) {
+            out.writeByte(CALENDAR);
+            out.writeLong(calendar.getTimeInMillis());
+            out.writeUTF(calendar.getTimeZone().getID());
+        } else if (value instanceof TemporalValue temporal) {
+            out.writeByte(TEMPORAL);
+            out.writeLong(temporal.getEpochMillis());
+            out.writeUTF(temporal.getZone().getId());
+        } else if (value instanceof byte[] bytes) {
+            out.writeByte(BYTES);
+            writeBytes(out, bytes);
+        } else if (value instanceof MockBinary binary) {
+            out.writeByte(BINARY);
+            writeBinary(out, binary);
+        } else if (value.getClass().isArray()
+                && ARRAY_COMPONENT_TYPES.containsKey(
+                        value.getClass().getComponentType().getName())) {
+            out.writeByte(ARRAY);
+            out.writeUTF(value.getClass().getComponentType().getName());
+            int length = Array.getLength(value);
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                writeValue(out, Array.get(value, i));
+            }
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new FilteringObjectOutputStream(buffer)) {
+                objectOut.writeObject(value);
+            }
+            writeBytes(out, buffer.toByteArray());
+        } else {
+            throw new NotSerializableException(
+                    "Unsupported property type: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * @param in Input
+     * @param binarySpoolThreshold Binaries exceeding this size are spooled to temporary files
+     * @return Value. Binaries that were spooled to a file are streamed into a new {@link MockBinary} if they exceed
+     *         the threshold, without holding their content in memory.
+     * @throws IOException I/O exception
+     */
+    static @Nullable Object readValue(@NotNull DataInput in, int binarySpoolThreshold) throws IOException {
+        return readValue(in, in.readByte(), binarySpoolThreshold);
+    }
+
+    private static Object readValue(DataInput in, byte tag, int binarySpoolThreshold) throws IOException {
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case CALENDAR:
+                long millis = in.readLong();
+                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(in.readUTF()));
+                calendar.setTimeInMillis(millis);
+                return calendar;
+            case TEMPORAL:
+                long epochMillis = in.readLong();
+                return TemporalValue.of(epochMillis, ZoneId.of(in.readUTF()));
+            case BYTES:
+                return readBytes(in);
+            case BINARY:
+                int binaryLength = in.readInt();
+                if (binaryLength < 0) {
+                    throw new IOException("Invalid length: " + binaryLength);
+                }
+                return MockBinary.read(new DataInputSlice(in, binaryLength), binarySpoolThreshold);
+            case ARRAY:
+                Class<?> componentType = ARRAY_COMPONENT_TYPES.get(in.readUTF());
+                if (componentType == null) {
+                    throw new IOException("Unsupported array type.");
+                }
+                int length = in.readInt();
+                Object array = Array.newInstance(componentType, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, readValue(in, binarySpoolThreshold));
+                }
+                return array;
+            case SERIALIZED:
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+                    objectIn.setObjectInputFilter(SERIALIZATION_FILTER);
+                    return objectIn.readObject();
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException("Unable to deserialize property value.", ex);
+                }
+            default:
+                throw new IOException("Invalid value type: " + tag);
+        }
+    }
+
+    /**
+     * Writes strings of any length - {@link DataOutput#writeUTF(String)} is limited to 64K bytes.
+     */
+    static void writeString(@NotNull DataOutput out, @NotNull String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static @NotNull String readString(@NotNull DataInput in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeBinary(DataOutput out, MockBinary binary) throws IOException {
+        if (binary.getLength() > Integer.MAX_VALUE) {
+            throw new IOException("Binary exceeds maximum size: " + binary.getLength());
+        }
+        out.writeInt((int) binary.getLength());
+        byte[] buffer = new byte[8192];
+        try (InputStream in = binary.getStream()) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return Whether instances of the given class may be written and read with Java serialization
+     */
+    private static boolean isSerializable(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        String name = type.getName();
+        if (name.startsWith("java.lang.invoke.") || name.startsWith("java.lang.reflect.")) {
+            return false;
+        }
+        for (String prefix : SERIALIZABLE_PACKAGES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rejects objects that could not be read again when writing, so a commit with such values fails instead of
+     * the recovery.
+     */
+    private static final class FilteringObjectOutputStream extends ObjectOutputStream {
+
+        FilteringObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (!isSerializable(obj.getClass())) {
+                throw new InvalidClassException(obj.getClass().getName(), "Class is not allowed in serialized values");
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * Stream on the next bytes of a data input, so binaries are spooled without reading them into a byte array.
+     */
+    private static final class DataInputSlice extends InputStream {
+
+        private final DataInput in;
+        private long remaining;
+
+        DataInputSlice(DataInput in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            remaining--;
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = (int) Math.min(len, remaining);
+            in.readFully(b, off, count);
+            remaining -= count;
+            return count;
+        }
+    }
+
+    /**
+     * Spooled binaries referenced by their index instead of being copied into the encoded properties, so decoding
+     * them returns the same binary without spooling it again. Only applicable to encoded properties that do not
+     * outlive the process, like those of the {@link DiskResourceStore}. The binaries stay referenced until the
+     * table is cleared. Not thread-safe - adding must be guarded against concurrent access.
+     */
+    static final class BinaryReferences {
+
+        private final List<MockBinary> binaries = new ArrayList<>();
+        private final Map<MockBinary, Integer> indexes = new IdentityHashMap<>();
+
+        int add(@NotNull MockBinary binary) {
+            Integer index = indexes.get(binary);
+            if (index == null) {
+                index = binaries.size();
+                binaries.add(binary);
+                indexes.put(binary, index);
+            }
+            return index;
+        }
+
+        @NotNull
+        MockBinary get(int index) throws IOException {
+            if (index < 0 || index >= binaries.size()) {
+                throw new IOException("Invalid binary reference: " + index);
+            }
+            return binaries.get(index);
+        }
+
+        int size() {
+            return binaries.size();
+        }
+
+        void clear() {
+            binaries.clear();
+            indexes.clear();
+        }
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Append-only write-ahead log of committed resource changes, with optional snapshot checkpoints.
+ * <p>Each commit appends one record: <code>int length, int crc32, payload</code>, the payload containing a sequence
+ * number and the changes of the commit encoded with {@link ValueCodec}. A record is only applied on recovery if it
+ * is complete and its checksum matches, so a record torn by a crash is discarded.</p>
+ * <p>Appending and syncing are separated to allow group commit: concurrent commits append their records and then
+ * wait for a single <code>fsync</code> that covers all records appended so far.</p>
+ * <p>A checkpoint writes a snapshot of all resources atomically and truncates the log. On recovery the snapshot is
+ * loaded first, followed by all log records with a higher sequence number.</p>
+ */
+final class WriteAheadLog implements Closeable {
+
+    static final String LOG_FILE = "resources.wal";
+    static final String SNAPSHOT_FILE = "resources.snapshot";
+
+    private static final int SNAPSHOT_MAGIC = 0x534c4d53;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Logging log = Logging.getLogger(WriteAheadLog.class);
+
+    private final Path directory;
+    private final boolean sync;
+    private final int binarySpoolThreshold;
+    private final Lock lock = new ReentrantLock();
+    private final Condition syncDone = lock.newCondition();
+    private FileChannel channel;
+    private long sequence;
+    private long syncedSequence;
+    private boolean syncing;
+    private long syncCount;
+
+    private WriteAheadLog(Path directory, boolean sync, int binarySpoolThreshold) {
+        this.directory = directory;
+        this.sync = sync;
+        this.binarySpoolThreshold = binarySpoolThreshold;
+    }
+
+    /**
+     * Opens the write-ahead log in the given directory and reads all changes recorded so far.
+     * @param directory Directory, created if it does not exist
+     * @param sync Whether to fsync the log on each (group) commit
+     * @param binarySpoolThreshold Recovered binaries exceeding this size are spooled to temporary files
+     * @param recovered Receives the recovered changes: the snapshot (if present) followed by the logged changes
+     * @return Write-ahead log
+     * @throws IOException I/O exception
+     */
+    static @NotNull WriteAheadLog open(
+            @NotNull Path directory, boolean sync, int binarySpoolThreshold, @NotNull List<Change> recovered)
+            throws IOException {
+        Files.createDirectories(directory);
+        WriteAheadLog wal = new WriteAheadLog(directory, sync, binarySpoolThreshold);
+        wal.recover(recovered);
+        return wal;
+    }
+
+    private void recover(List<Change> recovered) throws IOException {
+        long snapshotSequence = readSnapshot(recovered);
+        sequence = snapshotSequence;
+        Path logFile = directory.resolve(LOG_FILE);
+        long validLength = 0;
+        int records = 0;
+        if (Files.exists(logFile)) {
+            long logSize = Files.size(logFile);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)))) {
+                while (true) {
+                    byte[] payload = readRecord(in, logSize - validLength - 8);
+                    if (payload == null) {
+                        break;
+                    }
+                    DataInputStream payloadIn = new DataInputStream(new ByteArrayInputStream(payload));
+                    long recordSequence = payloadIn.readLong();
+                    if (recordSequence > snapshotSequence) {
+                        recovered.addAll(readChanges(payloadIn));
+                        sequence = recordSequence;
+                        records++;
+                    }
+                    validLength += 8 + payload.length;
+                }
+            }
+        }
+        channel =
+                FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (validLength < channel.size()) {
+            log.warn("Discarding incomplete record at end of write-ahead log {}", logFile);
+            channel.truncate(validLength);
+            channel.force(false);
+        }
+        channel.position(validLength);
+        syncedSequence = sequence;
+        log.debug("Recovered {} log records from {}", records, directory);
+    }
+
+    /**
+     * @param in Input positioned at the record header
+     * @param maxLength Number of bytes remaining in the log after the record header, a corrupt length larger than
+     *            that is not allocated
+     * @return Complete record payload, or null at the end of the log or if the record is incomplete or corrupt
+     */
+    private static byte[] readRecord(DataInputStream in, long maxLength) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 8 || length > maxLength) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException ex) {
+            return null;
+        }
+    }
+
+    private long readSnapshot(List<Change> recovered) throws IOException {
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshotFile)) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream fileIn = new BufferedInputStream(Files.newInputStream(snapshotFile));
+                DataInputStream in = new DataInputStream(new CheckedInputStream(fileIn, crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Invalid snapshot file: " + snapshotFile);
+            }
+            long snapshotSequence = in.readLong();
+            int count = in.readInt();
+            List<Change> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                changes.add(Change.put(path, ValueCodec.readProperties(in, null, binarySpoolThreshold)));
+            }
+            int expected = (int) crc.getValue();
+            if (new DataInputStream(fileIn).readInt() != expected) {
+                throw new IOException("Checksum mismatch in snapshot file: " + snapshotFile);
+            }
+            recovered.addAll(changes);
+            return snapshotSequence;
+        }
+    }
+
+    /**
+     * Appends the changes of a commit to the log. The changes are not durable before {@link #sync(long)} returns.
+     * @param changes Changes
+     * @return Sequence number of the record
+     * @throws IOException If a property value cannot be encoded or the log cannot be written
+     */
+    long append(@NotNull List<Change> changes) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeLong(0); // placeholder for sequence number
+        writeChanges(out, changes);
+        lock.lock();
+        try {
+            long recordSequence = sequence + 1;
+            ByteBuffer payload = ByteBuffer.wrap(buffer.toByteArray());
+            payload.putLong(0, recordSequence);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+            while (header.hasRemaining() || payload.hasRemaining()) {
+                channel.write(new ByteBuffer[] {header, payload});
+            }
+            sequence = recordSequence;
+            return recordSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the record with the given sequence number durable. If another thread is already syncing, waits for it
+     * and syncs again only if the record was not covered - so concurrent commits share a single fsync.
+     * @param recordSequence Sequence number returned by {@link #append(List)}
+     * @throws IOException I/O exception
+     */
+    void sync(long recordSequence) throws IOException {
+        if (!sync) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (syncedSequence < recordSequence) {
+                if (syncing) {
+                    syncDone.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = sequence;
+                boolean success = false;
+                lock.unlock();
+                try {
+                    channel.force(false);
+                    success = true;
+                } finally {
+                    lock.lock();
+                    syncing = false;
+                    if (success) {
+                        syncedSequence = Math.max(syncedSequence, target);
+                        syncCount++;
+                    }
+                    syncDone.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of all resources and truncates the log. Must be called while no commits are appended.
+     * @param resources Properties of all resources by path
+     * @throws IOException I/O exception
+     */
+    void checkpoint(@NotNull Map<String, Map<String, Object>> resources) throws IOException {
+        lock.lock();
+        try {
+            Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+            Path tempFile = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel snapshotChannel = FileChannel.open(
+                    tempFile,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream fileOut = new BufferedOutputStream(Channels.newOutputStream(snapshotChannel));
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(fileOut, crc));
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(sequence);
+                out.writeInt(resources.size());
+                for (Map.Entry<String, Map<String, Object>> entry : resources.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    ValueCodec.writeProperties(out, entry.getValue());
+                }
+                out.flush();
+                new DataOutputStream(fileOut).writeInt((int) crc.getValue());
+                fileOut.flush();
+                snapshotChannel.force(true);
+            }
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            syncedSequence = sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Current size of the log file in bytes
+     */
+    long size() throws IOException {
+        lock.lock();
+        try {
+            return channel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of fsync calls - lower than the number of commits if commits were grouped
+     */
+    long getSyncCount() {
+        lock.lock();
+        try {
+            return syncCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeChanges(DataOutputStream out, List<Change> changes) throws IOException {
+        out.writeInt(changes.size());
+        for (Change change : changes) {
+            out.writeByte(change.type.ordinal());
+            out.writeUTF(change.path);
+            if (change.type != Change.Type.DELETE) {
+                ValueCodec.writeProperties(out, change.properties);
+            }
+            if (change.type == Change.Type.UPDATE) {
+                out.writeInt(change.removedNames.size());
+                for (String name : change.removedNames) {
+                    out.writeUTF(name);
+                }
+            }
+        }
+    }
+
+    private List<Change> readChanges(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Change> changes = new ArrayList<>(count);
+        Change.Type[] types = Change.Type.values();
+        for (int i = 0; i < count; i++) {
+            int typeIndex = in.readByte();
+            if (typeIndex < 0 || typeIndex >= types.length) {
+                throw new IOException("Invalid change type: " + typeIndex);
+            }
+            Change.Type type = types[typeIndex];
+            String path = in.readUTF();
+            if (type == Change.Type.DELETE) {
+                changes.add(Change.delete(path));
+                continue;
+            }
+            Map<String, Object> properties = ValueCodec.readProperties(in, null, binarySpoolThreshold);
+            if (type == Change.Type.PUT) {
+                changes.add(Change.put(path, properties));
+            } else {
+                int removedCount = in.readInt();
+                List<String> removedNames = new ArrayList<>(removedCount);
+                for (int j = 0; j < removedCount; j++) {
+                    removedNames.add(in.readUTF());
+                }
+                changes.add(Change.update(path, properties, removedNames));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Change of a single resource.
+     */
+    static final class Change {
+
+        enum Type {
+            /** Resource created or replaced with the given properties */
+            PUT,
+            /** Properties of an existing resource set or removed */
+            UPDATE,
+            /** Resource deleted */
+            DELETE
+        }
+
+        private final Type type;
+        private final String path;
+        private final Map<String, Object> properties;
+        private final List<String> removedNames;
+
+        private Change(Type type, String path, Map<String, Object> properties, List<String> removedNames) {
+            this.type = type;
+            this.path = path;
+            this.properties = properties;
+            this.removedNames = removedNames;
+        }
+
+        static @NotNull Change put(@NotNull String path, @NotNull Map<String, Object> properties) {
+            return new Change(Type.PUT, path, properties, Collections.emptyList());
+        }
+
+        static @NotNull Change update(
+                @NotNull String path, @NotNull Map<String, Object> properties, @NotNull List<String> removedNames) {
+            return new Change(Type.UPDATE, path, properties, removedNames);
+        }
+
+        static @NotNull Change delete(@NotNull String path) {
+            return new Change(Type.DELETE, path, Collections.emptyMap(), Collections.emptyList());
+        }
+
+        @NotNull
+        Type getType() {
+            return type;
+        }
+
+        @NotNull
+        String getPath() {
+            return path;
+        }
+
+        @NotNull
+        Map<String, Object> getProperties() {
+            return properties;
+        }
+
+        @NotNull
+        List<String> getRemovedNames() {
+            return removedNames;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_CONTENT;
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_DATA;
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_PRIMARYTYPE;
+import static org.apache.sling.testing.resourceresolver.MockResource.NT_FILE;
+import static org.apache.sling.testing.resourceresolver.MockResource.NT_RESOURCE;
+
+/**
+ * JMH benchmark of a DAM-like fixture where all assets share the same rendition, with and without binary
+ * deduplication. Run with the GC profiler, the allocated bytes per operation show the heap footprint of the fixture.
+ * Not executed as part of the build, run via {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BinaryDeduplicationBenchmark {
+
+    private static final int ASSET_COUNT = 500;
+    private static final byte[] RENDITION = randomBytes(64 * 1024);
+
+    @Param({"false", "true"})
+    public boolean deduplication;
+
+    @Benchmark
+    public MockResourceResolverFactory createDamFixture() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(
+                new MockResourceResolverFactoryOptions().setBinaryDeduplicationEnabled(deduplication));
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Resource dam = resolver.create(resolver.getResource("/"), "dam", ValueMap.EMPTY);
+        for (int i = 0; i < ASSET_COUNT; i++) {
+            Resource file = resolver.create(dam, "asset" + i + ".jpg", Map.of(JCR_PRIMARYTYPE, NT_FILE));
+            resolver.create(
+                    file,
+                    JCR_CONTENT,
+                    Map.of(JCR_PRIMARYTYPE, NT_RESOURCE, JCR_DATA, new ByteArrayInputStream(RENDITION)));
+        }
+        resolver.commit();
+        return factory;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(BinaryDeduplicationBenchmark.class.getSimpleName())
+                        .addProfiler(GCProfiler.class)
+                        .build())
+                .run();
+    }
+}
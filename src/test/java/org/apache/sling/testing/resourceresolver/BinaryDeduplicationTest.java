@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Test;
+
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_CONTENT;
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_DATA;
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_PRIMARYTYPE;
+import static org.apache.sling.testing.resourceresolver.MockResource.NT_FILE;
+import static org.apache.sling.testing.resourceresolver.MockResource.NT_RESOURCE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests content-addressed deduplication of binary values.
+ */
+@SuppressWarnings("null")
+public class BinaryDeduplicationTest {
+
+    private static final int ASSET_COUNT = 500;
+    private static final byte[] RENDITION = randomBytes(64 * 1024);
+
+    @Test
+    public void testDeduplication() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(
+                new MockResourceResolverFactoryOptions().setBinaryDeduplicationEnabled(true));
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Resource root = resolver.getResource("/");
+
+        Resource file1 = createFile(resolver, root, "file1", RENDITION);
+        Resource file2 = createFile(resolver, root, "file2", RENDITION);
+        Resource file3 = createFile(resolver, root, "file3", new byte[] {0x01, 0x02});
+
+        Object data1 = MockResourceResolver.getRawProperties(
+                        file1.getChild(JCR_CONTENT).getValueMap())
+                .get(JCR_DATA);
+        assertSame(
+                data1,
+                MockResourceResolver.getRawProperties(
+                                file2.getChild(JCR_CONTENT).getValueMap())
+                        .get(JCR_DATA));
+        assertNotSame(
+                data1,
+                MockResourceResolver.getRawProperties(
+                                file3.getChild(JCR_CONTENT).getValueMap())
+                        .get(JCR_DATA));
+        try (InputStream is = file2.adaptTo(InputStream.class)) {
+            assertArrayEquals(RENDITION, IOUtils.toByteArray(is));
+        }
+
+        assertEquals(2, factory.getBinaryStore().getBinaryCount());
+        assertEquals(1, factory.getBinaryStore().getDeduplicatedCount());
+    }
+
+    @Test
+    public void testDeduplicationSpooledBinaries() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                .setBinaryDeduplicationEnabled(true)
+                .setBinarySpoolThreshold(1024));
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Resource root = resolver.getResource("/");
+
+        Resource file1 = createFile(resolver, root, "file1", RENDITION);
+        Resource file2 = createFile(resolver, root, "file2", RENDITION);
+
+        Object data1 = MockResourceResolver.getRawProperties(
+                        file1.getChild(JCR_CONTENT).getValueMap())
+                .get(JCR_DATA);
+        assertEquals(MockBinary.class, data1.getClass());
+        assertSame(
+                data1,
+                MockResourceResolver.getRawProperties(
+                                file2.getChild(JCR_CONTENT).getValueMap())
+                        .get(JCR_DATA));
+        try (InputStream is = file2.adaptTo(InputStream.class)) {
+            assertArrayEquals(RENDITION, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testSharedBinaryNotModifiedByReaders() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(
+                new MockResourceResolverFactoryOptions().setBinaryDeduplicationEnabled(true));
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Resource root = resolver.getResource("/");
+        ValueMap props1 = createFile(resolver, root, "file1", RENDITION)
+                .getChild(JCR_CONTENT)
+                .getValueMap();
+        ValueMap props2 = createFile(resolver, root, "file2", RENDITION)
+                .getChild(JCR_CONTENT)
+                .getValueMap();
+
+        ((byte[]) props1.get(JCR_DATA))[0]++;
+        props1.get(JCR_DATA, byte[].class)[0]++;
+        ((byte[]) props1.values().stream()
+                        .filter(byte[].class::isInstance)
+                        .findFirst()
+                        .get())
+                [0]++;
+        ((byte[]) props1.entrySet().stream()
+                        .filter(entry -> JCR_DATA.equals(entry.getKey()))
+                        .findFirst()
+                        .get()
+                        .getValue())
+                [0]++;
+
+        assertArrayEquals(RENDITION, props1.get(JCR_DATA, byte[].class));
+        assertArrayEquals(RENDITION, props2.get(JCR_DATA, byte[].class));
+    }
+
+    @Test
+    public void testDeduplicationDisabledByDefault() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory();
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Resource root = resolver.getResource("/");
+
+        Resource file1 = createFile(resolver, root, "file1", RENDITION);
+        Resource file2 = createFile(resolver, root, "file2", RENDITION);
+        assertNotSame(
+                file1.getChild(JCR_CONTENT).getValueMap().get(JCR_DATA),
+                file2.getChild(JCR_CONTENT).getValueMap().get(JCR_DATA));
+    }
+
+    @Test
+    public void testDamFixtureSharesSingleBinary() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(
+                new MockResourceResolverFactoryOptions().setBinaryDeduplicationEnabled(true));
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Resource dam = resolver.create(resolver.getResource("/"), "dam", ValueMap.EMPTY);
+        for (int i = 0; i < ASSET_COUNT; i++) {
+            createFile(resolver, dam, "asset" + i + ".jpg", RENDITION);
+        }
+        resolver.commit();
+
+        assertEquals(1, factory.getBinaryStore().getBinaryCount());
+        assertEquals(ASSET_COUNT - 1, factory.getBinaryStore().getDeduplicatedCount());
+    }
+
+    private static Resource createFile(ResourceResolver resolver, Resource parent, String name, byte[] data)
+            throws Exception {
+        Resource file = resolver.create(parent, name, Map.of(JCR_PRIMARYTYPE, NT_FILE));
+        resolver.create(
+                file, JCR_CONTENT, Map.of(JCR_PRIMARYTYPE, NT_RESOURCE, JCR_DATA, new ByteArrayInputStream(data)));
+        return file;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+}
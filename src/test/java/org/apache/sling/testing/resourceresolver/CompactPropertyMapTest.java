@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the compact shape-based property storage.
+ */
+@SuppressWarnings("null")
+public class CompactPropertyMapTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactPropertyMapTest.class);
+
+    private static final int NODE_COUNT = 10000;
+
+    @Test
+    public void testMapContract() {
+        CompactPropertyMap map = new CompactPropertyMap(PropertyShape.createRoot());
+        Map<String, Object> expected = new HashMap<>();
+        Calendar calendar = Calendar.getInstance();
+        Object[][] values = {
+            {"long", 5L},
+            {"double", 1.5d},
+            {"boolean", true},
+            {"string", "value"},
+            {"int", 3},
+            {"calendar", calendar},
+            {"null", null},
+            {"array", new String[] {"a"}}
+        };
+        for (Object[] value : values) {
+            assertNull(map.put((String) value[0], value[1]));
+            expected.put((String) value[0], value[1]);
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertTrue(map.containsKey("null"));
+        assertFalse(map.containsKey("other"));
+        assertEquals(Integer.class, map.get("int").getClass());
+        assertSame(calendar, map.get("calendar"));
+
+        // change kind of value
+        assertEquals(5L, map.put("long", "text"));
+        assertEquals(1.5d, map.put("double", 2.5d));
+        expected.put("long", "text");
+        expected.put("double", 2.5d);
+        assertEquals(expected, map);
+        assertEquals("long", map.keySet().iterator().next());
+
+        assertEquals(true, map.remove("boolean"));
+        expected.remove("boolean");
+        assertEquals(expected, map);
+        assertNull(map.remove("boolean"));
+
+        Iterator<Map.Entry<String, Object>> entries = map.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Object> entry = entries.next();
+            if (entry.getKey().equals("string")) {
+                entries.remove();
+            } else if (entry.getKey().equals("int")) {
+                entry.setValue(4L);
+            }
+        }
+        expected.remove("string");
+        expected.put("int", 4L);
+        assertEquals(expected, map);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testSharedShapes() {
+        PropertyShape root = PropertyShape.createRoot();
+        CompactPropertyMap map1 = new CompactPropertyMap(root, Map.of("a", 1L));
+        map1.put("b", "value1");
+        CompactPropertyMap map2 = new CompactPropertyMap(root);
+        map2.put("a", 2L);
+        map2.put("b", "value2");
+        assertSame(map1.getShape(), map2.getShape());
+
+        // shapes are not shared between different roots, e.g. of different factories
+        CompactPropertyMap map3 = new CompactPropertyMap(PropertyShape.createRoot(), Map.of("a", 3L));
+        map3.put("b", "value3");
+        assertNotSame(map1.getShape(), map3.getShape());
+        map3.clear();
+        assertNotSame(root, map3.getShape());
+    }
+
+    @Test
+    public void testNullKey() {
+        CompactPropertyMap map = new CompactPropertyMap(PropertyShape.createRoot());
+        Map<String, Object> expected = new HashMap<>();
+        // more properties than searched linearly, to cover the index
+        for (int i = 0; i < 10; i++) {
+            map.put("prop" + i, (long) i);
+            expected.put("prop" + i, (long) i);
+        }
+        assertNull(map.put(null, "value"));
+        expected.put(null, "value");
+        assertTrue(map.containsKey(null));
+        assertEquals("value", map.get(null));
+        assertEquals(expected, map);
+
+        Iterator<Map.Entry<String, Object>> entries = map.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().getKey() == null) {
+                entries.remove();
+            }
+        }
+        expected.remove(null);
+        assertFalse(map.containsKey(null));
+        assertEquals(expected, map);
+    }
+
+    @Test
+    public void testResourceProperties() throws Exception {
+        ResourceResolver resolver = new MockResourceResolverFactory(
+                        new MockResourceResolverFactoryOptions().setCompactPropertyStorage(true))
+                .getResourceResolver(null);
+        Resource resource = resolver.create(
+                resolver.getResource("/"), "test", Map.of("prop1", "value1", "prop2", 5L, "prop3", true));
+        resolver.commit();
+
+        ValueMap props = resolver.getResource("/test").getValueMap();
+        assertEquals("value1", props.get("prop1", String.class));
+        assertEquals(5, (int) props.get("prop2", Integer.class));
+        assertEquals(true, props.get("prop3", false));
+        assertEquals(List.of("value1"), List.of(props.get("prop1", String[].class)));
+
+        ModifiableValueMap modifiable = resource.adaptTo(ModifiableValueMap.class);
+        modifiable.put("prop2", "changed");
+        modifiable.remove("prop3");
+        resolver.commit();
+        props = resolver.getResource("/test").getValueMap();
+        assertEquals("changed", props.get("prop2", String.class));
+        assertFalse(props.containsKey("prop3"));
+    }
+
+    /**
+     * Logs the heap footprint of a fixture with 10 properties per resource.
+     */
+    @Test
+    public void testHeapFootprint() throws Exception {
+        long hashMaps = measurePropertyMaps(false);
+        long compactMaps = measurePropertyMaps(true);
+        long hashMapFixture = measureFixture(false);
+        long compactFixture = measureFixture(true);
+        log.info(
+                "Heap footprint of {} property maps with 10 properties: {} KB with HashMap, {} KB compact",
+                NODE_COUNT,
+                hashMaps / 1024,
+                compactMaps / 1024);
+        log.info(
+                "Heap footprint of {} resources with 10 properties: {} KB with HashMap, {} KB compact",
+                NODE_COUNT,
+                hashMapFixture / 1024,
+                compactFixture / 1024);
+    }
+
+    private long measurePropertyMaps(boolean compact) {
+        long before = usedHeap();
+        Map<?, ?>[] maps = new Map<?, ?>[NODE_COUNT];
+        PropertyShape root = PropertyShape.createRoot();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            Map<String, Object> props = fixtureProperties(i);
+            maps[i] = compact ? new CompactPropertyMap(root, props) : props;
+        }
+        long result = usedHeap() - before;
+        assertEquals(10, maps[NODE_COUNT - 1].size());
+        return result;
+    }
+
+    private long measureFixture(boolean compactPropertyStorage) throws Exception {
+        long before = usedHeap();
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(
+                new MockResourceResolverFactoryOptions().setCompactPropertyStorage(compactPropertyStorage));
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Resource parent = resolver.create(resolver.getResource("/"), "content", ValueMap.EMPTY);
+        for (int i = 0; i < NODE_COUNT; i++) {
+            resolver.create(parent, "item" + i, fixtureProperties(i));
+        }
+        resolver.commit();
+        long result = usedHeap() - before;
+        assertEquals(true, resolver.getResource("/content/item0").getValueMap().get("enabled", false));
+        return result;
+    }
+
+    private static Map<String, Object> fixtureProperties(int i) {
+        Map<String, Object> props = new HashMap<>();
+        props.put("jcr:primaryType", "nt:unstructured");
+        props.put("sling:resourceType", "app/components/item");
+        props.put("index", (long) i);
+        props.put("size", (long) i * 1000);
+        props.put("ratio", i / 7d);
+        props.put("score", i / 3d);
+        props.put("enabled", i % 2 == 0);
+        props.put("hidden", i % 3 == 0);
+        props.put("visible", i % 5 == 0);
+        props.put("published", i % 7 == 0);
+        return props;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Stress test running mixed read/create/commit/delete workloads with one resource resolver per thread
+ * against a shared factory, and checking that no commits are lost.
+ * <p>The default workload runs in about a second. It can be increased via the system properties
+ * <code>stress.threads</code>, <code>stress.tasks</code> and <code>stress.iterations</code>.</p>
+ */
+@SuppressWarnings("null")
+public class ConcurrentResourceResolverStressTest {
+
+    private static final int PLATFORM_THREADS = Integer.getInteger("stress.threads", 8);
+    private static final int TASKS = Integer.getInteger("stress.tasks", 32);
+    private static final int ITERATIONS = Integer.getInteger("stress.iterations", 20);
+
+    private MockResourceResolverFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new MockResourceResolverFactory();
+        try (ResourceResolver resolver = factory.getResourceResolver(null)) {
+            resolver.create(resolver.getResource("/"), "stress", null);
+            resolver.commit();
+        }
+    }
+
+    @Test
+    public void testPlatformThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PLATFORM_THREADS);
+        runWorkload(executor, PLATFORM_THREADS);
+    }
+
+    @Test
+    public void testThreadPerTask() throws Exception {
+        runWorkload(Executors.newCachedThreadPool(), TASKS);
+    }
+
+    private void runWorkload(ExecutorService executor, int threads) throws Exception {
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                futures.add(executor.submit(() -> {
+                    workload(thread);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(60, TimeUnit.SECONDS);
+        }
+        assertConsistent(threads);
+    }
+
+    private void workload(int thread) throws Exception {
+        try (ResourceResolver resolver = factory.getResourceResolver(null)) {
+            Resource parent = resolver.getResource("/stress");
+            for (int i = 0; i < ITERATIONS; i++) {
+                String name = nodeName(thread, i);
+                resolver.create(parent, name, Map.of("thread", thread, "index", i));
+                resolver.commit();
+
+                Resource resource = resolver.getResource("/stress/" + name);
+                assertNotNull(resource);
+                ValueMap props = resource.getValueMap();
+                assertEquals(i, (int) props.get("index", Integer.class));
+
+                Iterator<Resource> children = resolver.listChildren(parent);
+                while (children.hasNext()) {
+                    children.next().getValueMap().get("thread", Integer.class);
+                }
+
+                if (i % 3 == 0) {
+                    resolver.delete(resource);
+                    resolver.commit();
+                    assertNull(resolver.getResource("/stress/" + name));
+                }
+            }
+        }
+    }
+
+    private void assertConsistent(int threads) throws Exception {
+        try (ResourceResolver resolver = factory.getResourceResolver(null)) {
+            int expectedPerThread = ITERATIONS - (ITERATIONS + 2) / 3;
+            int count = 0;
+            Iterator<Resource> children = resolver.listChildren(resolver.getResource("/stress"));
+            while (children.hasNext()) {
+                children.next();
+                count++;
+            }
+            assertEquals(threads * expectedPerThread, count);
+            for (int thread = 0; thread < threads; thread++) {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Resource resource = resolver.getResource("/stress/" + nodeName(thread, i));
+                    if (i % 3 == 0) {
+                        assertNull(resource);
+                    } else {
+                        assertNotNull(resource);
+                        assertEquals(thread, (int) resource.getValueMap().get("thread", Integer.class));
+                    }
+                }
+            }
+        }
+    }
+
+    private static String nodeName(int thread, int index) {
+        return "t" + thread + "-n" + index;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of deep-read property names resolved directly against the resource store, compared to resolving
+ * them via the resource resolver (which is done if a custom mock resource factory is configured).
+ * Not executed as part of the build, run via {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeepReadBenchmark {
+
+    @Param({"resolver", "store"})
+    public String lookup;
+
+    private ValueMap props;
+
+    @Setup
+    public void setUp() throws Exception {
+        MockResourceResolverFactoryOptions options = new MockResourceResolverFactoryOptions();
+        if ("resolver".equals(lookup)) {
+            options.setMockResourceFactory(new CustomResourceFactory());
+        }
+        ResourceResolver resolver = new MockResourceResolverFactory(options).getResourceResolver(null);
+        Resource content = resolver.create(resolver.getResource("/"), "content", ValueMap.EMPTY);
+        Resource page = resolver.create(content, "page", ValueMap.EMPTY);
+        Resource pageContent = resolver.create(page, "jcr:content", Map.of("jcr:title", "Title"));
+        resolver.create(pageContent, "image", Map.of("width", 5L, "fileReference", "/dam/image.png"));
+        resolver.commit();
+        props = resolver.getResource("/content/page").getValueMap();
+    }
+
+    @Benchmark
+    public int deepRead() {
+        return props.get("jcr:content/jcr:title", String.class).length()
+                + props.get("jcr:content/image/fileReference", "").length();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(DeepReadBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+
+    private static final class CustomResourceFactory extends DefaultMockResourceFactory {
+        // same behavior as default factory, but disables the store lookup
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests deep reads of child resource properties in {@link MockValueMap} resolved directly from the resource store.
+ */
+@SuppressWarnings("null")
+public class DeepReadFastPathTest {
+
+    private MockResourceResolverFactory factory;
+    private ResourceResolver resolver;
+    private Resource page;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new MockResourceResolverFactory();
+        resolver = factory.getResourceResolver(null);
+        page = createPage(resolver);
+    }
+
+    @Test
+    public void testDeepRead() {
+        ValueMap props = page.getValueMap();
+        assertEquals("Title", props.get("jcr:content/jcr:title", String.class));
+        assertEquals("Title", props.get("jcr:content/jcr:title"));
+        assertEquals("Title", props.get("jcr:content/jcr:title", "default"));
+        assertEquals(Long.valueOf(5), props.get("jcr:content/image/width", Long.class));
+        assertEquals("5", props.get("jcr:content/image/width", String.class));
+        assertEquals("Title", props.get("jcr:content/image/../jcr:title", String.class));
+        assertTrue(props.containsKey("jcr:content/jcr:title"));
+        assertFalse(props.containsKey("jcr:content/other"));
+        assertNull(props.get("jcr:content/other", String.class));
+        assertNull(props.get("missing/jcr:title", String.class));
+        assertFalse(props.containsKey("missing/jcr:title"));
+    }
+
+    @Test
+    public void testTransientChanges() throws Exception {
+        ValueMap props = page.getValueMap();
+        assertEquals("Title", props.get("jcr:content/jcr:title", String.class));
+
+        // delete and recreate resource
+        resolver.delete(resolver.getResource("/content/page/jcr:content"));
+        assertNull(props.get("jcr:content/jcr:title", String.class));
+        resolver.create(page, "jcr:content", Map.of("jcr:title", "Recreated"));
+        assertEquals("Recreated", props.get("jcr:content/jcr:title", String.class));
+
+        resolver.revert();
+        assertEquals("Title", props.get("jcr:content/jcr:title", String.class));
+
+        // modify property
+        resolver.getResource("/content/page/jcr:content")
+                .adaptTo(ModifiableValueMap.class)
+                .put("jcr:title", "New");
+        assertEquals("New", props.get("jcr:content/jcr:title", String.class));
+    }
+
+    @Test
+    public void testChangesCommittedByOtherResolver() throws Exception {
+        ValueMap props = page.getValueMap();
+        assertEquals("Title", props.get("jcr:content/jcr:title", String.class));
+
+        ResourceResolver other = factory.getResourceResolver(null);
+        other.delete(other.getResource("/content/page/jcr:content"));
+        other.commit();
+        assertNull(props.get("jcr:content/jcr:title", String.class));
+
+        other.create(other.getResource("/content/page"), "jcr:content", Map.of("jcr:title", "Other"));
+        other.commit();
+        assertEquals("Other", props.get("jcr:content/jcr:title", String.class));
+    }
+
+    @Test
+    public void testCustomResourceFactory() throws Exception {
+        ResourceResolver customResolver = createResolverWithCustomResourceFactory();
+        ValueMap props = createPage(customResolver).getValueMap();
+        assertEquals("Title", props.get("jcr:content/jcr:title", String.class));
+        assertEquals(Long.valueOf(5), props.get("jcr:content/image/width", Long.class));
+    }
+
+    private static ResourceResolver createResolverWithCustomResourceFactory() throws Exception {
+        return new MockResourceResolverFactory(
+                        new MockResourceResolverFactoryOptions().setMockResourceFactory(new CustomResourceFactory()))
+                .getResourceResolver(null);
+    }
+
+    private static Resource createPage(ResourceResolver resolver) throws Exception {
+        Resource content = resolver.create(resolver.getResource("/"), "content", ValueMap.EMPTY);
+        Resource page = resolver.create(content, "page", ValueMap.EMPTY);
+        Resource pageContent = resolver.create(page, "jcr:content", Map.of("jcr:title", "Title"));
+        resolver.create(pageContent, "image", Map.of("width", 5L, "fileReference", "/dam/image.png"));
+        resolver.commit();
+        return resolver.getResource("/content/page");
+    }
+
+    private static final class CustomResourceFactory extends DefaultMockResourceFactory {
+        // same behavior as default factory, but disables the store lookup
+    }
+}
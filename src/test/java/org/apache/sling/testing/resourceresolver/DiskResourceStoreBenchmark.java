@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of listing the children of a resource in a large fixture, with the resources kept in the heap
+ * and in the disk-backed resource store.
+ * Not executed as part of the build, run via {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiskResourceStoreBenchmark {
+
+    private static final int PARENTS = 100;
+    private static final int CHILDREN_PER_PARENT = 1000;
+
+    @Param({"heap", "disk"})
+    public String store;
+
+    private Path directory;
+    private MockResourceResolverFactory factory;
+    private ResourceResolver resolver;
+    private int parent;
+
+    @Setup
+    public void setUp() throws Exception {
+        MockResourceResolverFactoryOptions options = new MockResourceResolverFactoryOptions();
+        if ("disk".equals(store)) {
+            directory = Files.createTempDirectory("resourceresolver-mock-benchmark-");
+            options.setDiskStoreDirectory(directory);
+        }
+        factory = new MockResourceResolverFactory(options);
+        resolver = factory.getResourceResolver(null);
+        Resource root = resolver.getResource("/");
+        for (int p = 0; p < PARENTS; p++) {
+            Resource parentResource = resolver.create(root, "parent" + p, Map.of("jcr:primaryType", "nt:unstructured"));
+            for (int c = 0; c < CHILDREN_PER_PARENT; c++) {
+                resolver.create(parentResource, "child" + c, Map.of("jcr:primaryType", "nt:unstructured", "index", c));
+            }
+            resolver.commit();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        resolver.close();
+        factory.shutdown();
+        if (directory != null) {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Benchmark
+    public int listChildren() {
+        parent = (parent + 1) % PARENTS;
+        int count = 0;
+        Iterator<Resource> children = resolver.listChildren(resolver.getResource("/parent" + parent));
+        while (children.hasNext()) {
+            children.next();
+            count++;
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(DiskResourceStoreBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}
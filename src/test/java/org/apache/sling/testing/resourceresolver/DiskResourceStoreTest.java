@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the disk-backed resource store.
+ */
+@SuppressWarnings("null")
+public class DiskResourceStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockResourceResolverFactory factory;
+    private ResourceResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                .setDiskStoreDirectory(folder.getRoot().toPath())
+                .setDiskStoreMemtableSize(16 * 1024)
+                .setDiskStoreBlockCacheSize(64 * 1024)
+                .setBinarySpoolThreshold(16));
+        resolver = factory.getResourceResolver(null);
+    }
+
+    @After
+    public void tearDown() {
+        resolver.close();
+        factory.shutdown();
+    }
+
+    @Test
+    public void testMapOperations() throws Exception {
+        try (DiskResourceStore store = new DiskResourceStore(folder.newFolder().toPath(), 1024, 4096, 1024, null)) {
+            for (int i = 0; i < 500; i++) {
+                store.put("/node" + String.format("%03d", i), Map.of("index", (long) i));
+            }
+            assertTrue(store.getTableCount() > 0);
+            assertEquals(500, store.size());
+            for (int i = 0; i < 500; i += 2) {
+                store.remove("/node" + String.format("%03d", i));
+            }
+            store.put("/node001", Map.of("index", -1L));
+            store.flush();
+
+            assertEquals(250, store.size());
+            assertNull(store.get("/node000"));
+            assertFalse(store.containsKey("/node498"));
+            assertEquals(-1L, store.get("/node001").get("index"));
+            assertEquals(3L, store.get("/node003").get("index"));
+
+            List<String> keys = new ArrayList<>();
+            store.scan("/node01").forEach(entry -> keys.add(entry.getKey()));
+            assertEquals(List.of("/node011", "/node013", "/node015", "/node017", "/node019"), keys);
+            assertEquals(250, store.entrySet().stream().count());
+            // size-tiered merging keeps the number of tables logarithmic
+            assertTrue(store.getTableCount() <= 8);
+
+            store.clear();
+            assertTrue(store.isEmpty());
+            assertNull(store.get("/node001"));
+        }
+    }
+
+    @Test
+    public void testCrudOperations() throws Exception {
+        Resource content = resolver.create(resolver.getResource("/"), "content", Map.of("prop", "content"));
+        for (int i = 0; i < 200; i++) {
+            Resource child = resolver.create(content, "child" + i, Map.of("index", i));
+            resolver.create(child, "grandchild", Map.of());
+        }
+        resolver.create(resolver.getResource("/"), "content-sibling", Map.of());
+        resolver.commit();
+
+        Iterator<Resource> children = resolver.listChildren(resolver.getResource("/content"));
+        int count = 0;
+        while (children.hasNext()) {
+            assertTrue(children.next().getName().startsWith("child"));
+            count++;
+        }
+        assertEquals(200, count);
+        assertNotNull(resolver.getResource("/content/child123/grandchild"));
+        assertEquals(List.of("content", "content-sibling"), toNames(resolver.listChildren(resolver.getResource("/"))));
+
+        ModifiableValueMap props = resolver.getResource("/content/child5").adaptTo(ModifiableValueMap.class);
+        props.put("index", 500);
+        props.put("added", "value");
+        resolver.delete(resolver.getResource("/content/child6"));
+        resolver.commit();
+
+        assertEquals(
+                (Integer) 500,
+                resolver.getResource("/content/child5").getValueMap().get("index", Integer.class));
+        assertEquals(
+                "value", resolver.getResource("/content/child5").getValueMap().get("added", String.class));
+        assertNull(resolver.getResource("/content/child6"));
+        assertNull(resolver.getResource("/content/child6/grandchild"));
+        assertEquals(
+                399,
+                ((MockResourceResolver) resolver)
+                        .findResourcesByTraversal("/content", resource -> true)
+                        .size());
+        assertTrue(factory.getDiskStore().getTableCount() > 0);
+    }
+
+    @Test
+    public void testPropertyTypes() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        Map<String, Object> props = new HashMap<>();
+        props.put("date", new Date(1_600_000_000_000L));
+        props.put("calendar", calendar);
+        props.put("array", new long[] {1, 2});
+        props.put("binary", new ByteArrayInputStream(new byte[64]));
+        resolver.create(resolver.getResource("/"), "content", props);
+        resolver.commit();
+        factory.getDiskStore().flush();
+
+        ValueMap stored = resolver.getResource("/content").getValueMap();
+        assertEquals(1_600_000_000_000L, stored.get("date", Date.class).getTime());
+        assertEquals(
+                calendar.getTimeInMillis(),
+                stored.get("calendar", Calendar.class).getTimeInMillis());
+        assertArrayEquals(new long[] {1, 2}, stored.get("array", long[].class));
+        try (InputStream binary = stored.get("binary", InputStream.class)) {
+            assertEquals(64, binary.readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void testSpooledBinaryShared() throws Exception {
+        resolver.create(resolver.getResource("/"), "content", Map.of("binary", new ByteArrayInputStream(new byte[64])));
+        resolver.commit();
+        factory.getDiskStore().flush();
+
+        Object binary = MockResourceResolver.getRawProperties(
+                        factory.getDiskStore().get("/content"))
+                .get("binary");
+        assertTrue(binary instanceof MockBinary);
+        for (int i = 0; i < 3; i++) {
+            assertSame(
+                    binary,
+                    MockResourceResolver.getRawProperties(factory.getDiskStore().get("/content"))
+                            .get("binary"));
+        }
+    }
+
+    @Test
+    public void testBlockCache() throws Exception {
+        Resource content = resolver.create(resolver.getResource("/"), "content", Map.of());
+        for (int i = 0; i < 1000; i++) {
+            resolver.create(content, "child" + i, Map.of("prop", "value" + i));
+        }
+        resolver.commit();
+        factory.getDiskStore().flush();
+
+        BlockCache cache = factory.getDiskStore().getBlockCache();
+        long startHits = cache.getHits();
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull(resolver.getResource("/content/child" + (i % 10)));
+        }
+        assertTrue(cache.getHits() - startHits >= 990);
+    }
+
+    @Test
+    public void testFilesDeletedOnShutdown() throws Exception {
+        Resource content = resolver.create(resolver.getResource("/"), "content", Map.of());
+        for (int i = 0; i < 500; i++) {
+            resolver.create(content, "child" + i, Map.of("prop", "value" + i));
+        }
+        resolver.commit();
+        assertTrue(countTableFiles(folder.getRoot().toPath()) > 0);
+        factory.shutdown();
+        assertEquals(0, countTableFiles(folder.getRoot().toPath()));
+    }
+
+    @Test
+    public void testListingMatchesHeapStore() throws Exception {
+        MockResourceResolverFactory heapFactory = new MockResourceResolverFactory();
+        try (ResourceResolver heapResolver = heapFactory.getResourceResolver(null)) {
+            createFixture(resolver);
+            createFixture(heapResolver);
+            for (int p = 0; p < 10; p++) {
+                String path = "/parent" + p;
+                List<String> names = toNames(resolver.listChildren(resolver.getResource(path)));
+                assertEquals(100, names.size());
+                // the disk store returns children in path order, the heap store in creation order
+                List<String> heapNames = toNames(heapResolver.listChildren(heapResolver.getResource(path)));
+                heapNames.sort(null);
+                assertEquals(heapNames, names);
+            }
+        } finally {
+            heapFactory.shutdown();
+        }
+    }
+
+    private static void createFixture(ResourceResolver fixtureResolver) throws Exception {
+        Resource root = fixtureResolver.getResource("/");
+        for (int p = 0; p < 10; p++) {
+            Resource parent = fixtureResolver.create(root, "parent" + p, Map.of("jcr:primaryType", "nt:unstructured"));
+            for (int c = 0; c < 100; c++) {
+                fixtureResolver.create(parent, "child" + c, Map.of("jcr:primaryType", "nt:unstructured", "index", c));
+            }
+            fixtureResolver.commit();
+        }
+    }
+
+    private static List<String> toNames(Iterator<Resource> resources) {
+        List<String> names = new ArrayList<>();
+        resources.forEachRemaining(resource -> names.add(resource.getName()));
+        return names;
+    }
+
+    private static long countTableFiles(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(DiskResourceStore.FILE_SUFFIX))
+                    .count();
+        }
+    }
+}
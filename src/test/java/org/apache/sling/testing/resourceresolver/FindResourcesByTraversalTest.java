@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static javax.jcr.query.Query.JCR_SQL2;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests traversal-based evaluation of find queries.
+ */
+@SuppressWarnings("null")
+public class FindResourcesByTraversalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ResourceResolver createResourceResolver(MockResourceResolverFactoryOptions options) throws Exception {
+        ResourceResolver resourceResolver = new MockResourceResolverFactory(options).getResourceResolver(null);
+        Resource content = resourceResolver.create(resourceResolver.getResource("/"), "content", null);
+        for (int i = 0; i < 20; i++) {
+            Resource page = resourceResolver.create(content, "page" + i, Map.of("index", i));
+            for (int j = 0; j < 10; j++) {
+                resourceResolver.create(page, "child" + j, Map.of("index", j, "even", j % 2 == 0));
+            }
+        }
+        resourceResolver.commit();
+        resourceResolver.create(resourceResolver.getResource("/content/page0"), "uncommitted", Map.of("even", true));
+        resourceResolver.delete(resourceResolver.getResource("/content/page1/child0"));
+        return resourceResolver;
+    }
+
+    private List<String> findEvenPaths(ResourceResolver resourceResolver, String rootPath) {
+        List<String> paths = new ArrayList<>();
+        Iterator<Resource> result = MockFindQueryResources.findResourcesByTraversal(
+                resourceResolver, rootPath, resource -> resource.getValueMap().get("even", false));
+        result.forEachRemaining(resource -> paths.add(resource.getPath()));
+        return paths;
+    }
+
+    @Test
+    public void testSequentialTraversal() throws Exception {
+        ResourceResolver resourceResolver = createResourceResolver(new MockResourceResolverFactoryOptions());
+
+        List<String> paths = findEvenPaths(resourceResolver, "/content");
+        assertEquals(20 * 5, paths.size());
+        assertEquals("/content/page0/child0", paths.get(0));
+        assertEquals("/content/page0/uncommitted", paths.get(paths.size() - 1));
+        assertEquals(List.of("/content/page2/child0", "/content/page2/child2"), paths.subList(9, 11));
+
+        assertEquals(List.of("/content/page3/child4"), findEvenPaths(resourceResolver, "/content/page3/child4"));
+        assertEquals(List.of(), findEvenPaths(resourceResolver, "/content/page3/child5"));
+        assertEquals(List.of(), findEvenPaths(resourceResolver, "/non-existing"));
+    }
+
+    @Test
+    public void testParallelTraversalKeepsOrder() throws Exception {
+        ResourceResolver sequentialResolver = createResourceResolver(new MockResourceResolverFactoryOptions());
+        ResourceResolver parallelResolver = createResourceResolver(new MockResourceResolverFactoryOptions()
+                .setTraversalParallelism(4)
+                .setParallelTraversalThreshold(10));
+
+        assertEquals(findEvenPaths(sequentialResolver, "/"), findEvenPaths(parallelResolver, "/"));
+        assertEquals(findEvenPaths(sequentialResolver, "/content"), findEvenPaths(parallelResolver, "/content"));
+    }
+
+    @Test
+    public void testParallelTraversalOfDiskStore() throws Exception {
+        ResourceResolver sequentialResolver = createResourceResolver(new MockResourceResolverFactoryOptions()
+                .setDiskStoreDirectory(folder.newFolder().toPath())
+                .setDiskStoreMemtableSize(4 * 1024));
+        ResourceResolver parallelResolver = createResourceResolver(new MockResourceResolverFactoryOptions()
+                .setDiskStoreDirectory(folder.newFolder().toPath())
+                .setDiskStoreMemtableSize(4 * 1024)
+                .setTraversalParallelism(4)
+                .setParallelTraversalThreshold(10));
+
+        List<String> paths = findEvenPaths(sequentialResolver, "/content");
+        assertEquals(20 * 5, paths.size());
+        assertEquals(paths, findEvenPaths(parallelResolver, "/content"));
+        assertEquals(findEvenPaths(sequentialResolver, "/"), findEvenPaths(parallelResolver, "/"));
+        assertEquals(List.of("/content/page3/child4"), findEvenPaths(parallelResolver, "/content/page3/child4"));
+    }
+
+    @Test
+    public void testTraversalPoolShutDownWithFactory() throws Exception {
+        MockResourceResolverFactoryOptions options = new MockResourceResolverFactoryOptions()
+                .setTraversalParallelism(2)
+                .setParallelTraversalThreshold(10);
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(options);
+        ResourceResolver resourceResolver = factory.getResourceResolver(null);
+        Resource content = resourceResolver.create(resourceResolver.getResource("/"), "content", null);
+        for (int i = 0; i < 20; i++) {
+            resourceResolver.create(content, "page" + i, Map.of("even", i % 2 == 0));
+        }
+        assertEquals(10, findEvenPaths(resourceResolver, "/content").size());
+        ForkJoinPool pool = options.getTraversalPoolIfCreated();
+        assertNotNull(pool);
+
+        factory.shutdown();
+        assertTrue(pool.isShutdown());
+        assertNull(options.getTraversalPoolIfCreated());
+    }
+
+    @Test
+    public void testInFindResourcesHandler() throws Exception {
+        ResourceResolver resourceResolver = createResourceResolver(new MockResourceResolverFactoryOptions()
+                .setTraversalParallelism(2)
+                .setParallelTraversalThreshold(10));
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver,
+                (query, language) -> MockFindQueryResources.findResourcesByTraversal(
+                        resourceResolver, "/content/page5", resource -> resource.getValueMap()
+                                .containsKey("index")));
+
+        Iterator<Resource> result = resourceResolver.findResources("any-query", JCR_SQL2);
+        int count = 0;
+        while (result.hasNext()) {
+            result.next();
+            count++;
+        }
+        assertEquals(11, count);
+    }
+}
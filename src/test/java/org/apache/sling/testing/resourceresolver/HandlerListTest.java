@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the copy-on-write handler list and the handler index derived from it.
+ */
+@SuppressWarnings("null")
+public class HandlerListTest {
+
+    @Test
+    public void testRemoveElements() {
+        HandlerList<String> list = new HandlerList<>();
+        list.addAll(List.of("a", "b", "c", "d"));
+        int version = list.snapshot().getVersion();
+
+        assertTrue(list.remove("b"));
+        assertFalse(list.remove("x"));
+        assertEquals(List.of("a", "c", "d"), list);
+
+        assertTrue(list.removeAll(List.of("a", "x")));
+        assertFalse(list.removeAll(List.of("x")));
+        assertEquals(List.of("c", "d"), list);
+
+        assertTrue(list.retainAll(List.of("d")));
+        assertFalse(list.retainAll(List.of("d")));
+        assertEquals(List.of("d"), list);
+        assertTrue(list.snapshot().getVersion() > version);
+    }
+
+    @Test
+    public void testIteratorIsSnapshot() {
+        HandlerList<String> list = new HandlerList<>();
+        list.addAll(List.of("a", "b"));
+        Iterator<String> iterator = list.iterator();
+        list.remove("a");
+        assertEquals("a", iterator.next());
+        assertEquals("b", iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testIndexLookup() {
+        Object unscoped = new Object();
+        Object sql2Literal = scope(List.of("sql2"), MockQueryPattern.literal("q1"));
+        Object anyRegex = scope(List.of(), MockQueryPattern.regex("q\\d"), MockQueryPattern.regex("q1.*"));
+        QueryHandlerIndex index = new QueryHandlerIndex(new Object[] {sql2Literal, unscoped, anyRegex});
+
+        assertArrayEquals(new int[] {0, 1, 2}, index.lookup("q1", "sql2"));
+        assertArrayEquals(new int[] {1, 2}, index.lookup("q1", "xpath"));
+        assertArrayEquals(new int[] {1, 2}, index.lookup("q2", "sql2"));
+        assertArrayEquals(new int[] {1}, index.lookup("x", "sql2"));
+        assertArrayEquals(new int[] {1}, index.lookup("x", null));
+        // lookups without regex match return the precomputed arrays
+        assertSame(index.lookup("x", "sql2"), index.lookup("y", "sql2"));
+    }
+
+    private static MockQueryHandlerScope scope(List<String> languages, MockQueryPattern... patterns) {
+        return new MockQueryHandlerScope() {
+            @Override
+            public List<String> getLanguages() {
+                return languages;
+            }
+
+            @Override
+            public List<MockQueryPattern> getQueryPatterns() {
+                return List.of(patterns);
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests Java Flight Recorder events emitted by the mock resource resolver.
+ */
+@SuppressWarnings("null")
+public class JfrEventsTest {
+
+    private static final String PREFIX = "org.apache.sling.testing.resourceresolver.";
+
+    @Test
+    public void testEvents() throws Exception {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(PREFIX + "ResourceLookup");
+            recording.enable(PREFIX + "ListChildren");
+            recording.enable(PREFIX + "Commit");
+            recording.enable(PREFIX + "CopyMove");
+            recording.enable(PREFIX + "QueryDispatch");
+            recording.start();
+
+            ResourceResolver resolver = new MockResourceResolverFactory().getResourceResolver(null);
+            Resource root = resolver.getResource("/");
+            Resource content = resolver.create(root, "content", Map.of("prop1", "value1"));
+            resolver.create(root, "target", null);
+            resolver.commit();
+            resolver.listChildren(content);
+            resolver.getResource("/non-existing");
+            resolver.copy("/content", "/target");
+            resolver.findResources("query1", "lang1");
+
+            recording.stop();
+            Path file = Files.createTempFile("resourceresolver-mock", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file).stream()
+                        .filter(event -> event.getEventType().getName().startsWith(PREFIX))
+                        .collect(Collectors.toList());
+            } finally {
+                Files.delete(file);
+            }
+        }
+
+        List<RecordedEvent> lookups = eventsOfType(events, "ResourceLookup");
+        assertTrue(
+                lookups.stream().anyMatch(event -> "/".equals(event.getString("path")) && event.getBoolean("found")));
+        assertTrue(lookups.stream()
+                .anyMatch(event -> "/non-existing".equals(event.getString("path")) && !event.getBoolean("found")));
+
+        RecordedEvent listChildren = eventsOfType(events, "ListChildren").get(0);
+        assertEquals("/content", listChildren.getString("path"));
+        assertEquals(0, listChildren.getInt("childCount"));
+
+        RecordedEvent commit = eventsOfType(events, "Commit").get(0);
+        assertEquals(2, commit.getInt("changes"));
+        assertEquals(0, commit.getInt("events"));
+
+        RecordedEvent copy = eventsOfType(events, "CopyMove").get(0);
+        assertEquals("copy", copy.getString("operation"));
+        assertEquals("/content", copy.getString("sourcePath"));
+        assertEquals("/target", copy.getString("destinationPath"));
+
+        RecordedEvent query = eventsOfType(events, "QueryDispatch").get(0);
+        assertEquals("query1", query.getString("query"));
+        assertEquals("lang1", query.getString("language"));
+        assertFalse(query.getStackTrace().getFrames().isEmpty());
+    }
+
+    @Test
+    public void testDisabledWithoutRecording() {
+        assertFalse(JfrEvents.isResourceLookupEnabled());
+        assertFalse(JfrEvents.isListChildrenEnabled());
+        assertFalse(JfrEvents.isCommitEnabled());
+        assertFalse(JfrEvents.isCopyMoveEnabled());
+        assertFalse(JfrEvents.isQueryDispatchEnabled());
+    }
+
+    private static List<RecordedEvent> eventsOfType(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(PREFIX + name))
+                .collect(Collectors.toList());
+    }
+}
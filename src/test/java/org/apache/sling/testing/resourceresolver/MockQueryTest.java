@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.junit.Test;
+
+import static javax.jcr.query.Query.JCR_SQL2;
+import static javax.jcr.query.Query.XPATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests parsing of paging information and paged find resources handlers.
+ */
+@SuppressWarnings({"null", "deprecation"})
+public class MockQueryTest {
+
+    @Test
+    public void testNoPaging() {
+        MockQuery query = new MockQuery("SELECT * FROM [nt:base] AS s", JCR_SQL2);
+        assertEquals("SELECT * FROM [nt:base] AS s", query.getStatement());
+        assertEquals(0, query.getOffset());
+        assertEquals(MockQuery.NO_LIMIT, query.getLimit());
+        assertEquals(List.of(), query.getOrderings());
+        assertFalse(query.isPaged());
+    }
+
+    @Test
+    public void testLimitOffset() {
+        MockQuery query = new MockQuery(
+                "SELECT * FROM [nt:base] AS s ORDER BY s.[jcr:title] DESC, s.[jcr:created] LIMIT 10 OFFSET 20",
+                JCR_SQL2);
+        assertEquals("SELECT * FROM [nt:base] AS s ORDER BY s.[jcr:title] DESC, s.[jcr:created]", query.getStatement());
+        assertEquals(20, query.getOffset());
+        assertEquals(10, query.getLimit());
+        assertEquals(List.of("s.[jcr:title] DESC", "s.[jcr:created]"), query.getOrderings());
+        assertTrue(query.isPaged());
+    }
+
+    @Test
+    public void testOakOption() {
+        MockQuery query = new MockQuery("SELECT * FROM [nt:base] OPTION(TRAVERSAL OK, OFFSET 5, LIMIT 3)", JCR_SQL2);
+        assertEquals("SELECT * FROM [nt:base] OPTION(TRAVERSAL OK)", query.getStatement());
+        assertEquals(5, query.getOffset());
+        assertEquals(3, query.getLimit());
+    }
+
+    @Test
+    public void testOrderByWithOakOption() {
+        MockQuery query = new MockQuery(
+                "SELECT * FROM [nt:base] AS s ORDER BY s.[jcr:title] DESC OPTION(TRAVERSAL OK, LIMIT 5)", JCR_SQL2);
+        assertEquals(List.of("s.[jcr:title] DESC"), query.getOrderings());
+        assertEquals(5, query.getLimit());
+    }
+
+    @Test
+    public void testOverlongLimitOffset() {
+        MockQuery query = new MockQuery(
+                "SELECT * FROM [nt:base] AS s LIMIT 99999999999999999999 OFFSET 99999999999999999999", JCR_SQL2);
+        assertEquals(Long.MAX_VALUE, query.getLimit());
+        assertEquals(Long.MAX_VALUE, query.getOffset());
+        assertFalse(query.page(List.of("a", "b").iterator()).hasNext());
+    }
+
+    @Test
+    public void testOtherLanguageNotParsed() {
+        MockQuery query = new MockQuery("//element(*, nt:base) LIMIT 10", XPATH);
+        assertEquals("//element(*, nt:base) LIMIT 10", query.getStatement());
+        assertFalse(query.isPaged());
+    }
+
+    @Test
+    public void testPageIsLazy() {
+        AtomicInteger fetched = new AtomicInteger();
+        Iterator<Integer> items = IntStream.range(0, 100_000)
+                .peek(i -> fetched.incrementAndGet())
+                .boxed()
+                .iterator();
+        MockQuery query = new MockQuery("SELECT * FROM [nt:base] LIMIT 3 OFFSET 10", JCR_SQL2);
+
+        List<Integer> page = new ArrayList<>();
+        query.page(items).forEachRemaining(page::add);
+        assertEquals(List.of(10, 11, 12), page);
+        assertTrue(fetched.get() <= 14);
+    }
+
+    @Test
+    public void testPagedFindResourcesHandler() throws Exception {
+        ResourceResolver resourceResolver = new MockResourceResolverFactory().getResourceResolver(null);
+        AtomicInteger created = new AtomicInteger();
+        MockPagedFindResourcesHandler handler = query -> query.page(IntStream.range(0, 100_000)
+                .mapToObj(i -> {
+                    created.incrementAndGet();
+                    return (Resource) new SyntheticResource(resourceResolver, "/hit" + i, "nt:unstructured");
+                })
+                .iterator());
+        MockFindQueryResources.addFindResourceHandler(resourceResolver, handler);
+
+        Iterator<Resource> result =
+                resourceResolver.findResources("SELECT * FROM [nt:base] LIMIT 2 OFFSET 50", JCR_SQL2);
+        assertEquals("/hit50", result.next().getPath());
+        assertEquals("/hit51", result.next().getPath());
+        assertFalse(result.hasNext());
+        assertTrue(created.get() <= 53);
+    }
+
+    @Test
+    public void testPlainHandlerGetsOriginalQuery() throws Exception {
+        ResourceResolver resourceResolver = new MockResourceResolverFactory().getResourceResolver(null);
+        String statement = "SELECT * FROM [nt:base] LIMIT 1";
+        Resource resource = new SyntheticResource(resourceResolver, "/hit", "nt:unstructured");
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver,
+                (query, language) ->
+                        statement.equals(query) ? List.of(resource, resource).iterator() : null);
+
+        Iterator<Resource> result = resourceResolver.findResources(statement, JCR_SQL2);
+        result.next();
+        assertTrue(result.hasNext());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the cache of missing paths in {@link MockResourceResolver}.
+ */
+@SuppressWarnings("null")
+public class NegativeLookupCacheTest {
+
+    private MockResourceResolverFactory factory;
+    private MockResourceResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new MockResourceResolverFactory();
+        resolver = (MockResourceResolver) factory.getResourceResolver(null);
+        Resource content = resolver.create(resolver.getResource("/"), "content", ValueMap.EMPTY);
+        resolver.create(content, "page", Map.of("jcr:title", "Title"));
+        resolver.commit();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        assertNull(resolver.getResource("/content/missing"));
+        assertNull(resolver.getResource("/content/missing"));
+        assertNull(resolver.getResource("/content/missing"));
+        assertNull(resolver.getResource("missing/template"));
+        assertNull(resolver.getResource("missing/template"));
+        assertNotNull(resolver.getResource("/content/page"));
+        assertEquals(3, resolver.getNegativeLookupCacheHits());
+        assertEquals(2, resolver.getNegativeLookupCacheMisses());
+    }
+
+    @Test
+    public void testInvalidatedByCreate() throws Exception {
+        assertNull(resolver.getResource("/content/page/child"));
+        resolver.create(resolver.getResource("/content/page"), "child", ValueMap.EMPTY);
+        assertNotNull(resolver.getResource("/content/page/child"));
+        resolver.revert();
+        assertNull(resolver.getResource("/content/page/child"));
+    }
+
+    @Test
+    public void testInvalidatedByPropertyChange() {
+        assertNull(resolver.getResource("/content/page/prop"));
+        resolver.getResource("/content/page").adaptTo(ModifiableValueMap.class).put("prop", "value");
+        assertEquals("value", resolver.getResource("/content/page/prop").adaptTo(String.class));
+    }
+
+    @Test
+    public void testInvalidatedByCommitOfOtherResolver() throws Exception {
+        assertNull(resolver.getResource("/content/page/child"));
+        ResourceResolver other = factory.getResourceResolver(null);
+        other.create(other.getResource("/content/page"), "child", ValueMap.EMPTY);
+        assertNull(resolver.getResource("/content/page/child"));
+        other.commit();
+        assertNotNull(resolver.getResource("/content/page/child"));
+    }
+
+    @Test
+    public void testRefresh() {
+        assertNull(resolver.getResource("/content/missing"));
+        resolver.refresh();
+        assertNull(resolver.getResource("/content/missing"));
+        assertEquals(0, resolver.getNegativeLookupCacheHits());
+        assertEquals(2, resolver.getNegativeLookupCacheMisses());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        NegativeLookupCache cache = new NegativeLookupCache(2);
+        cache.addMissing("/a", 1);
+        cache.addMissing("/b", 1);
+        cache.isMissing("/a", 1);
+        cache.addMissing("/c", 1);
+        assertEquals(2, cache.size());
+        assertFalse(cache.isMissing("/b", 1));
+        assertTrue(cache.isMissing("/a", 1));
+        assertFalse(cache.isMissing("/a", 2));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        MockResourceResolverFactory smallCacheFactory =
+                new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setNegativeLookupCacheSize(8));
+        MockResourceResolver shared = (MockResourceResolver) smallCacheFactory.getResourceResolver(null);
+        Resource content = shared.create(shared.getResource("/"), "content", ValueMap.EMPTY);
+        shared.create(content, "page", Map.of("jcr:title", "Title"));
+        shared.commit();
+
+        int threads = 4;
+        int lookups = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < lookups; i++) {
+                        // more distinct missing paths than cache entries, so entries are evicted concurrently
+                        assertNull(shared.getResource("/content/missing" + (i % 32)));
+                        assertNull(shared.getResource("/content/page/missing" + (i % 32)));
+                        assertNotNull(shared.getResource("/content/page"));
+                        assertNotNull(shared.getResource("/content/page/jcr:title"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(
+                2L * threads * lookups, shared.getNegativeLookupCacheHits() + shared.getNegativeLookupCacheMisses());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        MockResourceResolver uncached = (MockResourceResolver)
+                new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setNegativeLookupCacheSize(0))
+                        .getResourceResolver(null);
+        assertNull(uncached.getResource("/content/missing"));
+        assertNull(uncached.getResource("/content/missing"));
+        assertEquals(0, uncached.getNegativeLookupCacheHits());
+    }
+}
@@ -21,6 +21,9 @@ package org.apache.sling.testing.resourceresolver;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
@@ -37,7 +40,9 @@ import static org.apache.sling.testing.resourceresolver.MockResource.JCR_PRIMARY
 import static org.apache.sling.testing.resourceresolver.MockResource.NT_FILE;
 import static org.apache.sling.testing.resourceresolver.MockResource.NT_RESOURCE;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Implements simple write and read resource and values test.
@@ -94,4 +99,42 @@ public class NtFileResourceTest {
         assertArrayEquals(BINARY_VALUE, IOUtils.toByteArray(is));
         is.close();
     }
+
+    @Test
+    public void testNtFileByteBuffer() throws IOException {
+        Resource file = resourceResolver.create(testRoot, "ntFile", Map.<String, Object>of(JCR_PRIMARYTYPE, NT_FILE));
+        resourceResolver.create(
+                file,
+                JCR_CONTENT,
+                Map.<String, Object>of(JCR_PRIMARYTYPE, NT_RESOURCE, JCR_DATA, new ByteArrayInputStream(BINARY_VALUE)));
+
+        Resource resource = resourceResolver.getResource(testRoot.getPath() + "/ntFile");
+        ByteBuffer buffer = resource.adaptTo(ByteBuffer.class);
+        assertNotNull(buffer);
+        assertTrue(buffer.isReadOnly());
+
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        assertArrayEquals(BINARY_VALUE, data);
+    }
+
+    @Test
+    public void testNtResourceChannel() throws IOException {
+        resourceResolver.create(
+                testRoot,
+                "ntResource",
+                Map.<String, Object>of(JCR_PRIMARYTYPE, NT_RESOURCE, JCR_DATA, new ByteArrayInputStream(BINARY_VALUE)));
+
+        Resource resource = resourceResolver.getResource(testRoot.getPath() + "/ntResource");
+        try (SeekableByteChannel channel = resource.adaptTo(SeekableByteChannel.class)) {
+            assertNotNull(channel);
+            assertEquals(BINARY_VALUE.length, channel.size());
+
+            channel.position(4);
+            ByteBuffer buffer = ByteBuffer.allocate(10);
+            assertEquals(2, channel.read(buffer));
+            assertArrayEquals(new byte[] {0x05, 0x06}, Arrays.copyOf(buffer.array(), buffer.position()));
+            assertEquals(-1, channel.read(buffer));
+        }
+    }
 }
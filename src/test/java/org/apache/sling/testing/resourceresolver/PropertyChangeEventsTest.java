@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests property-level change tracking and the changed attributes in resource changed events.
+ */
+@SuppressWarnings({"null", "deprecation"})
+public class PropertyChangeEventsTest {
+
+    private final List<Event> events = new ArrayList<>();
+    private MockResourceResolverFactory factory;
+    private ResourceResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        EventAdmin eventAdmin = mock(EventAdmin.class);
+        doAnswer(invocation -> events.add(invocation.getArgument(0)))
+                .when(eventAdmin)
+                .sendEvent(any(Event.class));
+        factory = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setEventAdmin(eventAdmin));
+        resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "content", Map.of("prop1", "value1", "prop2", "value2"));
+        resolver.commit();
+        events.clear();
+    }
+
+    @Test
+    public void testChangedAttributes() throws Exception {
+        ModifiableValueMap props = resolver.getResource("/content").adaptTo(ModifiableValueMap.class);
+        props.put("prop1", "new");
+        props.remove("prop2");
+        props.put("prop3", "added");
+        props.put("prop4", "transient");
+        props.remove("prop4");
+        resolver.commit();
+
+        Event event = singleEvent(SlingConstants.TOPIC_RESOURCE_CHANGED);
+        assertEquals("/content", event.getProperty(SlingConstants.PROPERTY_PATH));
+        assertArrayEquals(
+                new String[] {"prop3"}, (String[]) event.getProperty(SlingConstants.PROPERTY_ADDED_ATTRIBUTES));
+        assertArrayEquals(
+                new String[] {"prop1"}, (String[]) event.getProperty(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES));
+        assertArrayEquals(
+                new String[] {"prop2"}, (String[]) event.getProperty(SlingConstants.PROPERTY_REMOVED_ATTRIBUTES));
+    }
+
+    @Test
+    public void testPutAllAndClear() throws Exception {
+        ModifiableValueMap props = resolver.getResource("/content").adaptTo(ModifiableValueMap.class);
+        props.putAll(Map.of("prop1", "new", "prop5", "added"));
+        resolver.commit();
+        Event event = singleEvent(SlingConstants.TOPIC_RESOURCE_CHANGED);
+        assertArrayEquals(
+                new String[] {"prop5"}, (String[]) event.getProperty(SlingConstants.PROPERTY_ADDED_ATTRIBUTES));
+        assertArrayEquals(
+                new String[] {"prop1"}, (String[]) event.getProperty(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES));
+        assertNull(event.getProperty(SlingConstants.PROPERTY_REMOVED_ATTRIBUTES));
+
+        events.clear();
+        resolver.getResource("/content").adaptTo(ModifiableValueMap.class).clear();
+        resolver.commit();
+        event = singleEvent(SlingConstants.TOPIC_RESOURCE_CHANGED);
+        assertEquals(3, ((String[]) event.getProperty(SlingConstants.PROPERTY_REMOVED_ATTRIBUTES)).length);
+        assertNull(event.getProperty(SlingConstants.PROPERTY_ADDED_ATTRIBUTES));
+    }
+
+    @Test
+    public void testRevertDiscardsChanges() throws Exception {
+        resolver.getResource("/content").adaptTo(ModifiableValueMap.class).put("prop3", "added");
+        resolver.revert();
+        resolver.getResource("/content").adaptTo(ModifiableValueMap.class).put("prop1", "new");
+        resolver.commit();
+        Event event = singleEvent(SlingConstants.TOPIC_RESOURCE_CHANGED);
+        assertNull(event.getProperty(SlingConstants.PROPERTY_ADDED_ATTRIBUTES));
+        assertArrayEquals(
+                new String[] {"prop1"}, (String[]) event.getProperty(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES));
+    }
+
+    @Test
+    public void testAddedResourceHasNoChangedAttributes() throws Exception {
+        Resource child = resolver.create(resolver.getResource("/content"), "child", ValueMap.EMPTY);
+        child.adaptTo(ModifiableValueMap.class).put("prop1", "value1");
+        resolver.commit();
+        Event event = singleEvent(SlingConstants.TOPIC_RESOURCE_ADDED);
+        assertNull(event.getProperty(SlingConstants.PROPERTY_ADDED_ATTRIBUTES));
+        assertEquals(
+                "value1", resolver.getResource("/content/child").getValueMap().get("prop1"));
+    }
+
+    @Test
+    public void testStoredMapIsModifiedInPlace() throws Exception {
+        Map<String, Object> stored = storedProperties("/content");
+        resolver.getResource("/content").adaptTo(ModifiableValueMap.class).put("prop1", "new");
+        resolver.commit();
+        assertSame(stored, storedProperties("/content"));
+        assertEquals("new", resolver.getResource("/content").getValueMap().get("prop1"));
+        assertFalse(resolver.hasChanges());
+    }
+
+    @Test
+    public void testOnlyAddedPropertiesChangeVersion() throws Exception {
+        ModifiableValueMap props = resolver.getResource("/content").adaptTo(ModifiableValueMap.class);
+        long version = factory.getPropertiesVersion();
+        props.put("prop1", "new");
+        props.put("prop1", "newer");
+        props.remove("prop2");
+        assertEquals(version, factory.getPropertiesVersion());
+
+        assertNull(resolver.getResource("/content/prop3"));
+        props.put("prop3", "added");
+        assertEquals(version + 1, factory.getPropertiesVersion());
+        assertEquals("added", resolver.getResource("/content/prop3").adaptTo(String.class));
+    }
+
+    private Map<String, Object> storedProperties(String path) {
+        return ((MockResourceResolver) resolver).getStoredValueMap(path);
+    }
+
+    private Event singleEvent(String topic) {
+        assertEquals(1, events.size());
+        Event event = events.get(0);
+        assertEquals(topic, event.getTopic());
+        return event;
+    }
+}
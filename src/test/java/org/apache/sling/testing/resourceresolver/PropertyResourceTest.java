@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests resolving property resources via {@link MockResourceResolver#getResource(String)}.
+ */
+@SuppressWarnings("null")
+public class PropertyResourceTest {
+
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int ITERATIONS = 10000;
+
+    private ResourceResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new MockResourceResolverFactory().getResourceResolver(null);
+        createContent(resolver);
+    }
+
+    @Test
+    public void testPropertyResource() {
+        Resource property = resolver.getResource("/content/page/jcr:title");
+        assertTrue(property instanceof MockPropertyResource);
+        assertEquals("/content/page/jcr:title", property.getPath());
+        assertEquals("Title", property.adaptTo(String.class));
+        assertEquals("Title", resolver.getResource("/content/./page/jcr:title").adaptTo(String.class));
+        assertEquals("rep:root", resolver.getResource("/jcr:primaryType").adaptTo(String.class));
+    }
+
+    @Test
+    public void testMissingProperty() {
+        assertNull(resolver.getResource("/content/page/other"));
+        assertNull(resolver.getResource("/content/missing/jcr:title"));
+        assertNull(resolver.getResource("/other"));
+    }
+
+    @Test
+    public void testTransientChanges() throws Exception {
+        Resource page = resolver.getResource("/content/page");
+        resolver.create(page, "child", Map.of("prop", "value"));
+        assertEquals("value", resolver.getResource("/content/page/child/prop").adaptTo(String.class));
+
+        resolver.delete(page);
+        assertNull(resolver.getResource("/content/page/jcr:title"));
+    }
+
+    @Test
+    public void testCustomResourceFactory() throws Exception {
+        ResourceResolver customResolver = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                        .setMockResourceFactory(new DefaultMockResourceFactory() {}))
+                .getResourceResolver(null);
+        createContent(customResolver);
+        assertEquals(
+                "Title", customResolver.getResource("/content/page/jcr:title").adaptTo(String.class));
+        assertNull(customResolver.getResource("/content/page/other"));
+    }
+
+    @Test
+    public void testMissDoesNotAllocate() throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        // without negative lookup cache, so each lookup probes the store for node and property
+        ResourceResolver uncachedResolver = new MockResourceResolverFactory(
+                        new MockResourceResolverFactoryOptions().setNegativeLookupCacheSize(0))
+                .getResourceResolver(null);
+        createContent(uncachedResolver);
+        long threadId = Thread.currentThread().getId();
+        // warm-up, so the lookup is JIT compiled
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            lookupMissingProperty(uncachedResolver);
+        }
+        long allocatedBefore = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            lookupMissingProperty(uncachedResolver);
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        assertEquals(0, allocated);
+    }
+
+    private static void lookupMissingProperty(ResourceResolver resolver) {
+        if (resolver.getResource("/content/page/other") != null) {
+            throw new AssertionError("Property must not exist");
+        }
+    }
+
+    private static void createContent(ResourceResolver resolver) throws Exception {
+        Resource content = resolver.create(resolver.getResource("/"), "content", ValueMap.EMPTY);
+        resolver.create(content, "page", Map.of("jcr:title", "Title"));
+        resolver.commit();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import static javax.jcr.query.Query.JCR_SQL2;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests caching of find/query handler dispatching.
+ */
+@SuppressWarnings("null")
+public class QueryPlanCacheTest {
+
+    private MockResourceResolverFactoryOptions options;
+    private ResourceResolver resourceResolver;
+    private Resource resource1;
+
+    @Before
+    public void setUp() throws Exception {
+        options = new MockResourceResolverFactoryOptions().setQueryPlanCacheEnabled(true);
+        resourceResolver = new MockResourceResolverFactory(options).getResourceResolver(null);
+        resource1 = resourceResolver.create(resourceResolver.getResource("/"), "resource1", null);
+    }
+
+    @Test
+    public void testRepeatedQuerySkipsNonMatchingHandlers() {
+        AtomicInteger handler1Calls = new AtomicInteger();
+        AtomicInteger handler2Calls = new AtomicInteger();
+        MockFindQueryResources.addFindResourceHandler(resourceResolver, (query, language) -> {
+            handler1Calls.incrementAndGet();
+            return null;
+        });
+        MockFindQueryResources.addFindResourceHandler(resourceResolver, (query, language) -> {
+            handler2Calls.incrementAndGet();
+            return List.of(resource1).iterator();
+        });
+
+        for (int i = 0; i < 5; i++) {
+            Iterator<Resource> result = resourceResolver.findResources("q1", JCR_SQL2);
+            assertSame(resource1, result.next());
+        }
+        assertEquals(1, handler1Calls.get());
+        assertEquals(5, handler2Calls.get());
+    }
+
+    @Test
+    public void testNoMatchingHandlerIsNotCached() {
+        AtomicInteger handlerCalls = new AtomicInteger();
+        MockFindQueryResources.addQueryResourceHandler(resourceResolver, (query, language) -> {
+            handlerCalls.incrementAndGet();
+            return null;
+        });
+
+        assertFalse(resourceResolver.queryResources("q1", JCR_SQL2).hasNext());
+        assertFalse(resourceResolver.queryResources("q1", JCR_SQL2).hasNext());
+        assertEquals(2, handlerCalls.get());
+        assertEquals(0, options.getQueryResourcesPlanCache().size());
+    }
+
+    @Test
+    public void testStatefulHandlerStartsDeliveringResult() {
+        AtomicBoolean available = new AtomicBoolean();
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver,
+                (query, language) -> available.get() ? List.of(resource1).iterator() : null);
+
+        assertFalse(resourceResolver.findResources("q1", JCR_SQL2).hasNext());
+        available.set(true);
+        assertTrue(resourceResolver.findResources("q1", JCR_SQL2).hasNext());
+    }
+
+    @Test
+    public void testCacheInvalidatedOnHandlerChange() {
+        MockFindQueryResources.addFindResourceHandler(resourceResolver, (query, language) -> null);
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver, (query, language) -> List.of(resource1).iterator());
+        assertTrue(resourceResolver.findResources("q1", JCR_SQL2).hasNext());
+        assertEquals(1, options.getFindResourcesPlanCache().size());
+
+        options.getFindResourcesHandlers().clear();
+        assertFalse(resourceResolver.findResources("q1", JCR_SQL2).hasNext());
+    }
+
+    @Test
+    public void testCachedHandlerWithoutResultFallsBack() {
+        AtomicInteger handler1Calls = new AtomicInteger();
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver,
+                (query, language) -> handler1Calls.incrementAndGet() == 1
+                        ? List.of(resource1).iterator()
+                        : null);
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver, (query, language) -> List.<Resource>of().iterator());
+
+        assertTrue(resourceResolver.findResources("q1", JCR_SQL2).hasNext());
+        assertFalse(resourceResolver.findResources("q1", JCR_SQL2).hasNext());
+    }
+
+    @Test
+    public void testPagedHandlerRegisteredAfterCachingIsUsed() {
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver, (query, language) -> List.of(resource1).iterator());
+        String query = "SELECT * FROM [nt:base] LIMIT 10";
+        assertTrue(resourceResolver.findResources(query, JCR_SQL2).hasNext());
+        assertEquals(1, options.getFindResourcesPlanCache().size());
+
+        AtomicInteger limit = new AtomicInteger();
+        options.getFindResourcesHandlers().add(0, (MockPagedFindResourcesHandler) pagedQuery -> {
+            limit.set((int) pagedQuery.getLimit());
+            return List.<Resource>of().iterator();
+        });
+        assertFalse(resourceResolver.findResources(query, JCR_SQL2).hasNext());
+        assertEquals(10, limit.get());
+        assertFalse(resourceResolver.findResources(query, JCR_SQL2).hasNext());
+        assertEquals(1, options.getFindResourcesPlanCache().size());
+    }
+}
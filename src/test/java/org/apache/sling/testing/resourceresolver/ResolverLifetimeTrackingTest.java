@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.List;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests tracking of open resource resolvers.
+ */
+@SuppressWarnings("null")
+public class ResolverLifetimeTrackingTest {
+
+    @Test
+    public void testTrackingDisabledByDefault() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory();
+        factory.getResourceResolver(null);
+        assertEquals(0, factory.getOpenResourceResolverCount());
+        assertTrue(factory.getOpenResourceResolvers().isEmpty());
+        factory.shutdown();
+    }
+
+    @Test
+    public void testOpenResolvers() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(
+                new MockResourceResolverFactoryOptions().setResolverTrackingEnabled(true));
+
+        ResourceResolver resolver1 = factory.getResourceResolver(null);
+        ResourceResolver resolver2 = factory.getServiceResourceResolver(null);
+        ResourceResolver resolver3 = factory.getAdministrativeResourceResolver(null);
+        assertEquals(3, factory.getOpenResourceResolverCount());
+
+        resolver2.close();
+        List<OpenResourceResolver> open = factory.getOpenResourceResolvers();
+        assertEquals(2, open.size());
+        assertSame(resolver1, open.get(0).getResourceResolver());
+        assertSame(resolver3, open.get(1).getResourceResolver());
+
+        resolver1.close();
+        resolver3.close();
+        assertEquals(0, factory.getOpenResourceResolverCount());
+        factory.shutdown();
+    }
+
+    @Test
+    public void testCreationStackSampling() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                .setResolverTrackingEnabled(true)
+                .setResolverTrackingStackSampling(2));
+
+        factory.getResourceResolver(null);
+        factory.getResourceResolver(null);
+        List<OpenResourceResolver> open = factory.getOpenResourceResolvers();
+        assertNull(open.get(0).getCreationStackTrace());
+        StackTraceElement[] stackTrace = open.get(1).getCreationStackTrace();
+        assertNotNull(stackTrace);
+        assertTrue(List.of(stackTrace).stream()
+                .anyMatch(element -> "testCreationStackSampling".equals(element.getMethodName())));
+    }
+
+    @Test
+    public void testShutdownWarnOnLeak() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(
+                new MockResourceResolverFactoryOptions().setResolverTrackingEnabled(true));
+        factory.getResourceResolver(null);
+        factory.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testShutdownFailOnLeak() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                .setResolverTrackingEnabled(true)
+                .setResolverTrackingFailOnLeak(true));
+        factory.getResourceResolver(null);
+        factory.shutdown();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sling.api.adapter.AdapterManager;
+import org.apache.sling.api.adapter.SlingAdaptable;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests pooling of service/administrative resource resolvers.
+ */
+@SuppressWarnings("null")
+public class ResolverPoolTest {
+
+    @Test
+    public void testPoolingDisabledByDefault() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory();
+        ResourceResolver resolver1 = factory.getServiceResourceResolver(null);
+        resolver1.close();
+        ResourceResolver resolver2 = factory.getServiceResourceResolver(null);
+        assertNotSame(resolver1, resolver2);
+        assertEquals(0, factory.getResolverPoolHits());
+        assertEquals(0, factory.getResolverPoolMisses());
+    }
+
+    @Test
+    public void testRecycleResolver() throws Exception {
+        MockResourceResolverFactory factory =
+                new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setResolverPoolSize(2));
+
+        ResourceResolver resolver1 = factory.getServiceResourceResolver(null);
+        resolver1.create(resolver1.getResource("/"), "uncommitted", Map.of());
+        AtomicBoolean closeableClosed = new AtomicBoolean();
+        resolver1.getPropertyMap().put("closeable", (Closeable) () -> closeableClosed.set(true));
+        resolver1.close();
+        assertTrue(closeableClosed.get());
+
+        ResourceResolver resolver2 = factory.getAdministrativeResourceResolver(null);
+        assertSame(resolver1, resolver2);
+        assertNull(resolver2.getResource("/uncommitted"));
+        assertFalse(resolver2.hasChanges());
+        assertTrue(resolver2.getPropertyMap().isEmpty());
+
+        assertEquals(1, factory.getResolverPoolHits());
+        assertEquals(1, factory.getResolverPoolMisses());
+    }
+
+    @Test
+    public void testIsLive() throws Exception {
+        MockResourceResolverFactory factory =
+                new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setResolverPoolSize(2));
+
+        ResourceResolver resolver1 = factory.getServiceResourceResolver(null);
+        assertTrue(resolver1.isLive());
+        resolver1.close();
+        assertFalse(resolver1.isLive());
+
+        ResourceResolver resolver2 = factory.getServiceResourceResolver(null);
+        assertSame(resolver1, resolver2);
+        assertTrue(resolver2.isLive());
+    }
+
+    @Test
+    public void testAdaptedResolverNotPooled() throws Exception {
+        MockResourceResolverFactory factory =
+                new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setResolverPoolSize(2));
+        AdapterManager adapterManager = new AdapterManager() {
+            @Override
+            public <AdapterType> AdapterType getAdapter(Object adaptable, Class<AdapterType> type) {
+                return type == StringBuilder.class ? type.cast(new StringBuilder()) : null;
+            }
+        };
+        SlingAdaptable.setAdapterManager(adapterManager);
+        try {
+            ResourceResolver resolver1 = factory.getServiceResourceResolver(null);
+            StringBuilder adapter1 = resolver1.adaptTo(StringBuilder.class);
+            assertSame(adapter1, resolver1.adaptTo(StringBuilder.class));
+            resolver1.close();
+
+            ResourceResolver resolver2 = factory.getServiceResourceResolver(null);
+            assertNotSame(resolver1, resolver2);
+            assertNotSame(adapter1, resolver2.adaptTo(StringBuilder.class));
+
+            // resolvers without cached adapters are pooled
+            ResourceResolver resolver3 = factory.getServiceResourceResolver(null);
+            assertNull(resolver3.adaptTo(Integer.class));
+            resolver3.close();
+            assertSame(resolver3, factory.getServiceResourceResolver(null));
+        } finally {
+            SlingAdaptable.unsetAdapterManager(adapterManager);
+        }
+    }
+
+    @Test
+    public void testDoubleCloseReleasesOnce() throws Exception {
+        MockResourceResolverFactory factory =
+                new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setResolverPoolSize(2));
+
+        ResourceResolver resolver = factory.getServiceResourceResolver(null);
+        resolver.close();
+        resolver.close();
+
+        ResourceResolver resolver1 = factory.getServiceResourceResolver(null);
+        ResourceResolver resolver2 = factory.getServiceResourceResolver(null);
+        assertSame(resolver, resolver1);
+        assertNotSame(resolver1, resolver2);
+    }
+
+    @Test
+    public void testMaxIdle() throws Exception {
+        ResolverPool pool = new ResolverPool(1);
+        MockResourceResolverFactory factory = new MockResourceResolverFactory();
+        pool.release(new MockResourceResolver(new MockResourceResolverFactoryOptions(), factory, Map.of()));
+        pool.release(new MockResourceResolver(new MockResourceResolverFactoryOptions(), factory, Map.of()));
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testCommittedChangesAreKept() throws Exception {
+        MockResourceResolverFactory factory =
+                new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setResolverPoolSize(1));
+        try (ResourceResolver resolver = factory.getServiceResourceResolver(null)) {
+            resolver.create(resolver.getResource("/"), "committed", Map.of());
+            resolver.commit();
+        }
+        try (ResourceResolver resolver = factory.getServiceResourceResolver(null)) {
+            assertNotNull(resolver.getResource("/committed"));
+        }
+    }
+}
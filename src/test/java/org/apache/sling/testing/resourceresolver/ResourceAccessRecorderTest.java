@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests recording repository accesses and detecting inefficient access patterns.
+ */
+@SuppressWarnings("null")
+public class ResourceAccessRecorderTest {
+
+    private MockResourceResolver resolver;
+    private ResourceAccessRecorder recorder;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = (MockResourceResolver) new MockResourceResolverFactory().getResourceResolver(null);
+        Resource root = resolver.getResource("/");
+        Resource apps = resolver.create(root, "apps", null);
+        Resource app = resolver.create(apps, "app", null);
+        resolver.create(app, "base", null);
+        resolver.create(app, "component", Map.of(ResourceResolver.PROPERTY_RESOURCE_SUPER_TYPE, "app/base"));
+        Resource content = resolver.create(root, "content", null);
+        for (int i = 0; i < 3; i++) {
+            resolver.create(content, "child" + i, Map.of(ResourceResolver.PROPERTY_RESOURCE_TYPE, "app/component"));
+        }
+        resolver.commit();
+
+        recorder = new ResourceAccessRecorder();
+        resolver.setAccessRecorder(recorder);
+    }
+
+    @Test
+    public void testNoFindings() {
+        Resource content = resolver.getResource("/content");
+        Iterator<Resource> children = resolver.listChildren(content);
+        while (children.hasNext()) {
+            children.next().getValueMap();
+        }
+        assertEquals(Collections.emptyList(), recorder.getFindings());
+        assertEquals(1, recorder.getAccessCount(ResourceAccessRecorder.AccessType.GET_RESOURCE));
+        assertEquals(1, recorder.getAccessCount(ResourceAccessRecorder.AccessType.LIST_CHILDREN));
+    }
+
+    @Test
+    public void testRepeatedLookups() {
+        resolver.getResource("/content");
+        resolver.getResource("/content");
+        resolver.getResource("/content/child0");
+
+        assertEquals(
+                Map.of("/content", 2), recorder.getRepeatedAccesses(ResourceAccessRecorder.AccessType.GET_RESOURCE));
+        assertEquals(1, recorder.getFindings().size());
+    }
+
+    @Test
+    public void testNPlusOneLookup() {
+        Resource content = resolver.getResource("/content");
+        Iterator<Resource> children = content.listChildren();
+        while (children.hasNext()) {
+            content.getChild(children.next().getName());
+        }
+
+        Map<String, Integer> nPlusOne = recorder.getNPlusOneLookups();
+        assertEquals(1, nPlusOne.size());
+        String key = nPlusOne.keySet().iterator().next();
+        assertTrue(
+                key,
+                key.startsWith("/content at " + ResourceAccessRecorderTest.class.getName() + ".testNPlusOneLookup"));
+        assertEquals(3, (int) nPlusOne.get(key));
+    }
+
+    @Test
+    public void testRepeatedResourceTypeWalks() {
+        Resource child = resolver.getResource("/content/child0");
+        assertTrue(resolver.isResourceType(child, "app/base"));
+        assertTrue(resolver.isResourceType(child, "app/base"));
+
+        assertEquals(
+                Map.of("/content/child0 [app/base]", 2),
+                recorder.getRepeatedAccesses(ResourceAccessRecorder.AccessType.IS_RESOURCE_TYPE));
+        // lookups of the resource type hierarchy are not recorded separately
+        assertEquals(1, recorder.getAccessCount(ResourceAccessRecorder.AccessType.GET_RESOURCE));
+    }
+
+    @Test
+    public void testCallSite() {
+        resolver.getResource("/content");
+        String callSite = recorder.getAccesses().get(0).getCallSite();
+        assertTrue(callSite, callSite.startsWith(ResourceAccessRecorderTest.class.getName() + ".testCallSite"));
+    }
+
+    @Test
+    public void testCallSiteOfMethodReference() {
+        Stream.of("/content").map(resolver::getResource).forEach(Objects::requireNonNull);
+        String callSite = recorder.getAccesses().get(0).getCallSite();
+        assertTrue(
+                callSite,
+                callSite.startsWith(ResourceAccessRecorderTest.class.getName() + ".testCallSiteOfMethodReference"));
+    }
+
+    @Test
+    public void testReset() {
+        resolver.getResource("/content");
+        resolver.getResource("/content");
+        recorder.reset();
+        assertTrue(recorder.getAccesses().isEmpty());
+        assertTrue(recorder.getFindings().isEmpty());
+    }
+}
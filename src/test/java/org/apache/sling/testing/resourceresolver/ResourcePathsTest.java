@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import org.apache.sling.api.resource.ResourceUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ResourcePaths}.
+ */
+@SuppressWarnings("null")
+public class ResourcePathsTest {
+
+    private static final String[] PATHS = {
+        "/",
+        "/content",
+        "/content/page/jcr:content",
+        "/content/page.html",
+        "/content/.hidden",
+        "/content/..hidden",
+        "/content/...",
+        "content/page",
+        "page",
+        "",
+        "//",
+        "/content//page",
+        "/content/",
+        "/content/./page",
+        "/content/page/.",
+        "/content/page/..",
+        "/content/../page",
+        "/..",
+        "/../content",
+        "./page",
+        "../page",
+        "content/.."
+    };
+
+    @Test
+    public void testIsCanonical() {
+        assertTrue(ResourcePaths.isCanonical("/"));
+        assertTrue(ResourcePaths.isCanonical("/content/page/jcr:content"));
+        assertTrue(ResourcePaths.isCanonical("/content/.hidden"));
+        assertTrue(ResourcePaths.isCanonical("content/page"));
+        assertFalse(ResourcePaths.isCanonical(""));
+        assertFalse(ResourcePaths.isCanonical("/content/"));
+        assertFalse(ResourcePaths.isCanonical("/content//page"));
+        assertFalse(ResourcePaths.isCanonical("/content/./page"));
+        assertFalse(ResourcePaths.isCanonical("/content/page/.."));
+        assertFalse(ResourcePaths.isCanonical("../page"));
+    }
+
+    @Test
+    public void testCanonicalPathIsReturnedUnchanged() {
+        String path = "/content/page/jcr:content";
+        assertSame(path, ResourcePaths.normalize(path));
+    }
+
+    @Test
+    public void testSameResultAsResourceUtil() {
+        for (String path : PATHS) {
+            assertEquals(path, ResourceUtil.normalize(path), ResourcePaths.normalize(path));
+        }
+    }
+}
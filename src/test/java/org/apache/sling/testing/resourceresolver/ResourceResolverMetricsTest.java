@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.EventAdmin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests collecting resource resolver metrics.
+ */
+@SuppressWarnings({"null", "deprecation"})
+public class ResourceResolverMetricsTest {
+
+    private CountingMockResourceResolverMetrics metrics;
+    private ResourceResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new CountingMockResourceResolverMetrics();
+        MockResourceResolverFactoryOptions options = new MockResourceResolverFactoryOptions()
+                .setEventAdmin(mock(EventAdmin.class))
+                .setMetrics(metrics);
+        resolver = new MockResourceResolverFactory(options).getResourceResolver(null);
+
+        Resource root = resolver.getResource("/");
+        Resource content = resolver.create(root, "content", Map.of("prop1", "value1"));
+        resolver.create(content, "child1", null);
+        resolver.create(content, "child2", null);
+        Resource apps = resolver.create(root, "apps", null);
+        resolver.create(apps, "component1", null);
+        resolver.commit();
+        metrics.reset();
+    }
+
+    @Test
+    public void testGetResource() {
+        assertNotNull(resolver.getResource("/content"));
+        assertNull(resolver.getResource("/non-existing"));
+        assertNotNull(resolver.getResource("/content/prop1"));
+
+        CountingMockResourceResolverMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getResourceLookups());
+        assertEquals(2, snapshot.getResourceHits());
+        assertEquals(1, snapshot.getResourceMisses());
+        assertEquals(1, snapshot.getPropertyResourceFallbacks());
+    }
+
+    @Test
+    public void testSearchPath() {
+        assertNotNull(resolver.getResource("component1"));
+
+        CountingMockResourceResolverMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getResourceLookups());
+        assertEquals(1, snapshot.getSearchPathProbes());
+    }
+
+    @Test
+    public void testListChildren() {
+        resolver.listChildren(resolver.getResource("/content"));
+
+        CountingMockResourceResolverMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getListChildrenCalls());
+        assertEquals(2, snapshot.getListedChildren());
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        resolver.create(resolver.getResource("/content"), "child3", null);
+        resolver.delete(resolver.getResource("/content/child1"));
+        resolver.commit();
+
+        CountingMockResourceResolverMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCommits());
+        assertEquals(2, snapshot.getCommittedChanges());
+        assertEquals(2, snapshot.getEventsSent());
+    }
+
+    @Test
+    public void testQueryDispatch() {
+        MockFindQueryResources.addFindResourceHandler(resolver, (query, language) -> Collections.emptyIterator());
+        resolver.findResources("query1", "lang1");
+        resolver.queryResources("query2", "lang1");
+
+        assertEquals(2, metrics.snapshot().getQueryDispatches());
+    }
+
+    @Test
+    public void testReset() {
+        resolver.getResource("/content");
+        metrics.reset();
+        assertEquals(0, metrics.snapshot().getResourceLookups());
+    }
+
+    @Test
+    public void testNoOpByDefault() {
+        assertSame(MockResourceResolverMetrics.NO_OP, new MockResourceResolverFactoryOptions().getMetrics());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import static javax.jcr.query.Query.JCR_SQL2;
+import static javax.jcr.query.Query.XPATH;
+import static org.apache.sling.testing.resourceresolver.MockFindQueryResources.scopedFindResourcesHandler;
+import static org.apache.sling.testing.resourceresolver.MockFindQueryResources.scopedQueryResourceHandler;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests find/query handlers declaring the languages and queries they support.
+ */
+@SuppressWarnings({"null", "deprecation"})
+public class ScopedQueryHandlersTest {
+
+    private ResourceResolver resourceResolver;
+    private Resource resource1;
+    private Resource resource2;
+
+    @Before
+    public void setUp() throws Exception {
+        resourceResolver = new MockResourceResolverFactory().getResourceResolver(null);
+        resource1 = resourceResolver.create(resourceResolver.getResource("/"), "resource1", null);
+        resource2 = resourceResolver.create(resourceResolver.getResource("/"), "resource2", null);
+    }
+
+    @Test
+    public void testLiteralPattern() {
+        AtomicInteger calls = new AtomicInteger();
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver,
+                scopedFindResourcesHandler(
+                        (query, language) -> {
+                            calls.incrementAndGet();
+                            return List.of(resource1).iterator();
+                        },
+                        List.of(JCR_SQL2),
+                        MockQueryPattern.literal("q1")));
+
+        assertEquals(
+                "/resource1",
+                resourceResolver.findResources("q1", JCR_SQL2).next().getPath());
+        assertFalse(resourceResolver.findResources("q1", XPATH).hasNext());
+        assertFalse(resourceResolver.findResources("q2", JCR_SQL2).hasNext());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testRegexPattern() {
+        MockFindQueryResources.addQueryResourceHandler(
+                resourceResolver,
+                scopedQueryResourceHandler(
+                        (query, language) -> List.<Map<String, Object>>of(Map.of("query", query))
+                                .iterator(),
+                        List.of(),
+                        MockQueryPattern.regex("SELECT \\* FROM \\[cq:Page\\] WHERE .*")));
+
+        assertTrue(resourceResolver
+                .queryResources("SELECT * FROM [cq:Page] WHERE x=1", XPATH)
+                .hasNext());
+        assertFalse(resourceResolver
+                .queryResources("SELECT * FROM [nt:base] WHERE x=1", JCR_SQL2)
+                .hasNext());
+        assertFalse(resourceResolver.queryResources("SELECT", JCR_SQL2).hasNext());
+    }
+
+    @Test
+    public void testRegistrationOrderIsKept() {
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver,
+                scopedFindResourcesHandler(
+                        (query, language) -> List.of(resource1).iterator(),
+                        List.of(JCR_SQL2),
+                        MockQueryPattern.regex("q.*")));
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver, (query, language) -> List.of(resource2).iterator());
+
+        assertEquals(
+                "/resource1",
+                resourceResolver.findResources("q1", JCR_SQL2).next().getPath());
+        assertEquals(
+                "/resource2", resourceResolver.findResources("q1", XPATH).next().getPath());
+        assertEquals(
+                "/resource2",
+                resourceResolver.findResources("x1", JCR_SQL2).next().getPath());
+    }
+
+    @Test
+    public void testPagedHandler() {
+        MockPagedFindResourcesHandler handler =
+                query -> query.page(List.of(resource1, resource2).iterator());
+        MockFindQueryResources.addFindResourceHandler(
+                resourceResolver,
+                scopedFindResourcesHandler(handler, List.of(JCR_SQL2), MockQueryPattern.regex("SELECT .*")));
+
+        Iterator<Resource> result = resourceResolver.findResources("SELECT * FROM [nt:base] LIMIT 1", JCR_SQL2);
+        assertEquals("/resource1", result.next().getPath());
+        assertFalse(result.hasNext());
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        assertEquals("SELECT * FROM", MockQueryPattern.literal("SELECT * FROM").getLiteralPrefix());
+        assertEquals("SELECT ", MockQueryPattern.regex("^SELECT \\*").getLiteralPrefix());
+        assertEquals("abc", MockQueryPattern.regex("abcd?").getLiteralPrefix());
+        assertEquals("", MockQueryPattern.regex("a|b").getLiteralPrefix());
+    }
+
+    @Test
+    public void testConcurrentModification() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final int thread = i;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        String query = "q" + thread + "-" + j;
+                        MockFindQueryResources.addFindResourceHandler(
+                                resourceResolver,
+                                scopedFindResourcesHandler(
+                                        (q, l) -> List.of(resource1).iterator(),
+                                        List.of(),
+                                        MockQueryPattern.literal(query)));
+                        assertTrue(
+                                resourceResolver.findResources(query, JCR_SQL2).hasNext());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
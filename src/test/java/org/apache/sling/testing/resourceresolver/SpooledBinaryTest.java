@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_CONTENT;
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_DATA;
+import static org.apache.sling.testing.resourceresolver.MockResource.JCR_PRIMARYTYPE;
+import static org.apache.sling.testing.resourceresolver.MockResource.NT_FILE;
+import static org.apache.sling.testing.resourceresolver.MockResource.NT_RESOURCE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests spooling large binary values to temporary files.
+ */
+@SuppressWarnings("null")
+public class SpooledBinaryTest {
+
+    private static final byte[] SMALL_VALUE = new byte[] {0x01, 0x02, 0x03, 0x04};
+    private static final byte[] LARGE_VALUE = new byte[] {0x01, 0x02, 0x03, 0x04, 0x05, 0x06};
+
+    private ResourceResolver resolver;
+    private Resource testRoot;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions().setBinarySpoolThreshold(4))
+                .getResourceResolver(null);
+        testRoot = resolver.create(resolver.getResource("/"), "test", ValueMap.EMPTY);
+    }
+
+    @Test
+    public void testSmallBinaryKeptInMemory() throws Exception {
+        Resource resource = resolver.create(testRoot, "small", Map.of(JCR_DATA, new ByteArrayInputStream(SMALL_VALUE)));
+        ValueMap props = resource.getValueMap();
+        assertTrue(props.get(JCR_DATA) instanceof byte[]);
+        try (InputStream is = props.get(JCR_DATA, InputStream.class)) {
+            assertArrayEquals(SMALL_VALUE, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testLargeBinarySpooled() throws Exception {
+        Resource resource = resolver.create(testRoot, "large", Map.of(JCR_DATA, new ByteArrayInputStream(LARGE_VALUE)));
+        ValueMap props = resource.getValueMap();
+        MockBinary binary =
+                (MockBinary) MockResourceResolver.getRawProperties(props).get(JCR_DATA);
+        assertEquals(LARGE_VALUE.length, binary.getLength());
+        try (InputStream is = props.get(JCR_DATA, InputStream.class)) {
+            assertArrayEquals(LARGE_VALUE, IOUtils.toByteArray(is));
+        }
+        assertArrayEquals(LARGE_VALUE, props.get(JCR_DATA, byte[].class));
+    }
+
+    @Test
+    public void testLargeBinaryRawReads() throws Exception {
+        Resource resource = resolver.create(testRoot, "large", Map.of(JCR_DATA, new ByteArrayInputStream(LARGE_VALUE)));
+        ValueMap props = resource.getValueMap();
+
+        // raw reads return byte arrays like for binaries kept in memory
+        assertArrayEquals(LARGE_VALUE, (byte[]) props.get(JCR_DATA));
+        assertArrayEquals(LARGE_VALUE, (byte[]) props.values().iterator().next());
+        assertArrayEquals(
+                LARGE_VALUE, (byte[]) props.entrySet().iterator().next().getValue());
+        assertEquals(
+                new ValueMapDecorator(Map.of(JCR_DATA, LARGE_VALUE)).get(JCR_DATA, String.class),
+                props.get(JCR_DATA, String.class));
+        assertEquals(props, resolver.getResource(resource.getPath()).getValueMap());
+    }
+
+    @Test
+    public void testOpenStreamKeepsBinary() throws Exception {
+        Resource resource = resolver.create(testRoot, "large", Map.of(JCR_DATA, new ByteArrayInputStream(LARGE_VALUE)));
+        resolver.commit();
+        WeakReference<Object> binary = new WeakReference<>(
+                MockResourceResolver.getRawProperties(resource.getValueMap()).get(JCR_DATA));
+        InputStream is = resource.getValueMap().get(JCR_DATA, InputStream.class);
+        SeekableByteChannel channel = resource.getValueMap().get(JCR_DATA, SeekableByteChannel.class);
+
+        resolver.delete(resource);
+        resolver.commit();
+        resource = null;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+
+        assertNotNull(binary.get());
+        try (is) {
+            assertArrayEquals(LARGE_VALUE, IOUtils.toByteArray(is));
+        }
+        try (channel) {
+            assertEquals(LARGE_VALUE.length, channel.size());
+        }
+    }
+
+    @Test
+    public void testNtFileStream() throws Exception {
+        Resource file = resolver.create(testRoot, "ntFile", Map.of(JCR_PRIMARYTYPE, NT_FILE));
+        resolver.create(
+                file,
+                JCR_CONTENT,
+                Map.of(JCR_PRIMARYTYPE, NT_RESOURCE, JCR_DATA, new ByteArrayInputStream(LARGE_VALUE)));
+
+        Resource resource = resolver.getResource(testRoot.getPath() + "/ntFile");
+        try (InputStream is = resource.adaptTo(InputStream.class)) {
+            assertArrayEquals(LARGE_VALUE, IOUtils.toByteArray(is));
+        }
+        try (InputStream is = resource.getValueMap().get(JCR_CONTENT + "/" + JCR_DATA, InputStream.class)) {
+            assertArrayEquals(LARGE_VALUE, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testMemoryMappedByteBuffer() throws Exception {
+        Resource resource = resolver.create(
+                testRoot,
+                "ntResource",
+                Map.of(JCR_PRIMARYTYPE, NT_RESOURCE, JCR_DATA, new ByteArrayInputStream(LARGE_VALUE)));
+        ByteBuffer buffer = resource.adaptTo(ByteBuffer.class);
+        assertTrue(buffer instanceof MappedByteBuffer);
+        assertTrue(buffer.isReadOnly());
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        assertArrayEquals(LARGE_VALUE, data);
+    }
+
+    @Test
+    public void testFileChannel() throws Exception {
+        Resource resource = resolver.create(
+                testRoot,
+                "ntResource",
+                Map.of(JCR_PRIMARYTYPE, NT_RESOURCE, JCR_DATA, new ByteArrayInputStream(LARGE_VALUE)));
+        try (SeekableByteChannel channel = resource.adaptTo(SeekableByteChannel.class)) {
+            assertEquals(LARGE_VALUE.length, channel.size());
+            channel.position(5);
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer);
+            assertEquals(0x06, buffer.get(0));
+        }
+    }
+
+    @Test
+    public void testCopySharesBinary() throws Exception {
+        Resource source = resolver.create(testRoot, "source", Map.of(JCR_DATA, new ByteArrayInputStream(LARGE_VALUE)));
+        Resource target = resolver.create(testRoot, "target", ValueMap.EMPTY);
+        resolver.commit();
+
+        Resource copy = resolver.copy(source.getPath(), target.getPath());
+        assertSame(
+                MockResourceResolver.getRawProperties(source.getValueMap()).get(JCR_DATA),
+                MockResourceResolver.getRawProperties(copy.getValueMap()).get(JCR_DATA));
+    }
+}
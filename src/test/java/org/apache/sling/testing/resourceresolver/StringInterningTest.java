@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests interning of property names.
+ */
+@SuppressWarnings("null")
+public class StringInterningTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testInterner() {
+        StringInterner interner = new StringInterner();
+        String value1 = new String("jcr:primaryType");
+        String value2 = new String("jcr:primaryType");
+        assertNotSame(value1, value2);
+        assertSame(value1, interner.intern(value1));
+        assertSame(value1, interner.intern(value2));
+        assertEquals(1, interner.size());
+    }
+
+    @Test
+    public void testPropertyNames() throws Exception {
+        ResourceResolver resolver = new MockResourceResolverFactory().getResourceResolver(null);
+        Resource root = resolver.getResource("/");
+        // simulate property names created dynamically, e.g. by a JSON parser
+        Resource resource1 = resolver.create(root, "resource1", Map.of(new String("prop1"), "value1"));
+        Resource resource2 = resolver.create(root, "resource2", Map.of(new String("prop1"), "value2"));
+        resource2.adaptTo(ModifiableValueMap.class).put(new String("prop2"), "value");
+        resource1.adaptTo(ModifiableValueMap.class).put(new String("prop2"), "value");
+
+        assertSame(
+                resource1.getValueMap().keySet().iterator().next(),
+                resource2.getValueMap().keySet().iterator().next());
+        assertSame(propertyName(resource1, "prop2"), propertyName(resource2, "prop2"));
+    }
+
+    @Test
+    public void testReadsDoNotIntern() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory();
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Resource resource = resolver.create(resolver.getResource("/"), "resource1", Map.of("prop1", "value1"));
+        resolver.create(resolver.getResource("/"), "target", null);
+        resolver.commit();
+        int size = factory.getInterner().size();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(
+                    "value1", resolver.getResource("/resource1").getValueMap().get("prop1"));
+        }
+        resolver.copy(resource.getPath(), "/target");
+        assertEquals(size, factory.getInterner().size());
+    }
+
+    @Test
+    public void testRestoredNames() throws Exception {
+        MockResourceResolverFactoryOptions options = new MockResourceResolverFactoryOptions()
+                .setWriteAheadLogDirectory(folder.newFolder().toPath());
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(options);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "resource1", Map.of("prop1", "value1"));
+        resolver.commit();
+        factory.shutdown();
+
+        MockResourceResolverFactory restored = new MockResourceResolverFactory(options);
+        try {
+            Resource resource = restored.getResourceResolver(null).getResource("/resource1");
+            assertSame(restored.getInterner().intern(new String("prop1")), propertyName(resource, "prop1"));
+        } finally {
+            restored.shutdown();
+        }
+    }
+
+    @Test
+    public void testDiskStoreNames() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                .setDiskStoreDirectory(folder.newFolder().toPath()));
+        try {
+            ResourceResolver resolver = factory.getResourceResolver(null);
+            resolver.create(resolver.getResource("/"), "resource1", Map.of("prop1", "value1"));
+            resolver.create(resolver.getResource("/"), "resource2", Map.of("prop1", "value2"));
+            resolver.commit();
+
+            assertSame(
+                    propertyName(resolver.getResource("/resource1"), "prop1"),
+                    propertyName(resolver.getResource("/resource2"), "prop1"));
+        } finally {
+            factory.shutdown();
+        }
+    }
+
+    private static String propertyName(Resource resource, String name) {
+        for (String key : resource.getValueMap().keySet()) {
+            if (key.equals(name)) {
+                return key;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of writing and reading date properties. Values written as <code>Calendar</code> are stored as is,
+ * like all date values before the compact storage was introduced, and serve as baseline for values written as
+ * <code>Date</code>, which are stored as {@link TemporalValue}.
+ * Not executed as part of the build, run via {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemporalValueBenchmark {
+
+    private static final long MILLIS = 1_700_000_000_000L;
+
+    @Param({"Calendar", "Date"})
+    public String valueType;
+
+    private ResourceResolver resolver;
+    private Resource parent;
+    private ValueMap props;
+    private int counter;
+
+    @Setup
+    public void setUp() throws Exception {
+        resolver = new MockResourceResolverFactory().getResourceResolver(null);
+        parent = resolver.create(resolver.getResource("/"), "content", ValueMap.EMPTY);
+        props = resolver.create(parent, "item", Map.of("date", newValue(MILLIS)))
+                .getValueMap();
+    }
+
+    private Object newValue(long millis) {
+        if ("Calendar".equals(valueType)) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(millis);
+            return calendar;
+        }
+        return new Date(millis);
+    }
+
+    @Benchmark
+    public Object rawRead() {
+        return props.get("date");
+    }
+
+    @Benchmark
+    public Calendar calendarRead() {
+        return props.get("date", Calendar.class);
+    }
+
+    @Benchmark
+    public Date dateRead() {
+        return props.get("date", Date.class);
+    }
+
+    @Benchmark
+    public Resource write() throws Exception {
+        int i = counter++;
+        Resource resource = resolver.create(parent, "item" + i, Map.of("date", newValue(MILLIS + i)));
+        if (i % 1000 == 999) {
+            // keep the transient changes small
+            resolver.revert();
+        }
+        return resource;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(TemporalValueBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}
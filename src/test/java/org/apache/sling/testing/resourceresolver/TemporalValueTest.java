@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the compact storage of date values in {@link MockValueMap}.
+ */
+@SuppressWarnings("null")
+public class TemporalValueTest {
+
+    private static final long MILLIS = 1_700_000_000_000L;
+
+    private ResourceResolver resolver;
+    private Resource resource;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new MockResourceResolverFactory().getResourceResolver(null);
+        resource = resolver.create(resolver.getResource("/"), "content", Map.of("date", new Date(MILLIS)));
+    }
+
+    @Test
+    public void testTypedReads() {
+        ValueMap props = resource.getValueMap();
+        assertEquals(new Date(MILLIS), props.get("date", Date.class));
+        assertEquals(MILLIS, props.get("date", Calendar.class).getTimeInMillis());
+        assertEquals(Instant.ofEpochMilli(MILLIS), props.get("date", Instant.class));
+        assertEquals(
+                Instant.ofEpochMilli(MILLIS).atZone(ZoneId.systemDefault()), props.get("date", ZonedDateTime.class));
+        assertEquals(
+                Instant.ofEpochMilli(MILLIS).atZone(ZoneId.systemDefault()).toOffsetDateTime(),
+                props.get("date", OffsetDateTime.class));
+        assertEquals(
+                Calendar.getInstance().getTimeZone(),
+                props.get("date", Calendar.class).getTimeZone());
+        assertEquals(MILLIS, props.get("date", new Date(0)).getTime());
+        assertEquals(new Date(0), props.get("other", new Date(0)));
+        assertTrue(props.get("date", String.class).startsWith("2023-11-"));
+    }
+
+    @Test
+    public void testRawReadsReturnCalendar() {
+        ValueMap props = resource.getValueMap();
+        assertEquals(MILLIS, ((Calendar) props.get("date")).getTimeInMillis());
+        assertEquals(MILLIS, ((Calendar) props.get("date", (Class<?>) null)).getTimeInMillis());
+        assertEquals(MILLIS, ((Calendar) props.values().iterator().next()).getTimeInMillis());
+        assertEquals(MILLIS, ((Calendar) props.entrySet().iterator().next().getValue()).getTimeInMillis());
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("date", props.get("date"));
+        assertEquals(expected, props);
+        assertEquals(expected.hashCode(), props.hashCode());
+        assertTrue(props.containsValue(props.get("date")));
+        assertEquals(expected, new HashMap<>(props));
+    }
+
+    @Test
+    public void testStoredValueIsImmutable() {
+        ValueMap props = resource.getValueMap();
+        props.get("date", Calendar.class).setTimeInMillis(0);
+        props.get("date", Date.class).setTime(0);
+        ((Calendar) props.get("date")).setTimeInMillis(0);
+        assertEquals(MILLIS, props.get("date", Date.class).getTime());
+    }
+
+    @Test
+    public void testWrite() {
+        ModifiableValueMap props = resource.adaptTo(ModifiableValueMap.class);
+        assertEquals(MILLIS, ((Calendar) props.put("date", new Date(0))).getTimeInMillis());
+        assertEquals(0L, props.get("date", Date.class).getTime());
+
+        props.entrySet().iterator().next().setValue(new Date(MILLIS));
+        assertEquals(MILLIS, props.get("date", Date.class).getTime());
+
+        assertEquals(MILLIS, ((Calendar) props.remove("date")).getTimeInMillis());
+        assertTrue(props.isEmpty());
+    }
+
+    @Test
+    public void testTimeZoneNotShared() {
+        ValueMap props = resource.getValueMap();
+        Calendar calendar = props.get("date", Calendar.class);
+        int offset = calendar.getTimeZone().getRawOffset();
+        calendar.getTimeZone().setRawOffset(offset + 3600000);
+        assertEquals(offset, props.get("date", Calendar.class).getTimeZone().getRawOffset());
+        assertEquals(offset, ((Calendar) props.get("date")).getTimeZone().getRawOffset());
+    }
+
+    @Test
+    public void testDefaultLocale() {
+        ValueMap props = resource.getValueMap();
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.US);
+            assertEquals(Calendar.SUNDAY, props.get("date", Calendar.class).getFirstDayOfWeek());
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals(Calendar.MONDAY, props.get("date", Calendar.class).getFirstDayOfWeek());
+            assertEquals(Calendar.MONDAY, ((Calendar) props.get("date")).getFirstDayOfWeek());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testEquals() throws Exception {
+        Resource other = resolver.create(resolver.getResource("/"), "other", Map.of("date", new Date(MILLIS)));
+        assertEquals(resource.getValueMap(), other.getValueMap());
+        assertEquals(resource.getValueMap().hashCode(), other.getValueMap().hashCode());
+        assertEquals(new HashMap<>(resource.getValueMap()), other.getValueMap());
+    }
+}
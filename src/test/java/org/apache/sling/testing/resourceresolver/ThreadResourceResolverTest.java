@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests tracking of the resource resolvers opened per thread.
+ */
+public class ThreadResourceResolverTest {
+
+    private MockResourceResolverFactory factory;
+
+    @Before
+    public void setUp() {
+        factory = new MockResourceResolverFactory();
+    }
+
+    @Test
+    public void testThreadResourceResolver() throws Exception {
+        assertNull(factory.getThreadResourceResolver());
+
+        ResourceResolver resolver1 = factory.getResourceResolver(null);
+        ResourceResolver resolver2 = factory.getResourceResolver(null);
+        assertSame(resolver2, factory.getThreadResourceResolver());
+
+        resolver2.close();
+        assertSame(resolver1, factory.getThreadResourceResolver());
+
+        resolver1.close();
+        assertNull(factory.getThreadResourceResolver());
+    }
+
+    @Test
+    public void testCloseOutOfOrder() throws Exception {
+        ResourceResolver resolver1 = factory.getResourceResolver(null);
+        ResourceResolver resolver2 = factory.getResourceResolver(null);
+
+        resolver1.close();
+        assertSame(resolver2, factory.getThreadResourceResolver());
+
+        resolver2.close();
+        assertNull(factory.getThreadResourceResolver());
+    }
+
+    @Test
+    public void testOtherThread() throws Exception {
+        ResourceResolver resolver = factory.getResourceResolver(null);
+
+        AtomicReference<ResourceResolver> otherThreadResolver = new AtomicReference<>();
+        Thread thread = new Thread(() -> otherThreadResolver.set(factory.getThreadResourceResolver()));
+        thread.start();
+        thread.join();
+        assertNull(otherThreadResolver.get());
+
+        resolver.close();
+    }
+
+    @Test
+    @SuppressWarnings("java:S1215")
+    public void testClosedByOtherThread() throws Exception {
+        ResourceResolver resolver1 = factory.getResourceResolver(null);
+        ResourceResolver resolver2 = factory.getResourceResolver(null);
+        Thread thread = new Thread(resolver2::close);
+        thread.start();
+        thread.join();
+        assertSame(resolver1, factory.getThreadResourceResolver());
+
+        resolver2 = null;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(0, factory.getLeakedResourceResolverCount());
+        resolver1.close();
+        assertNull(factory.getThreadResourceResolver());
+    }
+
+    @Test
+    @SuppressWarnings("java:S1215")
+    public void testLeakedResourceResolver() throws Exception {
+        openAndForget();
+        for (int i = 0; i < 50 && factory.getLeakedResourceResolverCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, factory.getLeakedResourceResolverCount());
+        assertNull(factory.getThreadResourceResolver());
+
+        // closed resolvers are not reported
+        factory.getResourceResolver(null).close();
+        System.gc();
+        Thread.sleep(20);
+        assertEquals(1, factory.getLeakedResourceResolverCount());
+    }
+
+    @Test
+    @SuppressWarnings("java:S1215")
+    public void testLeakedResourceResolverOfExitedThread() throws Exception {
+        Thread thread = new Thread(() -> {
+            try {
+                openAndForget();
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        thread.start();
+        thread.join();
+        thread = null;
+
+        for (int i = 0; i < 50 && factory.getLeakedResourceResolverCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, factory.getLeakedResourceResolverCount());
+    }
+
+    private void openAndForget() throws Exception {
+        factory.getResourceResolver(null);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of typed value map reads (Calendar, Date, String, String[]) with and without the conversion cache.
+ * Not executed as part of the build, run via {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueMapConversionCacheBenchmark {
+
+    @Param({"false", "true"})
+    public boolean conversionCache;
+
+    private ValueMap props;
+
+    @Setup
+    public void setUp() throws Exception {
+        ResourceResolver resolver = new MockResourceResolverFactory(
+                        new MockResourceResolverFactoryOptions().setValueMapConversionCache(conversionCache))
+                .getResourceResolver(null);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(1000L);
+        props = resolver.create(
+                        resolver.getResource("/"),
+                        "content",
+                        Map.of("long", 5L, "calendar", calendar, "date", new Date(0), "tags", "single"))
+                .getValueMap();
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public int typedReads() {
+        return props.get("date", Calendar.class).get(Calendar.YEAR)
+                + props.get("calendar", Date.class).getDate()
+                + props.get("long", String.class).length()
+                + props.get("tags", String[].class).length;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                        .include(ValueMapConversionCacheBenchmark.class.getSimpleName())
+                        .build())
+                .run();
+    }
+}
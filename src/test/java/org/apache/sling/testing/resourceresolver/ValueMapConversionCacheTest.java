@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the conversion cache of {@link MockValueMap}.
+ */
+@SuppressWarnings("null")
+public class ValueMapConversionCacheTest {
+
+    private MockResourceResolverFactory factory;
+    private ResourceResolver resolver;
+    private Resource resource;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new MockResourceResolverFactory();
+        resolver = factory.getResourceResolver(null);
+        resource = createResource(resolver);
+    }
+
+    @Test
+    public void testConvertedValues() {
+        ValueMap props = resource.getValueMap();
+        for (int i = 0; i < 2; i++) {
+            assertEquals("5", props.get("long", String.class));
+            assertEquals(Integer.valueOf(5), props.get("long", Integer.class));
+            assertArrayEquals(new String[] {"a,b"}, props.get("string", String[].class));
+            assertArrayEquals(new String[] {"5"}, props.get("long", String[].class));
+            assertEquals(1000L, props.get("calendar", Date.class).getTime());
+            assertNull(props.get("string", Integer.class));
+        }
+    }
+
+    @Test
+    public void testMutableResultsAreCopied() {
+        ValueMap props = resource.getValueMap();
+        Date date = props.get("calendar", Date.class);
+        date.setTime(0);
+        assertEquals(1000L, props.get("calendar", Date.class).getTime());
+
+        String[] array = props.get("string", String[].class);
+        array[0] = "changed";
+        assertArrayEquals(new String[] {"a,b"}, props.get("string", String[].class));
+        assertNotSame(props.get("string", String[].class), props.get("string", String[].class));
+    }
+
+    @Test
+    public void testInvalidation() throws PersistenceException {
+        ModifiableValueMap props = resource.adaptTo(ModifiableValueMap.class);
+        assertEquals("5", props.get("long", String.class));
+
+        props.put("long", 6L);
+        assertEquals("6", props.get("long", String.class));
+
+        props.putAll(Map.of("long", 7L));
+        assertEquals("7", props.get("long", String.class));
+
+        props.remove("long");
+        assertNull(props.get("long", String.class));
+
+        props.put("long", 8L);
+        assertEquals("8", props.get("long", String.class));
+        props.keySet().remove("long");
+        assertNull(props.get("long", String.class));
+
+        props.put("long", 9L);
+        assertEquals("9", props.get("long", String.class));
+        props.entrySet().stream().filter(entry -> entry.getKey().equals("long")).forEach(entry -> entry.setValue(10L));
+        assertEquals("10", props.get("long", String.class));
+
+        props.clear();
+        assertNull(props.get("long", String.class));
+        resolver.commit();
+    }
+
+    @Test
+    public void testSharedAcrossResolvers() throws Exception {
+        resolver.commit();
+        ResourceResolver other = factory.getResourceResolver(null);
+        ValueMap props = other.getResource(resource.getPath()).getValueMap();
+        assertEquals("5", props.get("long", String.class));
+
+        resource.adaptTo(ModifiableValueMap.class).put("long", 6L);
+        resolver.commit();
+        assertEquals("6", other.getResource(resource.getPath()).getValueMap().get("long", String.class));
+    }
+
+    @Test
+    public void testCompactPropertyStorage() throws Exception {
+        ResourceResolver compact = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                        .setCompactPropertyStorage(true)
+                        .setValueMapConversionCache(true))
+                .getResourceResolver(null);
+        Resource compactResource = compact.create(
+                compact.getResource("/"), "content", Map.of("long", 5000L, "double", 1.5d, "boolean", true));
+        ValueMap props = compactResource.getValueMap();
+        // primitives are stored unboxed, the cached conversion is used although they are boxed again on each read
+        assertSame(props.get("long", String.class), props.get("long", String.class));
+        assertSame(props.get("double", String.class), props.get("double", String.class));
+        assertSame(props.get("boolean", String.class), props.get("boolean", String.class));
+
+        compactResource.adaptTo(ModifiableValueMap.class).put("long", 6000L);
+        assertEquals("6000", props.get("long", String.class));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ResourceResolver uncached = createResolver(false);
+        ValueMap props = createResource(uncached).getValueMap();
+        assertEquals("5", props.get("long", String.class));
+        assertEquals(1000L, props.get("calendar", Date.class).getTime());
+    }
+
+    private static ResourceResolver createResolver(boolean conversionCache) throws Exception {
+        return new MockResourceResolverFactory(
+                        new MockResourceResolverFactoryOptions().setValueMapConversionCache(conversionCache))
+                .getResourceResolver(null);
+    }
+
+    private static Resource createResource(ResourceResolver resolver) throws PersistenceException {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(1000L);
+        return resolver.create(
+                resolver.getResource("/"),
+                "content",
+                Map.of("long", 5L, "string", "a,b", "calendar", calendar, "date", new Date(0), "tags", "single"));
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.resourceresolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests persisting committed changes in the write-ahead log and restoring them on startup.
+ */
+@SuppressWarnings("null")
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<MockResourceResolverFactory> factories = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        factories.forEach(MockResourceResolverFactory::shutdown);
+    }
+
+    private MockResourceResolverFactory newFactory(boolean sync) {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                .setWriteAheadLogDirectory(folder.getRoot().toPath())
+                .setWriteAheadLogSync(sync));
+        factories.add(factory);
+        return factory;
+    }
+
+    private MockResourceResolverFactory restart(MockResourceResolverFactory factory, boolean sync) {
+        factory.shutdown();
+        factories.remove(factory);
+        return newFactory(sync);
+    }
+
+    @Test
+    public void testRestoreCommittedChanges() throws Exception {
+        MockResourceResolverFactory factory = newFactory(true);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Europe/Berlin"));
+        calendar.setTimeInMillis(1_700_000_000_000L);
+        Map<String, Object> props = new HashMap<>();
+        props.put("string", "value");
+        props.put("long", 42L);
+        props.put("date", new Date(1_600_000_000_000L));
+        props.put("calendar", calendar);
+        props.put("binary", new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        props.put("array", new String[] {"a", "b"});
+        props.put("removed", "x");
+        Resource content = resolver.create(resolver.getResource("/"), "content", props);
+        resolver.create(content, "child", Map.of("prop", "child"));
+        resolver.create(content, "deleted", Map.of("prop", "deleted"));
+        resolver.commit();
+
+        ModifiableValueMap modifiable = content.adaptTo(ModifiableValueMap.class);
+        modifiable.put("string", "updated");
+        modifiable.remove("removed");
+        resolver.delete(resolver.getResource("/content/deleted"));
+        resolver.commit();
+
+        // uncommitted changes are not persisted
+        resolver.create(content, "uncommitted", Map.of());
+
+        factory = restart(factory, true);
+        ResourceResolver restored = factory.getResourceResolver(null);
+        ValueMap restoredProps = restored.getResource("/content").getValueMap();
+        assertEquals("updated", restoredProps.get("string", String.class));
+        assertEquals((Long) 42L, restoredProps.get("long", Long.class));
+        assertEquals(1_600_000_000_000L, restoredProps.get("date", Date.class).getTime());
+        Calendar restoredCalendar = restoredProps.get("calendar", Calendar.class);
+        assertEquals(calendar.getTimeInMillis(), restoredCalendar.getTimeInMillis());
+        assertEquals("Europe/Berlin", restoredCalendar.getTimeZone().getID());
+        try (InputStream binary = restoredProps.get("binary", InputStream.class)) {
+            assertArrayEquals(new byte[] {1, 2, 3}, binary.readAllBytes());
+        }
+        assertArrayEquals(new String[] {"a", "b"}, restoredProps.get("array", String[].class));
+        assertFalse(restoredProps.containsKey("removed"));
+        assertEquals(
+                "child", restored.getResource("/content/child").getValueMap().get("prop", String.class));
+        assertNull(restored.getResource("/content/deleted"));
+        assertNull(restored.getResource("/content/uncommitted"));
+
+        // restored resources can be modified and logged again
+        restored.getResource("/content").adaptTo(ModifiableValueMap.class).put("string", "again");
+        restored.commit();
+        factory = restart(factory, true);
+        assertEquals(
+                "again",
+                factory.getResourceResolver(null)
+                        .getResource("/content")
+                        .getValueMap()
+                        .get("string", String.class));
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        MockResourceResolverFactory factory = newFactory(false);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "before", Map.of("prop", "before"));
+        resolver.commit();
+        factory.checkpoint();
+        assertEquals(0, Files.size(folder.getRoot().toPath().resolve(WriteAheadLog.LOG_FILE)));
+        resolver.create(resolver.getResource("/"), "after", Map.of("prop", "after"));
+        resolver.delete(resolver.getResource("/before"));
+        resolver.commit();
+
+        factory = restart(factory, false);
+        ResourceResolver restored = factory.getResourceResolver(null);
+        assertNull(restored.getResource("/before"));
+        assertEquals("after", restored.getResource("/after").getValueMap().get("prop", String.class));
+    }
+
+    @Test
+    public void testAutomaticCheckpoint() throws Exception {
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(new MockResourceResolverFactoryOptions()
+                .setWriteAheadLogDirectory(folder.getRoot().toPath())
+                .setWriteAheadLogSync(false)
+                .setWriteAheadLogCheckpointThreshold(1024));
+        factories.add(factory);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        for (int i = 0; i < 100; i++) {
+            resolver.create(resolver.getResource("/"), "node" + i, Map.of("prop", "value" + i));
+            resolver.commit();
+        }
+        assertTrue(Files.exists(folder.getRoot().toPath().resolve(WriteAheadLog.SNAPSHOT_FILE)));
+        assertTrue(Files.size(folder.getRoot().toPath().resolve(WriteAheadLog.LOG_FILE)) <= 1024);
+
+        factory = restart(factory, false);
+        ResourceResolver restored = factory.getResourceResolver(null);
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(restored.getResource("/node" + i));
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws Exception {
+        MockResourceResolverFactory factory = newFactory(true);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "first", Map.of());
+        resolver.commit();
+        resolver.create(resolver.getResource("/"), "second", Map.of());
+        resolver.commit();
+        factory.shutdown();
+        factories.remove(factory);
+
+        // simulate a crash while writing the second record
+        Path logFile = folder.getRoot().toPath().resolve(WriteAheadLog.LOG_FILE);
+        long size = Files.size(logFile);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        factory = newFactory(true);
+        ResourceResolver restored = factory.getResourceResolver(null);
+        assertNotNull(restored.getResource("/first"));
+        assertNull(restored.getResource("/second"));
+
+        // new records are appended after the last complete record
+        restored.create(restored.getResource("/"), "third", Map.of());
+        restored.commit();
+        factory = restart(factory, true);
+        restored = factory.getResourceResolver(null);
+        assertNotNull(restored.getResource("/first"));
+        assertNotNull(restored.getResource("/third"));
+    }
+
+    @Test
+    public void testCheckpointBeforeFirstResolver() throws Exception {
+        MockResourceResolverFactory factory = newFactory(false);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "content", Map.of("prop", "value"));
+        resolver.commit();
+
+        factory = restart(factory, false);
+        factory.checkpoint();
+        factory = restart(factory, false);
+        assertEquals(
+                "value",
+                factory.getResourceResolver(null)
+                        .getResource("/content")
+                        .getValueMap()
+                        .get("prop", String.class));
+    }
+
+    @Test
+    public void testNullPropertyNameFailsCommit() throws Exception {
+        MockResourceResolverFactory factory = newFactory(false);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        Map<String, Object> props = new HashMap<>();
+        props.put(null, "value");
+        resolver.create(resolver.getResource("/"), "content", props);
+        try {
+            resolver.commit();
+            fail("PersistenceException expected");
+        } catch (PersistenceException ex) {
+            // expected
+        }
+        resolver.revert();
+        assertNull(resolver.getResource("/content"));
+    }
+
+    @Test
+    public void testSpooledBinaryRestored() throws Exception {
+        MockResourceResolverFactoryOptions options = new MockResourceResolverFactoryOptions()
+                .setWriteAheadLogDirectory(folder.getRoot().toPath())
+                .setBinarySpoolThreshold(4);
+        byte[] data = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+        MockResourceResolverFactory factory = new MockResourceResolverFactory(options);
+        factories.add(factory);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "content", Map.of("binary", new ByteArrayInputStream(data)));
+        resolver.commit();
+        factory.shutdown();
+        factories.remove(factory);
+
+        factory = new MockResourceResolverFactory(options);
+        factories.add(factory);
+        ValueMap restoredProps =
+                factory.getResourceResolver(null).getResource("/content").getValueMap();
+        assertTrue(MockResourceResolver.getRawProperties(restoredProps).get("binary") instanceof MockBinary);
+        try (InputStream binary = restoredProps.get("binary", InputStream.class)) {
+            assertArrayEquals(data, binary.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testUnsupportedValueFailsCommit() throws Exception {
+        MockResourceResolverFactory factory = newFactory(false);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "content", Map.of("prop", new Object()));
+        try {
+            resolver.commit();
+            fail("PersistenceException expected");
+        } catch (PersistenceException ex) {
+            // expected
+        }
+        resolver.revert();
+        assertNull(resolver.getResource("/content"));
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        MockResourceResolverFactory factory = newFactory(true);
+        int threads = 8;
+        int commitsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String name = "thread" + t;
+            futures.add(executor.submit(() -> {
+                ResourceResolver resolver = factory.getResourceResolver(null);
+                start.await();
+                Resource parent = resolver.create(resolver.getResource("/"), name, Map.of());
+                resolver.commit();
+                for (int i = 0; i < commitsPerThread; i++) {
+                    resolver.create(parent, "node" + i, Map.of("prop", i));
+                    resolver.commit();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        int commits = threads * (commitsPerThread + 1);
+        assertTrue(factory.getWriteAheadLog().getSyncCount() <= commits);
+
+        MockResourceResolverFactory restarted = restart(factory, true);
+        ResourceResolver restored = restarted.getResourceResolver(null);
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < commitsPerThread; i++) {
+                assertEquals(
+                        (Integer) i,
+                        restored.getResource("/thread" + t + "/node" + i)
+                                .getValueMap()
+                                .get("prop", Integer.class));
+            }
+        }
+    }
+
+    @Test
+    public void testSyncCoversAppendedRecords() throws Exception {
+        WriteAheadLog wal = newFactory(true).getWriteAheadLog();
+        int commits = 3;
+        long[] sequences = new long[commits];
+        for (int i = 0; i < commits; i++) {
+            sequences[i] = wal.append(List.of(WriteAheadLog.Change.put("/node" + i, Map.of("prop", i))));
+        }
+        // the first sync makes all appended records durable, the others return without syncing again
+        for (long sequence : sequences) {
+            wal.sync(sequence);
+        }
+        long syncs = wal.getSyncCount();
+        assertEquals(1, syncs);
+        assertTrue(syncs < commits);
+    }
+
+    @Test
+    public void testInPlaceChangeOfOtherResolver() throws Exception {
+        MockResourceResolverFactory factory = newFactory(false);
+        ResourceResolver creator = factory.getResourceResolver(null);
+        creator.create(creator.getResource("/"), "x", Map.of("p", "v1"));
+        creator.commit();
+        creator.close();
+
+        ResourceResolver writer = factory.getResourceResolver(null);
+        writer.getResource("/x").adaptTo(ModifiableValueMap.class).put("p", "v2");
+        assertTrue(writer.hasChanges());
+        writer.commit();
+
+        factory = restart(factory, false);
+        assertEquals(
+                "v2",
+                factory.getResourceResolver(null)
+                        .getResource("/x")
+                        .getValueMap()
+                        .get("p", String.class));
+    }
+
+    @Test
+    public void testCorruptRecordLengthIsDiscarded() throws Exception {
+        MockResourceResolverFactory factory = newFactory(false);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "first", Map.of());
+        resolver.commit();
+        factory.shutdown();
+        factories.remove(factory);
+
+        // a record header announcing far more data than the log contains is not allocated
+        Path logFile = folder.getRoot().toPath().resolve(WriteAheadLog.LOG_FILE);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(12)
+                    .putInt(Integer.MAX_VALUE - 8)
+                    .putInt(0)
+                    .putInt(0)
+                    .flip());
+        }
+        long size = Files.size(logFile);
+
+        factory = newFactory(false);
+        assertNotNull(factory.getResourceResolver(null).getResource("/first"));
+        assertEquals(size - 12, Files.size(logFile));
+    }
+
+    @Test
+    public void testSerializedValues() throws Exception {
+        MockResourceResolverFactory factory = newFactory(false);
+        ResourceResolver resolver = factory.getResourceResolver(null);
+        resolver.create(resolver.getResource("/"), "content", Map.of("locale", Locale.GERMANY));
+        resolver.commit();
+        resolver.create(resolver.getResource("/"), "custom", Map.of("prop", new CustomValue()));
+        try {
+            resolver.commit();
+            fail("PersistenceException expected");
+        } catch (PersistenceException ex) {
+            // expected
+        }
+        resolver.revert();
+
+        factory = restart(factory, false);
+        ResourceResolver restored = factory.getResourceResolver(null);
+        assertEquals(
+                Locale.GERMANY, restored.getResource("/content").getValueMap().get("locale"));
+        assertNull(restored.getResource("/custom"));
+    }
+
+    @Test
+    public void testSerializedValueOfOtherClassIsRejected() throws Exception {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(serialized)) {
+            objectOut.writeObject(new CustomValue());
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(encoded);
+        ValueCodec.writeValue(out, Locale.GERMANY);
+        // replace the serialized locale by the custom value
+        byte tag = encoded.toByteArray()[0];
+        encoded.reset();
+        out.writeByte(tag);
+        out.writeInt(serialized.size());
+        out.write(serialized.toByteArray());
+        try {
+            ValueCodec.readValue(
+                    new DataInputStream(new ByteArrayInputStream(encoded.toByteArray())),
+                    MockResourceResolverFactoryOptions.DEFAULT_BINARY_SPOOL_THRESHOLD);
+            fail("IOException expected");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    private static final class CustomValue implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+}